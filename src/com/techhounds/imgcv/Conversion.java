@@ -26,15 +26,21 @@
 package com.techhounds.imgcv;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
+import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
 import org.opencv.core.MatOfByte;
 import org.opencv.highgui.Highgui;
 import org.opencv.imgproc.Imgproc;
@@ -59,14 +65,28 @@ public final class Conversion {
 	 * Converts a Java {@link BufferedImage} object into a opencv {@link Mat}
 	 * object.
 	 *
+	 * <p>
+	 * Images stored as bytes ({@link BufferedImage#TYPE_3BYTE_BGR},
+	 * {@link BufferedImage#TYPE_4BYTE_ABGR} and
+	 * {@link BufferedImage#TYPE_BYTE_GRAY} - which is what
+	 * {@link ImageIO#read} typically produces) are copied directly from the
+	 * raster. Other image types are converted by encoding and decoding the
+	 * image in memory (much slower).
+	 * </p>
+	 *
 	 * @param bimg
 	 *            The Java image object to be converted.
-	 * @return The opencv {@link Mat} representation of the image.
+	 * @return The opencv {@link Mat} representation of the image (3 channel
+	 *         BGR).
 	 * @throws IOException
 	 *             if a internal problem occurs when storing image to memory.
 	 */
 	public static Mat bufferedImageToMat(BufferedImage bimg) throws IOException {
-		// Surely there has to be a better way to do this!
+		Mat mat = rasterToMat(bimg);
+		if (mat != null) {
+			return mat;
+		}
+
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		String ext = "bmp";
 		ImageIO.write(bimg, ext, baos);
@@ -76,6 +96,60 @@ public final class Conversion {
 		return Highgui.imdecode(data, Highgui.CV_LOAD_IMAGE_COLOR);
 	}
 
+	/**
+	 * Copies the pixels of a byte based image straight into a 3 channel BGR
+	 * {@link Mat}.
+	 *
+	 * @param bimg
+	 *            Image to convert.
+	 * @return New {@link Mat} or null if the image is not stored in a way we
+	 *         can copy directly.
+	 */
+	private static Mat rasterToMat(BufferedImage bimg) {
+		int type = bimg.getType();
+		int channels;
+		if (type == BufferedImage.TYPE_3BYTE_BGR) {
+			channels = 3;
+		} else if (type == BufferedImage.TYPE_4BYTE_ABGR) {
+			channels = 4;
+		} else if (type == BufferedImage.TYPE_BYTE_GRAY) {
+			channels = 1;
+		} else {
+			return null;
+		}
+
+		// Must be a plain raster (not a sub-image sharing a larger buffer)
+		Raster raster = bimg.getRaster();
+		int cols = bimg.getWidth();
+		int rows = bimg.getHeight();
+		if (!(raster.getDataBuffer() instanceof DataBufferByte)
+				|| (raster.getSampleModelTranslateX() != 0)
+				|| (raster.getSampleModelTranslateY() != 0)) {
+			return null;
+		}
+		DataBufferByte buf = (DataBufferByte) raster.getDataBuffer();
+		if ((buf.getOffset() != 0)
+				|| (buf.getSize() != rows * cols * channels)) {
+			return null;
+		}
+
+		Mat src = new Mat(rows, cols, CvType.makeType(CvType.CV_8U, channels));
+		src.put(0, 0, buf.getData());
+		if (channels == 3) {
+			// Java's BGR byte order is the same as opencv's
+			return src;
+		}
+		Mat bgr = new Mat(rows, cols, CvType.CV_8UC3);
+		if (channels == 1) {
+			Imgproc.cvtColor(src, bgr, Imgproc.COLOR_GRAY2BGR);
+		} else {
+			// Bytes are A, B, G, R - drop the alpha
+			Core.mixChannels(Arrays.asList(src), Arrays.asList(bgr),
+					new MatOfInt(1, 0, 2, 1, 3, 2));
+		}
+		return bgr;
+	}
+
 	/**
 	 * Converts a gray scale (1 channel) opencv {@link Mat} image representation
 	 * to a Java {@link BufferedImage} representation.
@@ -173,16 +247,50 @@ public final class Conversion {
 	 */
 	public static BufferedImage urlToBufferedImage(String url)
 			throws IOException {
-		int timeout = 1000;
-		URLConnection c = null;
+		URLConnection c = openUrl(url);
 		BufferedImage img = null;
 
+		img = ImageIO.read(c.getInputStream());
+		return img;
+	}
+
+	/**
+	 * Opens a connection to a URL with short (1 second) timeouts.
+	 */
+	private static URLConnection openUrl(String url) throws IOException {
+		int timeout = 1000;
 		URL u = new URL(url);
-		c = u.openConnection();
+		URLConnection c = u.openConnection();
 		c.setConnectTimeout(timeout);
 		c.setReadTimeout(timeout);
-		img = ImageIO.read(c.getInputStream());
-		return img;
+		return c;
+	}
+
+	/**
+	 * Reads the entire contents of a URL (like a JPEG image).
+	 *
+	 * @param url
+	 *            The URL to read from.
+	 * @return The raw bytes returned.
+	 * @throws IOException
+	 *             If we are unable to retrieve the data from the URL.
+	 */
+	public static byte[] urlToBytes(String url) throws IOException {
+		URLConnection c = openUrl(url);
+		int len = c.getContentLength();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(
+				(len > 0) ? len : 64 * 1024);
+		InputStream in = c.getInputStream();
+		try {
+			byte[] buf = new byte[16 * 1024];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				baos.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return baos.toByteArray();
 	}
 
 	/**
@@ -196,8 +304,13 @@ public final class Conversion {
 	 *             If we are unable to retrieve the image from the URL.
 	 */
 	public static Mat urlToMat(String url) throws IOException {
-		BufferedImage bimg = urlToBufferedImage(url);
-		return bufferedImageToMat(bimg);
+		// Let opencv decode the JPEG (or PNG) data directly
+		Mat img = Highgui.imdecode(new MatOfByte(urlToBytes(url)),
+				Highgui.CV_LOAD_IMAGE_COLOR);
+		if (img.empty()) {
+			throw new IOException("Unable to decode image from: " + url);
+		}
+		return img;
 	}
 
 	/**
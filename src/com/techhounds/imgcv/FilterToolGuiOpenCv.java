@@ -129,6 +129,16 @@ public class FilterToolGuiOpenCv {
 	 */
 	private String _Url = "http://10.8.68.11/jpg/1/image.jpg";
 
+	/**
+	 * Kept alive connection used to grab images from {@link #_Url} (or null).
+	 */
+	private HttpSnapshotSource _Snapshots;
+
+	/**
+	 * URL that {@link #_Snapshots} is connected to.
+	 */
+	private String _SnapshotsUrl;
+
 	/**
 	 * Used to save/retrieve preferences.
 	 */
@@ -697,7 +707,7 @@ public class FilterToolGuiOpenCv {
 			public void actionPerformed(ActionEvent ae) {
 				frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 				try {
-					Mat image = Conversion.urlToMat(_Url);
+					Mat image = grabUrlImage();
 					if (image != null) {
 						_LastLoadedImage = image;
 						setImage(image);
@@ -713,6 +723,28 @@ public class FilterToolGuiOpenCv {
 		return openImageAction;
 	}
 
+	/**
+	 * Grabs a image from the current URL, keeping the connection to the camera
+	 * open between grabs when it is a still image URL.
+	 * 
+	 * @return The image fetched.
+	 * @throws IOException
+	 *             If unable to fetch the image.
+	 */
+	private Mat grabUrlImage() throws IOException {
+		if (!HttpSnapshotSource.isSnapshotUrl(_Url)) {
+			return Conversion.urlToMat(_Url);
+		}
+		if ((_Snapshots == null) || !_Url.equals(_SnapshotsUrl)) {
+			if (_Snapshots != null) {
+				_Snapshots.close();
+			}
+			_Snapshots = new HttpSnapshotSource(_Url);
+			_SnapshotsUrl = _Url;
+		}
+		return _Snapshots.grab();
+	}
+
 	/**
 	 * A helper method to create a Action that can be associated with a GUI
 	 * widget (like a JButton) to cause the tool to open up the save image
@@ -1584,9 +1616,18 @@ public class FilterToolGuiOpenCv {
 						colorRange.setColorRangeValues(cre.getValues());
 						if (_LastColorRangeImage != _Image) {
 							_ColorRangeImage = _Image.clone();
+							_LastColorRangeImage = _Image;
+							cre.setPreviewImage(_ColorRangeImage);
 						}
-						_LastColorRangeImage = colorRange.process(_ColorRangeImage.clone());
-						setImage(_LastColorRangeImage);
+					}
+				});
+				// Editor filters the image in the background as sliders move
+				cre.setPreviewImage(_ColorRangeImage);
+				cre.setPreviewListener(new ColorRangeEditor.PreviewListener() {
+					@Override
+					public void previewReady(Mat img, boolean fullResolution) {
+						_LastColorRangeImage = img;
+						setImage(img);
 					}
 				});
 				return cre;
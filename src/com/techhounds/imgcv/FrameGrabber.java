@@ -1,6 +1,7 @@
 package com.techhounds.imgcv;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -58,12 +59,31 @@ public class FrameGrabber {
 	 *         retrieved yet since the last start).
 	 */
 	public Mat getLastImage() {
+		return getLastImage(null);
+	}
+
+	/**
+	 * Returns a copy of the last image retrieved (if available) along with the
+	 * time stamps of when it was grabbed and retrieved.
+	 * 
+	 * @param trace
+	 *            Trace to fill in with the grab/retrieve times of the image
+	 *            returned (the {@link FrameTrace#HANDOFF} stage is marked as
+	 *            well). Pass null if you don't care.
+	 * @return A cloned copy of the last image retrieved (or null if no image
+	 *         retrieved yet since the last start).
+	 */
+	public Mat getLastImage(FrameTrace trace) {
 		CaptureThread ct = _CaptureThread;
 		Mat img = null;
 		if (ct != null) {
 			synchronized (ct) {
 				if (ct._LastImage != null) {
 					img = ct._LastImage.clone();
+					if (trace != null) {
+						trace.copyFrom(ct._LastTrace);
+						trace.mark(FrameTrace.HANDOFF);
+					}
 				}
 			}
 		}
@@ -161,6 +181,13 @@ public class FrameGrabber {
 	/**
 	 * Start a video feed using an IP based camera.
 	 * 
+	 * <p>
+	 * Still image URLs (like "http://10.8.68.11/jpg/1/image.jpg" - see
+	 * {@link HttpSnapshotSource#isSnapshotUrl(String)}) are fetched repeatedly
+	 * over a single keep-alive connection instead of being opened as a video
+	 * stream.
+	 * </p>
+	 * 
 	 * @param URL
 	 *            The URL to connect to for the video feed.
 	 */
@@ -213,6 +240,7 @@ public class FrameGrabber {
 		private int _Width;
 		private int _Height;
 		private Mat _LastImage;
+		private FrameTrace _LastTrace;
 		private long _FrameCount;
 		private boolean _Continue;
 		private long _FirstFrameTime;
@@ -246,25 +274,27 @@ public class FrameGrabber {
 
 		@Override
 		public void run() {
+			if (HttpSnapshotSource.isSnapshotUrl(_Url)) {
+				runSnapshots();
+				return;
+			}
 			VideoCapture vc = open(_Url, _DevId, _Width, _Height);
 			if (vc == null) {
 				return;
 			}
 
 			while (!isInterrupted() && _Continue) {
+				long grabStart = System.nanoTime();
 				if (vc.grab()) {
+					long grabbed = System.nanoTime();
 					Mat img = new Mat();
 					synchronized (this) {
 						if (vc.retrieve(img)) {
-							_LastImage = img;
-							_LastFrameTime = System.currentTimeMillis();
-							if (_FrameCount == MIN_FRAMES_FOR_FPS) {
-								_FirstFrameTime = _LastFrameTime;
-							}
-							_FrameCount++;
-
-							// See if we need to save the image
-							saveCheck(img);
+							FrameTrace trace = new FrameTrace();
+							trace.reset(_FrameCount + 1, grabStart);
+							trace.mark(FrameTrace.GRAB, grabbed);
+							trace.mark(FrameTrace.RETRIEVE);
+							setLastImage(img, trace);
 						}
 					}
 					/*
@@ -279,6 +309,69 @@ public class FrameGrabber {
 			vc.release();
 		}
 
+		/**
+		 * Fetches still images one after another from the URL (keeping a
+		 * request in flight so the camera works on the next image while we
+		 * decode the current one).
+		 */
+		private void runSnapshots() {
+			HttpSnapshotSource src;
+			try {
+				src = new HttpSnapshotSource(_Url);
+			} catch (IOException e) {
+				System.err.println("Failed to start snapshot feed from: " + _Url + " (" + e + ")");
+				return;
+			}
+			src.setPipelined(true);
+			System.err.println("Starting snapshot feed from: " + _Url);
+
+			while (!isInterrupted() && _Continue) {
+				long grabStart = System.nanoTime();
+				try {
+					Mat img = src.grab();
+					synchronized (this) {
+						FrameTrace trace = new FrameTrace();
+						trace.reset(_FrameCount + 1, grabStart);
+						trace.mark(FrameTrace.RETRIEVE);
+						setLastImage(img, trace);
+					}
+				} catch (IOException e) {
+					System.err.println("Snapshot failed: " + e.getMessage());
+					try {
+						// Don't hammer a camera that isn't there
+						Thread.sleep(1000);
+					} catch (InterruptedException ie) {
+						break;
+					}
+				}
+			}
+			System.err.println("Snapshot capture thread is stopping");
+			_FrameCount = 0;
+			_LastFrameTime = _FirstFrameTime = 0;
+			src.close();
+		}
+
+		/**
+		 * Makes a new image available (caller must hold lock).
+		 * 
+		 * @param img
+		 *            Image retrieved.
+		 * @param trace
+		 *            Time stamps of image.
+		 */
+		private void setLastImage(Mat img, FrameTrace trace) {
+			_LastImage = img;
+			_LastTrace = trace;
+			_LastFrameTime = System.currentTimeMillis();
+			if (_FrameCount == MIN_FRAMES_FOR_FPS) {
+				_FirstFrameTime = _LastFrameTime;
+			}
+			_FrameCount++;
+
+			// See if we need to save the image
+			saveCheck(img);
+		}
+
 		/**
 		 * Helper method that writes out raw images capture when the
 		 * "enable save" feature is active.
@@ -0,0 +1,244 @@
+package com.techhounds.imgcv;
+
+/**
+ * Time stamps ({@link System#nanoTime()}) recorded as a single frame makes its
+ * way from the camera to the robot.
+ *
+ * <p>
+ * The {@link FrameGrabber} starts the trace right before asking the camera for
+ * the next frame and marks when the grab and retrieve finished. The code that
+ * pulls the image from the grabber (see
+ * {@link FrameGrabber#getLastImage(FrameTrace)}) marks the hand off, then
+ * makes the trace "current" for its thread (see {@link #setCurrent(FrameTrace)})
+ * so filters can mark their own stages without any change to the
+ * {@link com.techhounds.imgcv.filters.MatFilter} interface. Use
+ * {@link FrameTraceStats} to collect the results of many frames.
+ * </p>
+ *
+ * <p>
+ * Each stage's duration is the time since the previous stage that was marked
+ * (stages that were not marked are skipped).
+ * </p>
+ */
+public final class FrameTrace {
+
+	/** Camera grab finished (the frame is available from the driver). */
+	public static final int GRAB = 0;
+	/** Frame decoded/copied into a Mat. */
+	public static final int RETRIEVE = 1;
+	/** Processing thread picked up the frame. */
+	public static final int HANDOFF = 2;
+	/** Color filtering done. */
+	public static final int COLOR = 3;
+	/** Target detection done. */
+	public static final int DETECT = 4;
+	/** Target analysis done. */
+	public static final int ANALYZE = 5;
+	/**
+	 * Results handed to the sink. When the sink is a
+	 * {@link com.techhounds.imgcv.frc2016.TargetPublisher} (how network tables
+	 * are written) this is when the report went into its mailbox, the network
+	 * table write happens later on the publisher's thread (up to one flush
+	 * period later, see
+	 * {@link com.techhounds.imgcv.frc2016.TargetPublisher#getWriteAge()}).
+	 */
+	public static final int PUBLISH = 6;
+	/** Number of stages. */
+	public static final int STAGES = 7;
+
+	private static final String[] NAMES = { "grab", "retrieve", "handoff", "color", "detect", "analyze",
+			"to_sink" };
+
+	/** Value of marks for stages that have not happened. */
+	private static final long UNMARKED = Long.MIN_VALUE;
+
+	/** Trace being processed on each thread. */
+	private static final ThreadLocal<FrameTrace> CURRENT = new ThreadLocal<FrameTrace>();
+
+	/** Frame number. */
+	private long _Frame;
+
+	/** When the trace was started (before the camera grab). */
+	private long _StartNanos;
+
+	/** When each stage finished. */
+	private final long[] _Marks = new long[STAGES];
+
+	/**
+	 * Constructs a new trace started now.
+	 */
+	public FrameTrace() {
+		reset(0, System.nanoTime());
+	}
+
+	/**
+	 * Clears all marks and starts a new trace.
+	 *
+	 * @param frame
+	 *            Frame number.
+	 * @param startNanos
+	 *            {@link System#nanoTime()} when the frame was requested.
+	 */
+	public void reset(long frame, long startNanos) {
+		_Frame = frame;
+		_StartNanos = startNanos;
+		for (int i = 0; i < STAGES; i++) {
+			_Marks[i] = UNMARKED;
+		}
+	}
+
+	/**
+	 * Copies the values of another trace.
+	 *
+	 * @param src
+	 *            Trace to copy.
+	 */
+	public void copyFrom(FrameTrace src) {
+		_Frame = src._Frame;
+		_StartNanos = src._StartNanos;
+		System.arraycopy(src._Marks, 0, _Marks, 0, STAGES);
+	}
+
+	/**
+	 * Marks a stage as finished right now.
+	 *
+	 * @param stage
+	 *            Stage that finished (like {@link #COLOR}).
+	 */
+	public void mark(int stage) {
+		_Marks[stage] = System.nanoTime();
+	}
+
+	/**
+	 * Marks a stage as finished at a specific time.
+	 *
+	 * @param stage
+	 *            Stage that finished.
+	 * @param nanos
+	 *            {@link System#nanoTime()} when it finished.
+	 */
+	public void mark(int stage, long nanos) {
+		_Marks[stage] = nanos;
+	}
+
+	/** @return Frame number. */
+	public long getFrame() {
+		return _Frame;
+	}
+
+	/** @return {@link System#nanoTime()} when trace was started. */
+	public long getStartNanos() {
+		return _StartNanos;
+	}
+
+	/**
+	 * Indicates whether a stage has been marked.
+	 *
+	 * @param stage
+	 *            Stage to check.
+	 * @return true if marked.
+	 */
+	public boolean isMarked(int stage) {
+		return _Marks[stage] != UNMARKED;
+	}
+
+	/**
+	 * Returns when a stage finished.
+	 *
+	 * @param stage
+	 *            Stage to look up.
+	 * @return {@link System#nanoTime()} value (or {@link #getStartNanos()} if
+	 *         not marked).
+	 */
+	public long getMark(int stage) {
+		return isMarked(stage) ? _Marks[stage] : _StartNanos;
+	}
+
+	/**
+	 * Returns the time a stage took.
+	 *
+	 * @param stage
+	 *            Stage to look up.
+	 * @return Nanoseconds since the previous marked stage (or start), -1 if the
+	 *         stage was not marked.
+	 */
+	public long getStageNanos(int stage) {
+		if (!isMarked(stage)) {
+			return -1;
+		}
+		long prev = _StartNanos;
+		for (int i = stage - 1; i >= 0; i--) {
+			if (isMarked(i)) {
+				prev = _Marks[i];
+				break;
+			}
+		}
+		return _Marks[stage] - prev;
+	}
+
+	/**
+	 * Returns the age of the results: time from when the camera delivered the
+	 * frame (or the trace started if there was no grab) to the last stage
+	 * marked. Time spent waiting in grab for the camera to produce the frame is
+	 * not included (see {@link #getStageNanos(int)} for that).
+	 *
+	 * @return Nanoseconds (0 if nothing marked).
+	 */
+	public long getTotalNanos() {
+		for (int i = STAGES - 1; i >= 0; i--) {
+			if (isMarked(i)) {
+				return _Marks[i] - getMark(GRAB);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the name of a stage.
+	 *
+	 * @param stage
+	 *            Stage to look up.
+	 * @return Short lower case name (like "grab").
+	 */
+	public static String getStageName(int stage) {
+		return NAMES[stage];
+	}
+
+	/**
+	 * Makes a trace the current one for the calling thread (filters mark their
+	 * stages on it).
+	 *
+	 * @param trace
+	 *            Trace for frame about to be processed (null to clear).
+	 */
+	public static void setCurrent(FrameTrace trace) {
+		CURRENT.set(trace);
+	}
+
+	/**
+	 * Returns the trace of the frame being processed by the calling thread.
+	 *
+	 * @return Current trace (or null if nobody is tracing).
+	 */
+	public static FrameTrace getCurrent() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Returns a JSON looking string of the stage times.
+	 *
+	 * @return String representation (times in milliseconds).
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{ \"frame\":");
+		sb.append(_Frame);
+		for (int i = 0; i < STAGES; i++) {
+			long ns = getStageNanos(i);
+			if (ns >= 0) {
+				sb.append(", \"").append(NAMES[i]).append("\":").append(String.format("%.3f", ns / 1e6));
+			}
+		}
+		sb.append(", \"total\":").append(String.format("%.3f", getTotalNanos() / 1e6)).append(" }");
+		return sb.toString();
+	}
+}
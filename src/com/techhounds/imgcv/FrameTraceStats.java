@@ -0,0 +1,116 @@
+package com.techhounds.imgcv;
+
+import com.techhounds.imgcv.utils.LatencyHistogram;
+import com.techhounds.imgcv.utils.MetricsServer;
+
+/**
+ * Collects {@link FrameTrace}s into a histogram per stage (plus one for the
+ * total capture to publish time) so you can see how stale the values the
+ * robot acts on are and which stage is to blame.
+ *
+ * <p>
+ * Can be served by a {@link MetricsServer} (it writes the percentiles in the
+ * plain text format most metrics collectors understand).
+ * </p>
+ */
+public final class FrameTraceStats implements MetricsServer.Source {
+
+	/** Percentiles reported by {@link #writeMetrics(StringBuilder)}. */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	/** Quantile labels matching {@link #PERCENTILES}. */
+	private static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+	/** Histogram of each stage. */
+	private final LatencyHistogram[] _Stages = new LatencyHistogram[FrameTrace.STAGES];
+
+	/** Histogram of total (capture to last stage) times. */
+	private final LatencyHistogram _Total = new LatencyHistogram();
+
+	/**
+	 * Constructs a new instance with nothing recorded.
+	 */
+	public FrameTraceStats() {
+		for (int i = 0; i < FrameTrace.STAGES; i++) {
+			_Stages[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Records the times of a frame (stages which were not marked are
+	 * skipped).
+	 *
+	 * @param trace
+	 *            Trace of a frame that has been fully processed.
+	 */
+	public void record(FrameTrace trace) {
+		for (int i = 0; i < FrameTrace.STAGES; i++) {
+			_Stages[i].record(trace.getStageNanos(i));
+		}
+		_Total.record(trace.getTotalNanos());
+	}
+
+	/**
+	 * Returns the histogram for a stage.
+	 *
+	 * @param stage
+	 *            Stage like {@link FrameTrace#GRAB}.
+	 * @return Histogram of stage times.
+	 */
+	public LatencyHistogram getStage(int stage) {
+		return _Stages[stage];
+	}
+
+	/** @return Histogram of capture to publish times. */
+	public LatencyHistogram getTotal() {
+		return _Total;
+	}
+
+	/** Clears all histograms. */
+	public void reset() {
+		for (LatencyHistogram h : _Stages) {
+			h.reset();
+		}
+		_Total.reset();
+	}
+
+	/**
+	 * Writes lines like {@code vision_latency_us{stage="total",quantile="0.99"} 12345}.
+	 */
+	@Override
+	public void writeMetrics(StringBuilder sb) {
+		for (int i = 0; i <= FrameTrace.STAGES; i++) {
+			LatencyHistogram h = (i < FrameTrace.STAGES) ? _Stages[i] : _Total;
+			String stage = (i < FrameTrace.STAGES) ? FrameTrace.getStageName(i) : "total";
+			if (h.getCount() == 0) {
+				continue;
+			}
+			for (int j = 0; j < PERCENTILES.length; j++) {
+				sb.append("vision_latency_us{stage=\"").append(stage).append("\",quantile=\"").append(QUANTILES[j])
+						.append("\"} ").append(h.getPercentile(PERCENTILES[j])).append('\n');
+			}
+			sb.append("vision_latency_us_max{stage=\"").append(stage).append("\"} ").append(h.getMax()).append('\n');
+			sb.append("vision_latency_us_count{stage=\"").append(stage).append("\"} ").append(h.getCount())
+					.append('\n');
+		}
+	}
+
+	/**
+	 * Returns a table of percentiles (one line per stage).
+	 *
+	 * @return Multi-line string (times in milliseconds).
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Stage          p50      p90      p99      max    count\n");
+		for (int i = 0; i <= FrameTrace.STAGES; i++) {
+			LatencyHistogram h = (i < FrameTrace.STAGES) ? _Stages[i] : _Total;
+			if (h.getCount() == 0) {
+				continue;
+			}
+			String stage = (i < FrameTrace.STAGES) ? FrameTrace.getStageName(i) : "total";
+			sb.append(String.format("%-10s %8.2f %8.2f %8.2f %8.2f %8d%n", stage, h.getPercentile(50) / 1e3,
+					h.getPercentile(90) / 1e3, h.getPercentile(99) / 1e3, h.getMax() / 1e3, h.getCount()));
+		}
+		return sb.toString();
+	}
+}
@@ -3,6 +3,7 @@ package com.techhounds.imgcv;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 
 import javax.swing.JComponent;
 
@@ -22,6 +23,12 @@ public final class JMat extends JComponent {
 	/** Copy of the image we need to draw. */
 	private BufferedImage _Image;
 
+	/**
+	 * Image kept around to copy the next matrix into (so we don't allocate a
+	 * new image for every frame).
+	 */
+	private BufferedImage _Buffer;
+
 	/**
 	 * Constructs a new blank instance.
 	 */
@@ -51,6 +58,13 @@ public final class JMat extends JComponent {
 	/**
 	 * Set a new OpenCV matrix as the image to display.
 	 * 
+	 * <p>
+	 * The pixels are copied directly into the raster of a {@link BufferedImage}
+	 * that is reused from call to call (it is only reallocated when the size or
+	 * type of the matrix changes). Like other Swing methods, this should only
+	 * be called on the Swing event thread.
+	 * </p>
+	 * 
 	 * @param mat
 	 *            The OpenCV matrix to display as a Java image. Must be
 	 *            CvType.CV_8UC3 for color or CvType.CV_8UC1 for grayscale and
@@ -61,18 +75,28 @@ public final class JMat extends JComponent {
 	 */
 	public boolean setMat(Mat mat) {
 		if (mat != null) {
+			int imgType;
 			if (mat.type() == CvType.CV_8UC1) {
-				BufferedImage img = Conversion.cvGrayToBufferedImage(mat);
-				_Image = img;
-				repaint();
+				imgType = BufferedImage.TYPE_BYTE_GRAY;
 			} else if (mat.type() == CvType.CV_8UC3) {
-				BufferedImage img = Conversion.cvRgbToBufferedImage(mat);
-				_Image = img;
-				repaint();
+				// Same byte order as OpenCV's BGR matrices
+				imgType = BufferedImage.TYPE_3BYTE_BGR;
 			} else {
 				// Not an image type we accept
 				return false;
 			}
+			BufferedImage img = _Buffer;
+			if ((img == null) || (img.getType() != imgType)
+					|| (img.getWidth() != mat.cols())
+					|| (img.getHeight() != mat.rows())) {
+				img = new BufferedImage(mat.cols(), mat.rows(), imgType);
+				_Buffer = img;
+			}
+			byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer())
+					.getData();
+			mat.get(0, 0, data);
+			_Image = img;
+			repaint();
 		} else if (_Image != null) {
 			_Image = null;
 			repaint();
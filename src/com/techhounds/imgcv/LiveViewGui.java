@@ -31,6 +31,7 @@ import com.techhounds.imgcv.filters.DoNothingFilter;
 import com.techhounds.imgcv.filters.GrayScale;
 import com.techhounds.imgcv.filters.MatFilter;
 import com.techhounds.imgcv.filters.Sequence;
+import com.techhounds.imgcv.utils.Log;
 
 import javax.swing.*;
 
@@ -38,6 +39,8 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.border.BevelBorder;
 import javax.swing.event.ChangeEvent;
@@ -80,10 +83,15 @@ import org.opencv.highgui.Highgui;
  */
 public class LiveViewGui {
 
+	/** Default maximum number of times per second the displayed image is updated. */
+	public static final double DEFAULT_DISPLAY_RATE = 30;
+
+	private static final Log LOG = Log.getLog("LiveViewGui");
+
 	/**
 	 * Current image loaded and displayed.
 	 */
-	private Mat _Image = null;
+	private volatile Mat _Image = null;
 
 	/**
 	 * Last URL that was opened.
@@ -136,14 +144,45 @@ public class LiveViewGui {
 	private FrameGrabber _FrameGrabber;
 
 	/**
-	 * Timer used for live video feed handling.
+	 * Background thread that runs the filter on each new frame (null if not
+	 * running).
 	 */
-	private final Timer _CaptureTimer;
+	private Thread _ProcessThread;
+
+	/** Set to false to ask the processing thread to exit. */
+	private volatile boolean _Processing;
+
+	/**
+	 * Latest filtered image waiting to be displayed (older images that the
+	 * Swing thread did not get to are replaced and never shown).
+	 */
+	private final AtomicReference<Mat> _DisplaySlot = new AtomicReference<Mat>();
+
+	/** Runs on the Swing thread to display the image in the slot. */
+	private final Runnable _DisplayUpdater;
+
+	/**
+	 * Used to delay the display of the next image when it arrives sooner than
+	 * the display rate allows.
+	 */
+	private final Timer _DisplayTimer;
+
+	/** Maximum number of display updates per second (0 to not display). */
+	private volatile double _DisplayRate = DEFAULT_DISPLAY_RATE;
+
+	/** When the last image was displayed (only used on Swing thread). */
+	private long _LastDisplayNanos;
+
+	/** Number of filtered images displayed. */
+	private volatile long _DisplayedCount;
+
+	/** Number of filtered images that were never displayed. */
+	private volatile long _DroppedCount;
 
 	/**
 	 * The filter to apply.
 	 */
-	private MatFilter _Filter;
+	private volatile MatFilter _Filter;
 
 	/** Displays the FPS of images coming in from the source. */
 	private JLabel _CameraFps;
@@ -151,11 +190,17 @@ public class LiveViewGui {
 	/** Displays the estimated maximum FPS of the filter code. */
 	private JLabel _FilterFps;
 
-	/** Number of images processed. */
-	protected int _FilteredCount;
+	/** Number of images processed (updated by the processing thread). */
+	protected volatile int _FilteredCount;
 
 	/** Total number of nanoseconds spent processing images. */
-	protected long _FilteredDur;
+	protected volatile long _FilteredDur;
+
+	/** Time stamps of frame being processed (reused). */
+	private final FrameTrace _Trace = new FrameTrace();
+
+	/** Capture to publish times of frames processed. */
+	private final FrameTraceStats _TraceStats = new FrameTraceStats();
 
 	/**
 	 * Constructs a new instance with a given title - you will override.
@@ -176,44 +221,181 @@ public class LiveViewGui {
 
 		_FrameGrabber = new FrameGrabber();
 
-		_CaptureTimer = new Timer(10, new ActionListener() {
-			long lastFrame = 0;
+		_DisplayUpdater = new Runnable() {
+			boolean packed = false;
+			int displayed = 0;
 
 			@Override
-			public void actionPerformed(ActionEvent e) {
-				long frame = _FrameGrabber.getFrameCount();
-				if (frame != lastFrame) {
-					Mat img = _FrameGrabber.getLastImage();
-					if (img != null) {
-						_Image = img;
-						MatFilter filter = _Filter;
-
-						long start = System.nanoTime();
-						Mat results = filter.process(img);
-						long end = System.nanoTime();
-
-						_FilteredCount++;
-						_FilteredDur += (end - start);
-						if ((_FilterFps != null)
-								&& ((_FilteredCount % 20) == 0)) {
-							_FilterFps.setText("" + getFilterFps());
-						}
-
-						_ImageViewer.setMat(results);
+			public void run() {
+				if (_DisplaySlot.get() == null) {
+					return;
+				}
+				// Too soon? Try again when allowed (images that arrive in the
+				// mean time replace the one waiting in the slot)
+				long wait = _LastDisplayNanos + getDisplayPeriodNanos() - System.nanoTime();
+				if (wait > 0) {
+					if (!_DisplayTimer.isRunning()) {
+						_DisplayTimer.setInitialDelay((int) ((wait + 999999) / 1000000));
+						_DisplayTimer.restart();
 					}
-					if (lastFrame == 0) {
-						_ImageViewer.setSize(_ImageViewer.getPreferredSize());
-						_JFrame.pack();
+					return;
+				}
+				Mat results = _DisplaySlot.getAndSet(null);
+				if (results == null) {
+					return;
+				}
+				_LastDisplayNanos = System.nanoTime();
+				_DisplayedCount++;
+				_ImageViewer.setMat(results);
+				if (!packed) {
+					_ImageViewer.setSize(_ImageViewer.getPreferredSize());
+					_JFrame.pack();
+					packed = true;
+				}
+				if ((++displayed % 10) == 0) {
+					if (_CameraFps != null) {
+						_CameraFps.setText("" + _FrameGrabber.getFps());
 					}
-					lastFrame = frame;
-					if ((_CameraFps != null) && ((frame % 10) == 0)) {
-						_CameraFps.setText("" + getFrameGrabberFps());
+					if (_FilterFps != null) {
+						_FilterFps.setText("" + getFilterFps());
 					}
-					// Notify everyone that image has been updated
-					imageUpdated();
 				}
+				// Notify everyone that image has been updated
+				imageUpdated();
+			}
+		};
+
+		_DisplayTimer = new Timer(0, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				_DisplayUpdater.run();
 			}
 		});
+		_DisplayTimer.setRepeats(false);
+	}
+
+	/** Minimum time between display updates (in nanoseconds). */
+	private long getDisplayPeriodNanos() {
+		double rate = _DisplayRate;
+		return (rate > 0) ? (long) (1e9 / rate) : 0;
+	}
+
+	/**
+	 * Sets the maximum rate the displayed image is updated at. Frames are
+	 * still filtered as fast as they arrive, those that come in faster than
+	 * this rate are not converted or drawn (they are counted as dropped).
+	 * 
+	 * @param hz
+	 *            Maximum number of display updates per second (like 15 or 30),
+	 *            0 to stop updating the display (only filter).
+	 */
+	public void setDisplayRate(double hz) {
+		_DisplayRate = Math.max(0, hz);
+	}
+
+	/**
+	 * Returns the maximum rate the displayed image is updated at.
+	 * 
+	 * @return Display updates per second (0 if display updates are off).
+	 */
+	public double getDisplayRate() {
+		return _DisplayRate;
+	}
+
+	/**
+	 * Returns the number of frames processed by the filter since the filter
+	 * was last set.
+	 * 
+	 * @return Count of filtered frames (displayed + dropped + any waiting to
+	 *         be displayed).
+	 */
+	public int getFilteredCount() {
+		return _FilteredCount;
+	}
+
+	/**
+	 * Returns the number of filtered frames displayed since the filter was
+	 * last set.
+	 * 
+	 * @return Count of displayed frames.
+	 */
+	public long getDisplayedCount() {
+		return _DisplayedCount;
+	}
+
+	/**
+	 * Returns the number of filtered frames that were never displayed (newer
+	 * results replaced them before the display got to them) since the filter
+	 * was last set.
+	 * 
+	 * @return Count of dropped frames.
+	 */
+	public long getDroppedCount() {
+		return _DroppedCount;
+	}
+
+	/**
+	 * Body of the processing thread, runs the filter on each new frame from the
+	 * grabber and passes the results to the Swing thread for display.
+	 *
+	 * <p>
+	 * The filter never runs on the Swing thread and the Swing thread never
+	 * waits on the filter. If the filter produces images faster than they can
+	 * be displayed (or faster than the display rate - see
+	 * {@link #setDisplayRate(double)}), only the most recent one is shown.
+	 * </p>
+	 */
+	private void processFrames() {
+		long lastFrame = 0;
+		while (_Processing) {
+			long frame = _FrameGrabber.getFrameCount();
+			if (frame == lastFrame) {
+				// Nothing new from the camera yet
+				LockSupport.parkNanos(2000000);
+				continue;
+			}
+			lastFrame = frame;
+
+			Mat img = _FrameGrabber.getLastImage(_Trace);
+			if (img == null) {
+				continue;
+			}
+			_Image = img;
+			MatFilter filter = _Filter;
+
+			// Let the filter mark its stages on the frame's trace
+			FrameTrace.setCurrent(_Trace);
+			long start = System.nanoTime();
+			Mat results;
+			try {
+				results = filter.process(img);
+			} catch (RuntimeException e) {
+				// A bad frame must not stop the live view, skip it and move
+				// on to the next one
+				LOG.warn("Filter failed on frame " + frame + ":", e);
+				continue;
+			} finally {
+				FrameTrace.setCurrent(null);
+			}
+			long end = System.nanoTime();
+			_TraceStats.record(_Trace);
+
+			_FilteredCount++;
+			_FilteredDur += (end - start);
+
+			if (_DisplayRate <= 0) {
+				// Display is turned off
+				_DroppedCount++;
+				continue;
+			}
+			// Only wake the Swing thread if it isn't already going to display
+			// something
+			if (_DisplaySlot.getAndSet(results) == null) {
+				SwingUtilities.invokeLater(_DisplayUpdater);
+			} else {
+				_DroppedCount++;
+			}
+		}
 	}
 
 	/**
@@ -229,6 +411,16 @@ public class LiveViewGui {
 		return 0;
 	}
 	
+	/**
+	 * Returns the latency statistics (capture through each filter stage) of
+	 * the frames processed since the filter was last set.
+	 * 
+	 * @return Statistics (updated as frames are processed).
+	 */
+	public FrameTraceStats getTraceStats() {
+		return _TraceStats;
+	}
+
 	public int getFrameGrabberFps() {
 		if(_FrameGrabber.getFrameCount() % 10 == 0) {
 			return _FrameGrabber.getFps();
@@ -265,6 +457,9 @@ public class LiveViewGui {
 	public void setFilter(MatFilter filter) {
 		_FilteredCount = 0;
 		_FilteredDur = 0;
+		_DisplayedCount = 0;
+		_DroppedCount = 0;
+		_TraceStats.reset();
 		_Filter = filter;
 	}
 
@@ -366,8 +561,7 @@ public class LiveViewGui {
 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				_FrameGrabber.stop();
-				_CaptureTimer.stop();
+				stopVideoFeed();
 				System.exit(0);
 			}
 		}));
@@ -955,8 +1149,8 @@ public class LiveViewGui {
 	}
 
 	/**
-	 * Starts the background thread and timer that read and procees images off
-	 * the video stream.
+	 * Starts the background threads that read and process images off the
+	 * video stream.
 	 */
 	public void startVideoFeed() {
 		stopVideoFeed();
@@ -965,20 +1159,36 @@ public class LiveViewGui {
 		// url = "rtsp://10.8.68.11:554/axis-media/media.amp?videocodec=h264";
 		if (_UseUrl) {
 			_FrameGrabber.start(_Url);
-			_CaptureTimer.start();
 		} else {
 			_FrameGrabber.start(_DeviceId, _FrameWidth, _FrameHeight);
-			_CaptureTimer.start();
 		}
+		_Processing = true;
+		_ProcessThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				processFrames();
+			}
+		}, "FrameProcessor");
+		_ProcessThread.setDaemon(true);
+		_ProcessThread.start();
 	}
 
 	/**
-	 * Stops the background thread and timer used to read and process images off
-	 * the video stream.
+	 * Stops the background threads used to read and process images off the
+	 * video stream (waits for the frame being filtered to finish).
 	 */
 	public void stopVideoFeed() {
 		_FrameGrabber.stop();
-		_CaptureTimer.stop();
+		_Processing = false;
+		Thread t = _ProcessThread;
+		_ProcessThread = null;
+		if ((t != null) && (t != Thread.currentThread())) {
+			try {
+				t.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	protected JFrame getFrame() {
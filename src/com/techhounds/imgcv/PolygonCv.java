@@ -28,6 +28,7 @@ package com.techhounds.imgcv;
 import java.util.ArrayList;
 import java.util.List;
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
@@ -46,14 +47,32 @@ import org.opencv.imgproc.Imgproc;
  * rectangle which contains all of the points making up the polygon).
  * </p>
  *
+ * <p>
+ * The points are held in a flat Java array of interleaved (x, y) values so
+ * that analysis and edge searches never need to cross over to the native
+ * opencv library. Opencv matrices are only created (and then cached) when
+ * requested (typically when drawing).
+ * </p>
+ *
  * @author pkb
  */
 public class PolygonCv {
 
 	/**
-	 * Points defining the vertices of the polygon.
+	 * Points defining the vertices of the polygon stored as interleaved
+	 * values (x0, y0, x1, y1, ...).
+	 */
+	private final float[] _Points;
+
+	/**
+	 * Number of points in the polygon.
 	 */
-	private final MatOfPoint2f _Points;
+	private final int _Size;
+
+	/**
+	 * Opencv version of the points (lazily created when first requested).
+	 */
+	private MatOfPoint2f _PointsMat;
 
 	/**
 	 * Constant used to identify the index of the X component within a point
@@ -107,8 +126,7 @@ public class PolygonCv {
 	 * Constructs a new instance of a polygon with 0 points.
 	 */
 	public PolygonCv() {
-		_Points = new MatOfPoint2f();
-		analyze();
+		this(new float[0], 0);
 	}
 
 	/**
@@ -120,7 +138,33 @@ public class PolygonCv {
 	 *            Y is taken from second).
 	 */
 	public PolygonCv(MatOfPoint2f points) {
-		_Points = points;
+		_Size = points.rows();
+		_Points = new float[_Size * 2];
+		if (_Size > 0) {
+			points.get(0, 0, _Points);
+		}
+		_PointsMat = points;
+		analyze();
+	}
+
+	/**
+	 * Constructs a new instance of a polygon from an array of interleaved
+	 * coordinates.
+	 *
+	 * @param xy
+	 *            Array of interleaved coordinates (x0, y0, x1, y1, ...). The
+	 *            array is NOT copied, the polygon takes ownership of it.
+	 * @param n
+	 *            The number of points to use from the array (the array must
+	 *            hold at least 2 * n values).
+	 */
+	public PolygonCv(float[] xy, int n) {
+		if (xy.length < (n * 2)) {
+			throw new IllegalArgumentException("Array holds "
+					+ (xy.length / 2) + " points, " + n + " requested");
+		}
+		_Points = xy;
+		_Size = n;
 		analyze();
 	}
 
@@ -140,7 +184,8 @@ public class PolygonCv {
 	 *         polygon lines the "trace over" the rough contour points.
 	 */
 	public static PolygonCv fromContour(MatOfPoint contour, double epsilon) {
-		MatOfPoint2f contour2f = new MatOfPoint2f(contour.toArray());
+		MatOfPoint2f contour2f = new MatOfPoint2f();
+		contour.convertTo(contour2f, CvType.CV_32F);
 		MatOfPoint2f poly = new MatOfPoint2f();
 		Imgproc.approxPolyDP(contour2f, poly, epsilon, true);
 		return new PolygonCv(poly);
@@ -152,7 +197,7 @@ public class PolygonCv {
 	 * @return Number of points you can look at.
 	 */
 	public int size() {
-		return _Points.rows();
+		return _Size;
 	}
 
 	/**
@@ -272,7 +317,30 @@ public class PolygonCv {
 	 *            the Y value will be put into data[{@link #Y}].
 	 */
 	public void getPoint(int i, float[] data) {
-		_Points.get(i, 0, data);
+		data[X] = _Points[i * 2 + X];
+		data[Y] = _Points[i * 2 + Y];
+	}
+
+	/**
+	 * Get the X coordinate of a specific point in the polygon.
+	 *
+	 * @param i
+	 *            The index of the point in the range [0, {@link #size()} - 1].
+	 * @return The X coordinate of the point.
+	 */
+	public float getX(int i) {
+		return _Points[i * 2 + X];
+	}
+
+	/**
+	 * Get the Y coordinate of a specific point in the polygon.
+	 *
+	 * @param i
+	 *            The index of the point in the range [0, {@link #size()} - 1].
+	 * @return The Y coordinate of the point.
+	 */
+	public float getY(int i) {
+		return _Points[i * 2 + Y];
 	}
 
 	/**
@@ -284,18 +352,29 @@ public class PolygonCv {
 	 *         requested point.
 	 */
 	public Point getPoint(int i) {
-		float[] vals = new float[2];
-		_Points.get(i, 0, vals);
-		return new Point(vals[X], vals[Y]);
+		return new Point(getX(i), getY(i));
 	}
 
 	/**
 	 * Returns the entire collection of points making up the polygon.
 	 *
+	 * <p>
+	 * NOTE: The matrix is created on the first request and then cached, you
+	 * should not modify it.
+	 * </p>
+	 *
 	 * @return Collection of points (floating point values).
 	 */
 	public MatOfPoint2f toMatOfPoint2f() {
-		return _Points;
+		if (_PointsMat == null) {
+			MatOfPoint2f pts = new MatOfPoint2f();
+			if (_Size > 0) {
+				pts.alloc(_Size);
+				pts.put(0, 0, _Points);
+			}
+			_PointsMat = pts;
+		}
+		return _PointsMat;
 	}
 
 	/**
@@ -306,7 +385,17 @@ public class PolygonCv {
 	 *         "contours".
 	 */
 	public MatOfPoint toContour() {
-		return new MatOfPoint(_Points.toArray());
+		MatOfPoint contour = new MatOfPoint();
+		if (_Size > 0) {
+			int[] pts = new int[_Size * 2];
+			for (int i = 0; i < pts.length; i++) {
+				// Same truncation as opencv's Point -> int conversion
+				pts[i] = (int) _Points[i];
+			}
+			contour.alloc(_Size);
+			contour.put(0, 0, pts);
+		}
+		return contour;
 	}
 
 	/**
@@ -371,24 +460,20 @@ public class PolygonCv {
 	 */
 	public boolean findVerticalSegment(Point bot, Point top, double minX,
 			double maxX) {
-		ArrayList<Point> pts = getPointsInXRange(minX, maxX);
+		int found = 0;
 
-		// Need at least two points
-		int n = pts.size();
-		if (n < 2) {
-			return false;
-		}
-
-		// Move ends to upper and lower
-		Point pt0 = pts.get(0);
-		bot.x = top.x = pt0.x;
-		bot.y = top.y = pt0.y;
-		for (int i = 1; i < n; i++) {
-			Point pti = pts.get(i);
-			double x = pti.x;
-			double y = pti.y;
+		// Move ends to upper and lower (considering only points in X range)
+		for (int i = 0; i < _Size; i++) {
+			float x = _Points[i * 2 + X];
+			if ((x < minX) || (x > maxX)) {
+				continue;
+			}
+			float y = _Points[i * 2 + Y];
 
-			if (y < bot.y) {
+			if (found++ == 0) {
+				bot.x = top.x = x;
+				bot.y = top.y = y;
+			} else if (y < bot.y) {
 				bot.y = y;
 				bot.x = x;
 			} else if (y > top.y) {
@@ -396,7 +481,9 @@ public class PolygonCv {
 				top.x = x;
 			}
 		}
-		return true;
+
+		// Need at least two points
+		return (found >= 2);
 	}
 
 	/**
@@ -412,13 +499,11 @@ public class PolygonCv {
 	 */
 	public ArrayList<Point> getPointsInXRange(double minX, double maxX) {
 		ArrayList<Point> points = new ArrayList<Point>();
-		int n = size();
 
-		for (int i = 0; i < n; i++) {
-			Point p = getPoint(i);
-			double x = p.x;
+		for (int i = 0; i < _Size; i++) {
+			float x = _Points[i * 2 + X];
 			if ((x >= minX) && (x <= maxX)) {
-				points.add(p);
+				points.add(new Point(x, _Points[i * 2 + Y]));
 			}
 		}
 
@@ -562,10 +647,8 @@ public class PolygonCv {
 	 * composite values (like those related to the polygon's bounding box).
 	 */
 	private void analyze() {
-		int n = size();
-		float[] pt = new float[2];
-		float[] minPt = new float[2];
-		float[] maxPt = new float[2];
+		int n = _Size;
+		float[] pts = _Points;
 		_Closed = false;
 
 		// If no points, just set everything to 0
@@ -577,44 +660,43 @@ public class PolygonCv {
 		}
 
 		// Initialize min/max values with first point
-		getPoint(0, minPt);
-		getPoint(0, maxPt);
+		float minX = pts[X];
+		float maxX = minX;
+		float minY = pts[Y];
+		float maxY = minY;
 
 		// Iterate through rest of points looking for new min/max values
-		for (int i = 1; i < n; i++) {
-			getPoint(i, pt);
-			float x = pt[X];
-			float y = pt[Y];
-
-			if (y < minPt[Y]) {
-				minPt[Y] = y;
-			} else if (y > maxPt[Y]) {
-				maxPt[Y] = y;
+		int end = n * 2;
+		for (int i = 2; i < end; i += 2) {
+			float x = pts[i + X];
+			float y = pts[i + Y];
+
+			if (y < minY) {
+				minY = y;
+			} else if (y > maxY) {
+				maxY = y;
 			}
 
-			if (x < minPt[X]) {
-				minPt[X] = x;
-			} else if (x > maxPt[X]) {
-				maxPt[X] = x;
+			if (x < minX) {
+				minX = x;
+			} else if (x > maxX) {
+				maxX = x;
 			}
 		}
 
 		// Set determined values
-		_MinX = minPt[X];
-		_MaxX = maxPt[X];
-		_MinY = minPt[Y];
-		_MaxY = maxPt[Y];
+		_MinX = minX;
+		_MaxX = maxX;
+		_MinY = minY;
+		_MaxY = maxY;
 		_Width = _MaxX - _MinX;
 		_Height = _MaxY - _MinY;
 		_AspectRatio = (_Height > 0) ? (_Width / _Height) : Float.MAX_VALUE;
 		_BoundsArea = (_Width * _Height);
 
 		// Check if closed
-		float[] firstPt = new float[2];
-		getPoint(0, firstPt);
-		float[] lastPt = new float[2];
-		getPoint(n - 1, lastPt);
-		_Closed = (firstPt[X] == lastPt[X]) && (firstPt[Y] == lastPt[Y]);
+		int last = end - 2;
+		_Closed = (pts[X] == pts[last + X]) && (pts[Y] == pts[last + Y]);
 	}
 
 	/**
@@ -36,6 +36,7 @@ import com.techhounds.imgcv.filters.Erode;
 import com.techhounds.imgcv.filters.GrayScale;
 import com.techhounds.imgcv.filters.MatFilter;
 import com.techhounds.imgcv.filters.Sequence;
+import com.techhounds.imgcv.utils.PolygonPairFinder;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -87,6 +88,9 @@ public final class FindStanchion2015 implements MatFilter {
 	/** Sequence of filters to apply to image to end up with BW to look for objects. */
 	private Sequence _Filter;
 
+	/** Used to find nested pairs of polygons. */
+	private final PolygonPairFinder _PairFinder = new PolygonPairFinder();
+
     /**
      * Constructs a new instance by pre-allocating all of our image filtering
      * objects.
@@ -254,27 +258,19 @@ public final class FindStanchion2015 implements MatFilter {
         boolean searchForPairs = false;
 
         if (searchForPairs) {
-            // Start checking at the second item.
-            for (int i = 1; i < pCnt; i++) {
-                PolygonCv pi = pArr[i];
-
-                // Check against all other prior polygons that we haven't used
-                for (int j = 0; j < i; j++) {
-                    PolygonCv pj = pArr[j];
-
-                    // If prior polygon not used yet and it contains us or we contain it, then add both to the list of found targets.
-                    // (We might want to change this to just adding the outer polygon).
-                    if ((pj != null) && (pi.contains(pj) || pj.contains(pi))) {
-                        reduced.add(pi.toContour());
-                        reduced.add(pj.toContour());
-                        pi.drawInfo(output, _Color);
-                        pj.drawInfo(output, _Color);
-
-                        // Indicate that we have used both polygons (prevent them
-                        // from being used again)
-                        pArr[i] = pArr[j] = null;
-                    }
-                }
+            // Find polygons that contain (or are contained by) another polygon,
+            // each polygon is used in at most one pair.
+            int pairs = _PairFinder.findNestedPairs(pArr, pCnt);
+            for (int k = 0; k < pairs; k++) {
+                PolygonCv pi = pArr[_PairFinder.getFirst(k)];
+                PolygonCv pj = pArr[_PairFinder.getSecond(k)];
+
+                // Add both to the list of found targets.
+                // (We might want to change this to just adding the outer polygon).
+                reduced.add(pi.toContour());
+                reduced.add(pj.toContour());
+                pi.drawInfo(output, _Color);
+                pj.drawInfo(output, _Color);
             }
         } else {
             // Not searching for pairs, just add contours for all of the polygons
@@ -2,12 +2,17 @@ package com.techhounds.imgcv.filters;
 
 import java.util.ArrayList;
 
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.utils.Converters;
 
+import com.techhounds.imgcv.PolygonCv;
+
 /**
  * This filter is used to "untilt" images when your camera is angled (not
  * perpendicular to the wall).
@@ -18,12 +23,35 @@ import org.opencv.utils.Converters;
  * "stretches" the image in an attempt to straighten the vertical edges of your
  * target.
  * </p>
+ * 
+ * <p>
+ * The transform is converted to fixed point remap tables once per image size
+ * and ratio, so each frame only costs a single {@link Imgproc#remap} call. If
+ * you only need to measure detected targets, enable points only mode and use
+ * {@link #transform(PolygonCv)} on the polygons you find instead of
+ * untilting every pixel of every frame.
+ * </p>
  */
 public class CameraUntilt implements MatFilter {
 
 	// Used when applying the vertical perspective transform
 	private Mat perspectiveTransform;
 
+	// Fixed point remap tables computed from transform (empty until needed)
+	private final Mat map1 = new Mat();
+	private final Mat map2 = new Mat();
+	private boolean haveMaps;
+
+	// Output buffer leased to caller until next process() call (when enabled)
+	private Mat output;
+	private boolean reuseOutput;
+
+	// When true, process() leaves images alone (see transform(PolygonCv))
+	private boolean pointsOnly;
+
+	// Reused destination when transforming points
+	private final MatOfPoint2f dstPoints = new MatOfPoint2f();
+
 	// Used when computing transform
 	private double width;
 	private double height;
@@ -105,6 +133,124 @@ public class CameraUntilt implements MatFilter {
 		Mat dst = Converters.vector_Point2f_to_Mat(dstPts);
 
 		perspectiveTransform = Imgproc.getPerspectiveTransform(src, dst);
+		haveMaps = false;
+	}
+
+	/**
+	 * Builds the remap tables for the current transform and image size.
+	 * 
+	 * <p>
+	 * For each pixel in the output image we compute the location in the source
+	 * image it comes from (the inverse transform - just like warpPerspective
+	 * does on every call), then let OpenCV convert the tables to its compact
+	 * fixed point format.
+	 * </p>
+	 */
+	private void updateMaps() {
+		int w = (int) width;
+		int h = (int) height;
+		double[] m = new double[9];
+		perspectiveTransform.inv().get(0, 0, m);
+
+		float[] xs = new float[w * h];
+		float[] ys = new float[w * h];
+		int i = 0;
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				double sw = m[6] * x + m[7] * y + m[8];
+				double s = (sw != 0) ? 1.0 / sw : 0;
+				xs[i] = (float) ((m[0] * x + m[1] * y + m[2]) * s);
+				ys[i] = (float) ((m[3] * x + m[4] * y + m[5]) * s);
+				i++;
+			}
+		}
+
+		Mat mapX = new Mat(h, w, CvType.CV_32FC1);
+		Mat mapY = new Mat(h, w, CvType.CV_32FC1);
+		mapX.put(0, 0, xs);
+		mapY.put(0, 0, ys);
+		Imgproc.convertMaps(mapX, mapY, map1, map2, CvType.CV_16SC2);
+		mapX.release();
+		mapY.release();
+		haveMaps = true;
+	}
+
+	/**
+	 * Controls whether {@link #process(Mat)} allocates a new image on each
+	 * call (the default) or reuses a single output buffer.
+	 * 
+	 * <p>
+	 * When enabled, the returned image is "leased" to the caller: its contents
+	 * are overwritten on the next call to {@link #process(Mat)}. Only enable
+	 * this when the result is consumed before the next frame is processed (do
+	 * not enable it for tools that keep prior images around, like undo).
+	 * </p>
+	 * 
+	 * @param reuse
+	 *            Pass true to reuse the output buffer.
+	 */
+	public void setReuseOutput(boolean reuse) {
+		reuseOutput = reuse;
+		if (!reuse) {
+			output = null;
+		}
+	}
+
+	/**
+	 * Enables/disables points only mode.
+	 * 
+	 * @param enable
+	 *            Pass true if you only want to untilt polygon points via
+	 *            {@link #transform(PolygonCv)} ({@link #process(Mat)} will
+	 *            return images untouched).
+	 */
+	public void setPointsOnly(boolean enable) {
+		pointsOnly = enable;
+	}
+
+	/**
+	 * Indicates whether we are in points only mode.
+	 * 
+	 * @return true if process() leaves images untouched.
+	 */
+	public boolean isPointsOnly() {
+		return pointsOnly;
+	}
+
+	/**
+	 * Sets the size of the images that points will come from (only needed in
+	 * points only mode as {@link #process(Mat)} adjusts automatically).
+	 * 
+	 * @param w
+	 *            Width of images in pixels.
+	 * @param h
+	 *            Height of images in pixels.
+	 */
+	public void setImageSize(double w, double h) {
+		if (w != width || h != height) {
+			width = w;
+			height = h;
+			updateTransform();
+		}
+	}
+
+	/**
+	 * Applies the same perspective transform used on images to the points of a
+	 * polygon (much cheaper than transforming all of the pixels).
+	 * 
+	 * @param poly
+	 *            Polygon found in the tilted image (see
+	 *            {@link #setImageSize(double, double)}).
+	 * @return New polygon with untilted points.
+	 */
+	public PolygonCv transform(PolygonCv poly) {
+		if (poly.size() == 0) {
+			return poly;
+		}
+		Core.perspectiveTransform(poly.toMatOfPoint2f(), dstPoints, perspectiveTransform);
+		float[] xy = new float[poly.size() * 2];
+		dstPoints.get(0, 0, xy);
+		return new PolygonCv(xy, poly.size());
 	}
 
 	/**
@@ -112,31 +258,38 @@ public class CameraUntilt implements MatFilter {
 	 * shape.
 	 * 
 	 * <p>
-	 * NOTE: This is a fairly expensive operation. If you are doing object
-	 * detection, you would probably be better off applying a transform to the
-	 * polygons of your detected shapes instead of all of the pixels in the
-	 * image.
+	 * NOTE: This touches every pixel of the image. If you are doing object
+	 * detection, you would probably be better off using points only mode and
+	 * applying {@link #transform(PolygonCv)} to the polygons of your detected
+	 * shapes instead.
 	 * </p>
 	 * 
 	 * @param srcImage
 	 *            The source image to process (must not be null and must have
 	 *            non-zero width/height).
 	 * @return A new image (srcImage is untouched) containing the perspective
-	 *         transformed image.
+	 *         transformed image (see {@link #setReuseOutput(boolean)}), or
+	 *         srcImage if in points only mode.
 	 */
 	@Override
 	public Mat process(Mat srcImage) {
-		// Update transform if size of image changes
+		if (pointsOnly) {
+			return srcImage;
+		}
+
+		// Update transform and tables if size of image changes
 		Size size = srcImage.size();
-		if (size.width != width || size.height != height) {
-			width = size.width;
-			height = size.height;
-			updateTransform();
+		setImageSize(size.width, size.height);
+		if (!haveMaps) {
+			updateMaps();
 		}
 
-		// Allocate output image and perform the transform
-		Mat dstImage = new Mat(size, srcImage.type());
-		Imgproc.warpPerspective(srcImage, dstImage, perspectiveTransform, size);
+		// Perform the transform (can't remap in place)
+		Mat dstImage = (reuseOutput && output != null && output != srcImage) ? output : new Mat();
+		Imgproc.remap(srcImage, dstImage, map1, map2, Imgproc.INTER_LINEAR);
+		if (reuseOutput) {
+			output = dstImage;
+		}
 		return dstImage;
 	}
 
@@ -117,6 +117,17 @@ public final class ColorRange implements MatFilter {
 	public ColorRange(int[] minVals, int[] maxVals, boolean keep) {
 		setRanges(minVals, maxVals, keep);
 	}
+
+	/**
+	 * Construct a new instance of the range filter using a set of color range
+	 * values.
+	 *
+	 * @param crv
+	 *            Color range values to use (a copy is made) - must not be null.
+	 */
+	public ColorRange(ColorRangeValues crv) {
+		setColorRangeValues(crv);
+	}
 	
 	/**
 	 * Sets the values to use when applying the filter to images.
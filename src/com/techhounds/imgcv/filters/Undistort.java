@@ -0,0 +1,192 @@
+package com.techhounds.imgcv.filters;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.techhounds.imgcv.PolygonCv;
+import com.techhounds.imgcv.utils.CameraIntrinsics;
+
+/**
+ * Removes lens (barrel/pincushion) distortion from images using camera
+ * intrinsics computed by the {@link com.techhounds.imgcv.tools.CalibrateCamera}
+ * tool.
+ *
+ * <p>
+ * The undistortion maps are computed once via
+ * {@link Imgproc#initUndistortRectifyMap} (in fixed point format) whenever the
+ * image size changes, so each frame only costs a single
+ * {@link Imgproc#remap} into a reused output buffer.
+ * </p>
+ *
+ * <p>
+ * If you only need accurate measurements (not a corrected image to look at),
+ * enable "points only" mode. In this mode {@link #process(Mat)} leaves images
+ * alone and you call {@link #undistort(PolygonCv)} to correct just the corners
+ * of the polygons you found.
+ * </p>
+ */
+public class Undistort implements MatFilter {
+
+	/** Camera calibration values. */
+	private final CameraIntrinsics _Intrinsics;
+
+	/** Distortion coefficients. */
+	private final Mat _DistCoeffs;
+
+	/** Camera matrix for current image size. */
+	private Mat _CameraMatrix;
+
+	/** First undistortion map (fixed point x, y). */
+	private final Mat _Map1;
+
+	/** Second undistortion map (interpolation table indexes). */
+	private final Mat _Map2;
+
+	/** Output buffer reused between frames. */
+	private final Mat _Output;
+
+	/** Image size the camera matrix and maps are set up for. */
+	private int _Width;
+
+	/** Image size the camera matrix and maps are set up for. */
+	private int _Height;
+
+	/** Will be true once maps have been computed for current size. */
+	private boolean _HaveMaps;
+
+	/** When true, process() leaves images untouched. */
+	private boolean _PointsOnly;
+
+	/** Reused destination for points being undistorted. */
+	private final MatOfPoint2f _DstPoints;
+
+	/** Empty rectification transform (identity). */
+	private final Mat _NoRect;
+
+	/**
+	 * Constructs a new instance that corrects the entire image.
+	 *
+	 * @param intrinsics
+	 *            Calibrated camera parameters (must not be null).
+	 */
+	public Undistort(CameraIntrinsics intrinsics) {
+		this(intrinsics, false);
+	}
+
+	/**
+	 * Constructs a new instance.
+	 *
+	 * @param intrinsics
+	 *            Calibrated camera parameters (must not be null).
+	 * @param pointsOnly
+	 *            Pass true if you only want to correct polygon points via
+	 *            {@link #undistort(PolygonCv)} (images passed to
+	 *            {@link #process(Mat)} are returned untouched).
+	 */
+	public Undistort(CameraIntrinsics intrinsics, boolean pointsOnly) {
+		_Intrinsics = intrinsics;
+		_DistCoeffs = intrinsics.getDistCoeffs();
+		_Map1 = new Mat();
+		_Map2 = new Mat();
+		_Output = new Mat();
+		_DstPoints = new MatOfPoint2f();
+		_NoRect = new Mat();
+		_PointsOnly = pointsOnly;
+		setImageSize(intrinsics.getWidth(), intrinsics.getHeight());
+	}
+
+	/**
+	 * Returns the camera parameters used.
+	 *
+	 * @return Camera intrinsics passed to constructor.
+	 */
+	public CameraIntrinsics getIntrinsics() {
+		return _Intrinsics;
+	}
+
+	/**
+	 * Enables/disables points only mode.
+	 *
+	 * @param pointsOnly
+	 *            Pass true if you only want to correct polygon points (images
+	 *            passed to {@link #process(Mat)} are returned untouched).
+	 */
+	public void setPointsOnly(boolean pointsOnly) {
+		_PointsOnly = pointsOnly;
+	}
+
+	/**
+	 * Indicates whether we are in points only mode.
+	 *
+	 * @return true if only points are corrected.
+	 */
+	public boolean isPointsOnly() {
+		return _PointsOnly;
+	}
+
+	/**
+	 * Sets the size of the images that points will come from (only needed in
+	 * points only mode if your images are a different size than those used
+	 * for calibration - {@link #process(Mat)} adjusts automatically).
+	 *
+	 * @param width
+	 *            Width of images in pixels.
+	 * @param height
+	 *            Height of images in pixels.
+	 */
+	public void setImageSize(int width, int height) {
+		if ((width != _Width) || (height != _Height) || (_CameraMatrix == null)) {
+			_Width = width;
+			_Height = height;
+			_CameraMatrix = _Intrinsics.getCameraMatrix(width, height);
+			_HaveMaps = false;
+		}
+	}
+
+	/**
+	 * Removes lens distortion from the image (unless in points only mode).
+	 *
+	 * @param srcImage
+	 *            The source image to correct (not modified).
+	 * @return Corrected image - NOTE: this is a buffer owned by the filter
+	 *         which is overwritten on the next call (clone it if you need to
+	 *         hold onto it). Returns srcImage if in points only mode.
+	 */
+	@Override
+	public Mat process(Mat srcImage) {
+		if (_PointsOnly) {
+			return srcImage;
+		}
+		setImageSize(srcImage.cols(), srcImage.rows());
+		if (!_HaveMaps) {
+			Imgproc.initUndistortRectifyMap(_CameraMatrix, _DistCoeffs, _NoRect, _CameraMatrix,
+					new Size(_Width, _Height), CvType.CV_16SC2, _Map1, _Map2);
+			_HaveMaps = true;
+		}
+		Imgproc.remap(srcImage, _Output, _Map1, _Map2, Imgproc.INTER_LINEAR);
+		return _Output;
+	}
+
+	/**
+	 * Removes lens distortion from the points of a polygon.
+	 *
+	 * @param poly
+	 *            Polygon found in a distorted image (see
+	 *            {@link #setImageSize(int, int)} if not the calibrated size).
+	 * @return New polygon with corrected points (in pixel coordinates of the
+	 *         same image).
+	 */
+	public PolygonCv undistort(PolygonCv poly) {
+		if (poly.size() == 0) {
+			return poly;
+		}
+		Imgproc.undistortPoints(poly.toMatOfPoint2f(), _DstPoints, _CameraMatrix, _DistCoeffs, _NoRect,
+				_CameraMatrix);
+		float[] xy = new float[poly.size() * 2];
+		_DstPoints.get(0, 0, xy);
+		return new PolygonCv(xy, poly.size());
+	}
+}
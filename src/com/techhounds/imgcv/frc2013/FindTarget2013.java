@@ -34,6 +34,7 @@ import com.techhounds.imgcv.filters.Erode;
 import com.techhounds.imgcv.filters.GrayScale;
 import com.techhounds.imgcv.filters.MatFilter;
 import com.techhounds.imgcv.filters.Sequence;
+import com.techhounds.imgcv.utils.PolygonPairFinder;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -92,6 +93,11 @@ public final class FindTarget2013 implements MatFilter {
 	private final MatFilter _HsvColorRange;
     private final boolean _UseHsv;
 
+    /**
+     * Used to find nested pairs of polygons.
+     */
+    private final PolygonPairFinder _PairFinder = new PolygonPairFinder();
+
     /**
      * Constructs a new instance by pre-allocating all of our image filtering
      * objects.
@@ -226,27 +232,19 @@ public final class FindTarget2013 implements MatFilter {
         boolean searchForPairs = true;
 
         if (searchForPairs) {
-            // Start checking at the second item.
-            for (int i = 1; i < pCnt; i++) {
-                PolygonCv pi = pArr[i];
-
-                // Check against all other prior polygons that we haven't used
-                for (int j = 0; j < i; j++) {
-                    PolygonCv pj = pArr[j];
-
-                    // If prior polygon not used yet and it contains us or we contain it, then add both to the list of found targets.
-                    // (We might want to change this to just adding the outer polygon).
-                    if ((pj != null) && (pi.contains(pj) || pj.contains(pi))) {
-                        reduced.add(pi.toContour());
-                        reduced.add(pj.toContour());
-                        pi.drawInfo(output, _Color);
-                        pj.drawInfo(output, _Color);
+            // Find polygons that contain (or are contained by) another polygon,
+            // each polygon is used in at most one pair.
+            int pairs = _PairFinder.findNestedPairs(pArr, pCnt);
+            for (int k = 0; k < pairs; k++) {
+                PolygonCv pi = pArr[_PairFinder.getFirst(k)];
+                PolygonCv pj = pArr[_PairFinder.getSecond(k)];
 
-                        // Indicate that we have used both polygons (prevent them
-                        // from being used again)
-                        pArr[i] = pArr[j] = null;
-                    }
-                }
+                // Add both to the list of found targets.
+                // (We might want to change this to just adding the outer polygon).
+                reduced.add(pi.toContour());
+                reduced.add(pj.toContour());
+                pi.drawInfo(output, _Color);
+                pj.drawInfo(output, _Color);
             }
         } else {
             // Not searching for pairs, just add contours for all of the polygons
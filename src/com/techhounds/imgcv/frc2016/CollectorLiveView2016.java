@@ -39,6 +39,7 @@ import javax.swing.JPanel;
 
 import com.techhounds.imgcv.LiveViewGui;
 import com.techhounds.imgcv.filters.MatFilter;
+import com.techhounds.imgcv.utils.Log;
 
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
 
@@ -60,6 +61,7 @@ public final class CollectorLiveView2016 extends LiveViewGui {
     
 
     private static NetworkTable netTable;
+    private static final Log LOG = Log.getLog("CollectorLiveView2016");
 	
     public static void main(String[] args) {
     	
@@ -86,7 +88,7 @@ public final class CollectorLiveView2016 extends LiveViewGui {
         		} else {
                 	frame.stopVideoFeed();       			
         		}
-        		System.out.println("Camera feed toggled to: " + enable);
+        		LOG.info("Camera feed toggled to:", enable);
         	}
 
         	try{
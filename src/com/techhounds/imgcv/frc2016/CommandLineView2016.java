@@ -2,11 +2,23 @@ package com.techhounds.imgcv.frc2016;
 
 import com.techhounds.imgcv.Configuration;
 import com.techhounds.imgcv.FrameGrabber;
+import com.techhounds.imgcv.FrameTrace;
+import com.techhounds.imgcv.FrameTraceStats;
+import com.techhounds.imgcv.filters.Undistort;
+import com.techhounds.imgcv.utils.CameraIntrinsics;
+import com.techhounds.imgcv.utils.DistanceCalibration;
+import com.techhounds.imgcv.utils.Log;
+import com.techhounds.imgcv.utils.MetricsServer;
 
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
 
 public class CommandLineView2016 {
 	
+	private static final Log LOG = Log.getLog("CommandLineView2016");
+	
+	//how often (processed frames) the latency summary is logged
+	private static final int LATENCY_LOG_FRAMES = 100;
+	
 	private static long previousFrame = 0;
 	private static long currentFrame = 0;
 	
@@ -25,15 +37,36 @@ public class CommandLineView2016 {
 		NetworkTable.initialize();
 		NetworkTable sd = NetworkTable.getTable("SmartDashboard");
 		filter.setNetworkTable(sd);
+		filter.setTracking(10); //full detection at least every 10 frames
+		filter.setDistanceCalibration(DistanceCalibration.loadDefault()); //null if none saved
+		CameraIntrinsics lens = CameraIntrinsics.loadDefault(); //null if camera not calibrated
+		if(lens != null) filter.setLensCorrection(new Undistort(lens, true));
+		
+		//trace each frame from camera grab to publish
+		FrameTrace trace = new FrameTrace();
+		FrameTraceStats latency = new FrameTraceStats();
+		FrameTrace.setCurrent(trace);
+		MetricsServer.startDefault(latency); //curl http://localhost:5801/metrics
+		long processed = 0;
 		
 		while(true) {
 			
 			currentFrame = frameGrabber.getFrameCount();
 			
 			if(currentFrame != previousFrame) {
-				filter.process(frameGrabber.getLastImage());
+				filter.process(frameGrabber.getLastImage(trace));
+				latency.record(trace);
 				previousFrame = currentFrame;
-				System.out.println(currentFrame);
+				LOG.info("Processed", "frame", currentFrame);
+				if(++processed % LATENCY_LOG_FRAMES == 0) {
+					//format now, the log writer thread would read the histograms while we record
+					String summary = latency.getTotal().toString();
+					TargetSink sink = filter.getTargetSink();
+					if(sink instanceof TargetPublisher) {
+						summary += " (written to network table: " + ((TargetPublisher) sink).getWriteAge() + ")";
+					}
+					LOG.info("Latency", summary);
+				}
 			}
 			
 			try {
@@ -0,0 +1,143 @@
+package com.techhounds.imgcv.frc2016;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a line per report to a CSV file (handy for plotting distances and
+ * angles after a practice run or for comparing changes to the filter).
+ *
+ * <p>
+ * Columns are frame, capture time (ms relative to the first report), valid
+ * flag, the analysis values, the tracker values and then score, center x,
+ * center y, width and height for each of the ranked targets. Empty columns
+ * are written for values that are not available.
+ * </p>
+ */
+public class CsvTargetSink implements TargetSink {
+
+	/** Default number of ranked targets written per line. */
+	public static final int DEFAULT_TOP_TARGETS = 3;
+
+	private final Writer out;
+	private final int topTargets;
+	private final StringBuilder line = new StringBuilder(256);
+	private long firstNanos;
+	private boolean haveFirst = false;
+	private IOException error = null;
+
+	/**
+	 * Creates (or replaces) a CSV file writing {@link #DEFAULT_TOP_TARGETS}
+	 * ranked targets per line.
+	 *
+	 * @param f
+	 *            File to write to.
+	 * @throws IOException
+	 *             If unable to create the file.
+	 */
+	public CsvTargetSink(File f) throws IOException {
+		this(new BufferedWriter(new FileWriter(f)), DEFAULT_TOP_TARGETS);
+	}
+
+	/**
+	 * Constructs a new sink (the header line is written immediately).
+	 *
+	 * @param out
+	 *            Where to write lines (closed by {@link #close()}).
+	 * @param topTargets
+	 *            How many ranked targets to write per line.
+	 * @throws IOException
+	 *             If unable to write the header.
+	 */
+	public CsvTargetSink(Writer out, int topTargets) throws IOException {
+		this.out = out;
+		this.topTargets = topTargets;
+		line.append("Frame,TimeMs,Valid,OffCenterDegreesX,DistanceToBase,DistanceToTarget,DistanceToTargetRaw,"
+				+ "TrackLocked,TrackConfidence,TrackedCenterX,TrackedCenterY,TrackedWidth,TrackedAngle,TargetCount");
+		for (int i = 0; i < topTargets; i++) {
+			line.append(",Target").append(i).append("Score,Target").append(i).append("CenterX,Target").append(i)
+					.append("CenterY,Target").append(i).append("Width,Target").append(i).append("Height");
+		}
+		line.append('\n');
+		out.write(line.toString());
+	}
+
+	/*
+	 * Write errors are remembered (see getError) rather than thrown, the vision
+	 * code should keep running if the disk fills up.
+	 */
+	@Override
+	public synchronized void publish(TargetReport report) {
+		if (error != null) {
+			return;
+		}
+		if (!haveFirst) {
+			firstNanos = report.getCaptureNanos();
+			haveFirst = true;
+		}
+		boolean valid = report.isValid();
+		line.setLength(0);
+		line.append(report.getFrame()).append(',');
+		line.append((report.getCaptureNanos() - firstNanos) / 1e6).append(',');
+		line.append(valid ? 1 : 0).append(',');
+		append(valid && report.isAngleValid(), report.getOffCenterDegreesX());
+		append(valid, report.getDistanceToBase());
+		append(valid, report.getDistanceToTarget());
+		append(valid, report.getDistanceToTargetRaw());
+		boolean tracking = report.isTracking();
+		if (tracking) {
+			line.append(report.isTrackLocked() ? 1 : 0);
+		}
+		line.append(',');
+		append(tracking, report.getTrackConfidence());
+		append(tracking, report.getTrackedCenterX());
+		append(tracking, report.getTrackedCenterY());
+		append(tracking, report.getTrackedWidth());
+		append(tracking, report.getTrackedAngle());
+		int n = report.getTopTargetCount();
+		line.append(n);
+		for (int i = 0; i < topTargets; i++) {
+			boolean have = (i < n);
+			line.append(',');
+			append(have, have ? report.getTopTargetScore(i) : 0);
+			append(have, have ? report.getTopTargetCenterX(i) : 0);
+			append(have, have ? report.getTopTargetCenterY(i) : 0);
+			append(have, have ? report.getTopTargetWidth(i) : 0);
+			if (have) {
+				line.append(report.getTopTargetHeight(i));
+			}
+		}
+		line.append('\n');
+		try {
+			out.write(line.toString());
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+	/** @return First write error (or null if all writes succeeded). */
+	public synchronized IOException getError() {
+		return error;
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+	}
+
+	private void append(boolean have, double val) {
+		if (have) {
+			line.append(val);
+		}
+		line.append(',');
+	}
+}
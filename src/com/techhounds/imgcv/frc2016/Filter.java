@@ -3,13 +3,15 @@ package com.techhounds.imgcv.frc2016;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
-import org.opencv.core.Scalar;
+import org.opencv.core.Point;
 import org.opencv.imgproc.Imgproc;
 
 import com.techhounds.imgcv.PolygonCv;
+import com.techhounds.imgcv.utils.IntegralImage;
+import com.techhounds.imgcv.utils.Log;
+import com.techhounds.imgcv.utils.TopKSelector;
 
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
 
@@ -28,10 +30,17 @@ import edu.wpi.first.wpilibj.networktables.NetworkTable;
 
 public abstract class Filter {
 
+	private static final Log LOG = Log.getLog("Filter"); //async, so logging doesn't slow frames down
+
 	//Default Variables/Configs
 	
-	protected NetworkTable networkTable = null;
-	protected double       frameCount   = 0; 
+	protected TargetSink sink       = null; //where per frame reports go (null for none)
+	protected long       frameCount = 0; 
+	
+	private long sinkCount = 0;     //reports published
+	private long sinkNanos = 0;     //total time spent publishing
+	private long sinkNanosMax = 0;  //worst single frame
+	private long sinkNanosLast = 0; //most recent frame
 	
 	//Child-instance settable configs
 	
@@ -58,70 +67,143 @@ public abstract class Filter {
 	protected boolean _Debug = true;
 	protected double _HoleRight, _HoleLeft, _HoleBottom, _HoleTop;
 	protected boolean _HoleCheckEnabled;
+	
+	private final IntegralImage maskIntegral  = new IntegralImage(); //hole checks for current frame
+	private int maskOffsetX, maskOffsetY;                            //frame position of mask's top left corner
+	
+	protected int maxTopTargets = 3;                                       //how many ranked targets to keep
+	private final TopKSelector topSelector = new TopKSelector(maxTopTargets);
+	private PolygonCv[] topTargets      = new PolygonCv[maxTopTargets];     //best first, from last findBestTarget
+	private double[]    topTargetScores = new double[maxTopTargets];
+	private int         topTargetCount  = 0;
 	//Abstract Methods
 	
 	public abstract Mat process(Mat srcImage); //used when calling the filter instance
 	
 	//Default Methods
 	
-	protected List<PolygonCv> findTargets(Mat inputImage) { //finds potential targets in an image
+	/*
+	 * Finds potential targets in an image. NOTE: findContours is run with
+	 * RETR_LIST, so the inside edge of a target with a hole (like a closed
+	 * ring) is returned as a contour of its own.
+	 */
+	protected List<PolygonCv> findTargets(Mat inputImage) {
+		return findTargets(inputImage, 0, 0);
+	}
+	
+	/*
+	 * Same as findTargets(Mat) for a mask of only part of the frame (like a
+	 * tracking window) whose top left corner is at (offsetX, offsetY) in the
+	 * frame. The targets found are in frame coordinates.
+	 */
+	protected List<PolygonCv> findTargets(Mat inputImage, int offsetX, int offsetY) {
 	    List<MatOfPoint> contours  = new ArrayList<>();   //list of objects in image
         List<PolygonCv>  targets   = new ArrayList<>();   //list of potential targets in image
 	    Mat              hierarchy = new Mat();           //???
         PolygonCv  		 currentTarget;                   //placeholder
         
-        // Get a copy of the Black & White image pixels before findContours messes up the values
-        Mat bwOrig = inputImage.clone();
+        // Sum up the Black & White image pixels before findContours messes up the values
+        maskIntegral.setImage(inputImage);
+        maskOffsetX = offsetX;
+        maskOffsetY = offsetY;
 		enableHoleCheck(0, .5, .25, .25);
         
         Imgproc.findContours(inputImage, contours, hierarchy, 
-        					 Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+        					 Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE, new Point(offsetX, offsetY));
         
         for(int i = 0; i < contours.size(); i++) {            
         	currentTarget = PolygonCv.fromContour(contours.get(i), polygonEpsilon); 
-        	System.out.println(currentTarget.getBoundingArea());
+        	LOG.trace("Contour", "area", currentTarget.getBoundingArea());
         	
-        	if(currentTarget.getHeight()              > targetHeightMin &&
-        	   currentTarget.getWidth()               > targetWidthMin  &&
-        	   currentTarget.size() 		          > targetSidesMin  && 
-        	   currentTarget.getBoundingAspectRatio() > targetRatioMin  &&  
-        	   currentTarget.getBoundingArea()        > targetAreaMin   &&
-        	   
-        	   currentTarget.getHeight()              < targetHeightMax &&
-        	   currentTarget.getWidth()               < targetWidthMax  &&
-        	   currentTarget.size()                   < targetSidesMax  &&
-        	   currentTarget.getBoundingAspectRatio() < targetRatioMax  &&
-        	   currentTarget.getBoundingArea()        < targetAreaMax   &&
-        	   
-        	   currentTarget.getMinY()             > 50 &&
-        	   currentTarget.getMaxY()             < 720 &&
-        	   holeCheck(bwOrig, currentTarget)) {
-        		
+        	if(isTargetCandidate(currentTarget) && holeCheck(currentTarget)) {
         		targets.add(currentTarget); //if within range, add to list of potential targets
         	}
         }      
         return targets;
     }
 	
+	protected boolean isTargetCandidate(PolygonCv target) { //checks polygon against min/max configs
+		return target.size() > targetSidesMin && target.size() < targetSidesMax &&
+			   isTargetSize(target.getHeight(), target.getWidth(), target.getBoundingAspectRatio(),
+					   target.getBoundingArea(), target.getMinY(), target.getMaxY());
+	}
+	
+	protected boolean isTargetSize(float height, float width, float ratio, float area,
+			float minY, float maxY) { //checks bounding box values against min/max configs
+		return height > targetHeightMin && 
+			   width  > targetWidthMin  &&
+			   ratio  > targetRatioMin  &&
+			   area   > targetAreaMin   &&
+			   
+			   height < targetHeightMax &&
+			   width  < targetWidthMax  &&
+			   ratio  < targetRatioMax  &&
+			   area   < targetAreaMax   &&
+			   
+			   minY   > 50 &&
+			   maxY   < 720;
+	}
+	
+    /*
+     * Rates each target once and keeps the best maxTopTargets of them (see
+     * getTopTarget). The best target is removed from the list (the last target
+     * is swapped into its spot) and returned, or null if the list is empty.
+     */
     protected PolygonCv findBestTarget(List<PolygonCv> targetList) {
-    	PolygonCv bestTarget = null;
-    	PolygonCv currentTarget;
-    	double    bestTargetValue = 0;
-    	int       bestTargetIndex = 0;
+    	int n = targetList.size();
     	
-    	for(int i = 0; i < targetList.size(); i++) {
-    		currentTarget = targetList.get(i);
-    		
-    		if(getTargetRating(currentTarget) > bestTargetValue)  { //if this is better than
-    			bestTarget = currentTarget;                         //best so far
-    			bestTargetIndex = i;                                //becomes new best
-    		}                                                       
+    	topSelector.reset();
+    	for(int i = 0; i < n; i++) {
+    		topSelector.offer(i, getTargetRating(targetList.get(i)));
     	}
+    	topSelector.finish();
     	
-    	//will cause issues if targetList is NULL! this shouldn't happen though
-    	targetList.remove(bestTargetIndex); //removes the best target
+    	topTargetCount = topSelector.size();
+    	for(int i = 0; i < topTargetCount; i++) {
+    		topTargets[i]      = targetList.get(topSelector.getIndex(i));
+    		topTargetScores[i] = topSelector.getScore(i);
+    	}
+    	
+    	if(topTargetCount == 0) return null;
+    	
+    	int bestTargetIndex = topSelector.getIndex(0);
+    	PolygonCv last = targetList.remove(n - 1); //removes the best target without shifting
+    	if(bestTargetIndex != n - 1) targetList.set(bestTargetIndex, last);
     	
-    	return bestTarget;
+    	return topTargets[0];
+    }
+    
+    public int getTopTargetCount() { //number of ranked targets found by last findBestTarget
+    	return topTargetCount;
+    }
+    
+    public PolygonCv getTopTarget(int rank) { //0 is best
+    	return topTargets[rank];
+    }
+    
+    public double getTopTargetScore(int rank) { //0 is best
+    	return topTargetScores[rank];
+    }
+    
+    public void setMaxTopTargets(int k) { //how many ranked targets to keep/publish
+    	maxTopTargets = k;
+    	topSelector.setCapacity(k);
+    	topTargets      = new PolygonCv[k];
+    	topTargetScores = new double[k];
+    	topTargetCount  = 0;
+    }
+    
+    /*
+     * Adds the ranked targets to the frame's report (published as TargetCount
+     * followed by Target0Score, Target0CenterX, ... for each rank) so the robot
+     * can pick among several goals without asking for another vision pass.
+     */
+    protected void addTopTargets(TargetReport.Builder report) {
+    	for(int i = 0; i < topTargetCount; i++) {
+    		PolygonCv target = topTargets[i];
+    		report.addTopTarget(topTargetScores[i], target.getCenterX(), target.getCenterY(),
+    				target.getWidth(), target.getHeight());
+    	}
     }
     
     protected double getTargetRating(PolygonCv inputTarget) {
@@ -141,9 +223,67 @@ public abstract class Filter {
     	return targetRating;
     }
 	
+    /*
+     * Publishes results to the network table from a background thread (see
+     * TargetPublisher). Pass null to stop publishing.
+     */
     public void setNetworkTable(NetworkTable nt) {
-    	networkTable = nt;
+    	TargetPublisher pub = null;
+    	if(nt != null) {
+    		pub = new TargetPublisher(new NetworkTableSink(nt));
+    		pub.start();
+    	}
+    	setTargetSink(pub);
+    }
+    
+    /*
+     * Sets where the report for each frame goes (NetworkTableSink, CsvTargetSink,
+     * MemoryTargetSink, ...). The filter owns the sink, the previous one is
+     * closed when replaced. Pass null to stop publishing.
+     */
+    public void setTargetSink(TargetSink s) {
+    	if(sink != null && sink != s) sink.close();
+    	sink = s;
+    	resetSinkStats();
+    }
+    
+    public TargetSink getTargetSink() {
+    	return sink;
+    }
+    
+    /*
+     * Builds the frame's report and hands it to the sink, keeping track of
+     * how long that takes (what publishing adds to each frame).
+     */
+    protected void publish(TargetReport.Builder report) {
+    	if(sink == null) return;
+    	
+    	long start = System.nanoTime();
+    	sink.publish(report.build());
+    	long dur = System.nanoTime() - start;
+    	
+    	sinkCount++;
+    	sinkNanos += dur;
+    	sinkNanosLast = dur;
+    	if(dur > sinkNanosMax) sinkNanosMax = dur;
     }
+    
+    public long getSinkNanosLast() { //publish cost of most recent frame
+    	return sinkNanosLast;
+    }
+    
+    public long getSinkNanosMax() { //worst publish cost since last reset
+    	return sinkNanosMax;
+    }
+    
+    public long getSinkNanosAverage() { //average publish cost since last reset
+    	return (sinkCount > 0) ? sinkNanos / sinkCount : 0;
+    }
+    
+    public void resetSinkStats() {
+    	sinkCount = sinkNanos = sinkNanosMax = sinkNanosLast = 0;
+    }
+    
 	/**
 	 * Enable check to make sure there is a hole (all white, a.k.a. incorrect in color, pixels in binary
 	 * image) at a certain location within each polygon's bounding box.
@@ -170,7 +310,12 @@ public abstract class Filter {
 		_HoleCheckEnabled = true;
 	}
 	
-	private boolean holeCheck(Mat binary, PolygonCv poly) {
+	/*
+	 * Uses the integral of the binary image computed once per frame (before
+	 * findContours corrupts the pixels), so each check is a few array lookups
+	 * no matter how big the polygon is.
+	 */
+	protected boolean holeCheck(PolygonCv poly) {
 		if (_HoleCheckEnabled != true) {
 			// Just indicate things are OK if hole check has not been enabled.
 			return true;
@@ -180,35 +325,24 @@ public abstract class Filter {
 		float w = poly.getWidth();
 
 		// Figure out bounds in image of the portion of the polygon's bounding
-		// box that we want to check
-		int begRow = (int) (poly.getMinY() + (_HoleTop * h));
-		int endRow = (int) (poly.getMaxY() - (_HoleBottom * h));
-		int begCol = (int) (poly.getMinX() + (_HoleLeft * w));
-		int endCol = (int) (poly.getMaxX() - (_HoleRight * w));
-
-		// NOTE: We want to grab the pixels from a "clean" binary image
-		// (state of binary image before looking for contours/polygons
-		// as they corrupt the data during processing)
-		Mat bboxPixels = binary.submat(begRow, endRow, begCol, endCol);
+		// box that we want to check (polygon is in frame coordinates, the
+		// mask may only cover part of the frame)
+		int begRow = (int) (poly.getMinY() + (_HoleTop * h)) - maskOffsetY;
+		int endRow = (int) (poly.getMaxY() - (_HoleBottom * h)) - maskOffsetY;
+		int begCol = (int) (poly.getMinX() + (_HoleLeft * w)) - maskOffsetX;
+		int endCol = (int) (poly.getMaxX() - (_HoleRight * w)) - maskOffsetX;
 
 		// Compute total number of white pixels possible
-		int hBbox = bboxPixels.rows();
-		int wBbox = bboxPixels.cols();
-		double totalPixels = wBbox * hBbox;
+		double totalPixels = maskIntegral.area(begRow, endRow, begCol, endCol);
 
 		// See how many white pixels we actually have
-		Scalar sum = Core.sumElems(bboxPixels);
 		// White pixels have value of 255 in binary images (0xff)
 		// Black pixels have a value of 0 (0x00)
-		double whitePixels = sum.val[0] / 255;
+		double whitePixels = maskIntegral.countWhite(begRow, endRow, begCol, endCol);
 		int percentWhite = (int) Math.round(100 * whitePixels / totalPixels);
 
-		// Sanity check that all values are 0 or 1
-		boolean allInRange = Core.checkRange(bboxPixels, true, 0, 2);
 		if (_Debug) {
-			System.out.println("Cutout Check: (" + wBbox + "x" + hBbox
-					+ ")  total: " + totalPixels + "  white: " + whitePixels
-					+ " (" + percentWhite + "%)  binary: " + allInRange);
+			LOG.debug("Cutout Check", "total", totalPixels, "white", whitePixels);
 		}
 
 		// Found hole if none of the black/white pixels were black.
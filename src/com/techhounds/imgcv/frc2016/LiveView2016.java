@@ -39,6 +39,11 @@ import javax.swing.JPanel;
 
 import com.techhounds.imgcv.LiveViewGui;
 import com.techhounds.imgcv.filters.MatFilter;
+import com.techhounds.imgcv.filters.Undistort;
+import com.techhounds.imgcv.utils.CameraIntrinsics;
+import com.techhounds.imgcv.utils.DistanceCalibration;
+import com.techhounds.imgcv.utils.Log;
+import com.techhounds.imgcv.utils.MetricsServer;
 
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
 
@@ -52,6 +57,7 @@ public final class LiveView2016 extends LiveViewGui {
 	
     
 	private static final String GAME_STATE = "GameState";
+	private static final Log LOG = Log.getLog("LiveView2016");
 
 	TargetFilter filter = new TargetFilter(4); //default filter to be set
 	static final String SHOOTER_CAMERA_ENABLED_KEY = "ShooterCameraEnabled";
@@ -59,6 +65,8 @@ public final class LiveView2016 extends LiveViewGui {
     protected JLabel _FilterFps = new JLabel("-");
     protected JLabel _Distance = new JLabel("-");
     protected JLabel _Angle = new JLabel("-");
+    protected JLabel _Latency = new JLabel("-");
+    private int displayedCount = 0;
 
     private String gameState;
     
@@ -102,6 +110,11 @@ public final class LiveView2016 extends LiveViewGui {
 		statusPanel.add(new JLabel("Angle"));
 		statusPanel.add(Box.createHorizontalStrut(10));
 		statusPanel.add(_Angle);
+		statusPanel.add(Box.createHorizontalStrut(30));
+		
+		statusPanel.add(new JLabel("Latency"));
+		statusPanel.add(Box.createHorizontalStrut(10));
+		statusPanel.add(_Latency);
 		statusPanel.add(Box.createHorizontalGlue());
 	}
 
@@ -113,6 +126,10 @@ public final class LiveView2016 extends LiveViewGui {
 	    	_Distance.setText(""  + netTable.getNumber("DistanceToBase", 0));
 	    	_Angle.setText(""     + netTable.getNumber("OffCenterDegreesX", 0));
 	    }
+    	
+    	if(++displayedCount % 10 == 0) { //capture to publish percentiles (frames may be skipped for display)
+    		_Latency.setText(getTraceStats().getTotal().toString());
+    	}
     }
     
     private Action createLoadConfigAction() {
@@ -159,6 +176,11 @@ public final class LiveView2016 extends LiveViewGui {
         netTable = NetworkTable.getTable("SmartDashboard");
 
         frame.filter.setNetworkTable(netTable);        
+        frame.filter.setTracking(10); //full detection at least every 10 frames
+        frame.filter.setDistanceCalibration(DistanceCalibration.loadDefault()); //null if none saved
+        CameraIntrinsics lens = CameraIntrinsics.loadDefault(); //null if camera not calibrated
+        if(lens != null) frame.filter.setLensCorrection(new Undistort(lens, true));
+        MetricsServer.startDefault(frame.getTraceStats()); //curl http://localhost:5801/metrics
         frame.main();
         
         boolean lastState = false;
@@ -171,7 +193,7 @@ public final class LiveView2016 extends LiveViewGui {
         		} else {
                 	frame.stopVideoFeed();       			
         		}
-        		System.out.println("Camera feed toggled to: " + enable);
+        		LOG.info("Camera feed toggled to:", enable);
         	}
         	
         	String curGameState = netTable.getString(GAME_STATE, frame.gameState);
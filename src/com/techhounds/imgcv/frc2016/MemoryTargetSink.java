@@ -0,0 +1,75 @@
+package com.techhounds.imgcv.frc2016;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent reports in memory so tests and benchmarks can check
+ * what would have been sent to the robot without needing a robot (or a
+ * NetworkTables server) to talk to.
+ */
+public class MemoryTargetSink implements TargetSink {
+
+	/** Default number of reports kept. */
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	private final int capacity;
+	private final ArrayDeque<TargetReport> reports;
+	private long publishedCount = 0;
+
+	/**
+	 * Constructs a sink keeping the last {@link #DEFAULT_CAPACITY} reports.
+	 */
+	public MemoryTargetSink() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new sink.
+	 *
+	 * @param capacity
+	 *            Maximum number of reports kept (oldest are dropped first).
+	 */
+	public MemoryTargetSink(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+		}
+		this.capacity = capacity;
+		reports = new ArrayDeque<>(Math.min(capacity, 64));
+	}
+
+	@Override
+	public synchronized void publish(TargetReport report) {
+		if (reports.size() == capacity) {
+			reports.removeFirst();
+		}
+		reports.addLast(report);
+		publishedCount++;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/** @return Most recent report (or null if none published). */
+	public synchronized TargetReport getLast() {
+		return reports.peekLast();
+	}
+
+	/** @return Copy of reports kept, oldest first. */
+	public synchronized List<TargetReport> getReports() {
+		return new ArrayList<>(reports);
+	}
+
+	/** @return Total number of reports published (including ones dropped). */
+	public synchronized long getPublishedCount() {
+		return publishedCount;
+	}
+
+	/** Forgets all reports and resets the count. */
+	public synchronized void clear() {
+		reports.clear();
+		publishedCount = 0;
+	}
+}
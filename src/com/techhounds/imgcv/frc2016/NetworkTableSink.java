@@ -0,0 +1,85 @@
+package com.techhounds.imgcv.frc2016;
+
+import edu.wpi.first.wpilibj.networktables.NetworkTable;
+
+/**
+ * Writes reports to a {@link NetworkTable} using the keys the robot code
+ * expects. Each value is a separate NetworkTables update, so normally this is
+ * wrapped in a {@link TargetPublisher} to keep the writes off the vision
+ * thread.
+ */
+public class NetworkTableSink implements TargetSink {
+
+	private final NetworkTable networkTable;
+	private String[][] topTargetKeys = new String[0][]; //prebuilt keys, grown as needed
+
+	/**
+	 * Constructs a new sink.
+	 *
+	 * @param nt
+	 *            Table to write values to (typically "SmartDashboard").
+	 */
+	public NetworkTableSink(NetworkTable nt) {
+		networkTable = nt;
+	}
+
+	/** @return Table values are written to. */
+	public NetworkTable getNetworkTable() {
+		return networkTable;
+	}
+
+	/*
+	 * Tracking values are written every frame, everything else only when a
+	 * target was found (the robot keeps seeing the last good values).
+	 */
+	@Override
+	public synchronized void publish(TargetReport report) {
+		if (report.isTracking()) {
+			networkTable.putBoolean("TrackLocked",    report.isTrackLocked());
+			networkTable.putNumber("TrackConfidence", report.getTrackConfidence());
+			networkTable.putNumber("TrackedCenterX",  report.getTrackedCenterX());
+			networkTable.putNumber("TrackedCenterY",  report.getTrackedCenterY());
+			networkTable.putNumber("TrackedWidth",    report.getTrackedWidth());
+			networkTable.putNumber("TrackedAngle",    report.getTrackedAngle());
+		}
+		if (!report.isValid()) {
+			return;
+		}
+		if (report.isAngleValid()) {
+			networkTable.putNumber("OffCenterDegreesX", report.getOffCenterDegreesX());
+		}
+		networkTable.putNumber("DistanceToBase",      report.getDistanceToBase());
+		networkTable.putNumber("DistanceToTarget",    report.getDistanceToTarget());
+		networkTable.putNumber("DistanceToTargetRaw", report.getDistanceToTargetRaw());
+
+		int n = report.getTopTargetCount();
+		if (topTargetKeys.length < n) {
+			topTargetKeys = createTopTargetKeys(n);
+		}
+		networkTable.putNumber("TargetCount", n);
+		for (int i = 0; i < n; i++) {
+			String[] keys = topTargetKeys[i];
+			networkTable.putNumber(keys[0], report.getTopTargetScore(i));
+			networkTable.putNumber(keys[1], report.getTopTargetCenterX(i));
+			networkTable.putNumber(keys[2], report.getTopTargetCenterY(i));
+			networkTable.putNumber(keys[3], report.getTopTargetWidth(i));
+			networkTable.putNumber(keys[4], report.getTopTargetHeight(i));
+		}
+		networkTable.putNumber("FrameCount", report.getFrame());
+	}
+
+	@Override
+	public void close() {
+	}
+
+	private static String[][] createTopTargetKeys(int k) {
+		String[] fields = { "Score", "CenterX", "CenterY", "Width", "Height" };
+		String[][] keys = new String[k][fields.length];
+		for (int i = 0; i < k; i++) {
+			for (int j = 0; j < fields.length; j++) {
+				keys[i][j] = "Target" + i + fields[j];
+			}
+		}
+		return keys;
+	}
+}
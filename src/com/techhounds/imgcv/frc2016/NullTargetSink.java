@@ -0,0 +1,22 @@
+package com.techhounds.imgcv.frc2016;
+
+/**
+ * Sink which throws reports away (useful to measure processing time without
+ * any publishing cost).
+ */
+public final class NullTargetSink implements TargetSink {
+
+	/** Shared instance (there is no state). */
+	public static final NullTargetSink INSTANCE = new NullTargetSink();
+
+	private NullTargetSink() {
+	}
+
+	@Override
+	public void publish(TargetReport report) {
+	}
+
+	@Override
+	public void close() {
+	}
+}
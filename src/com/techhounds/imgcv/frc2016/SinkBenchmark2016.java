@@ -0,0 +1,113 @@
+package com.techhounds.imgcv.frc2016;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+
+import com.techhounds.imgcv.Configuration;
+
+/*
+ * Measures what publishing the per frame TargetReport adds to processing time
+ * for each kind of TargetSink (no robot or NetworkTables server needed).
+ *
+ * Usage: SinkBenchmark2016 [IMAGE_DIR] [ITERATIONS]
+ *
+ * Every sink sees the same frames through the full stage 2 (analysis only)
+ * filter. "Frame" is the total process() time, "Sink" is just the time spent
+ * handing the report to the sink (see Filter.getSinkNanosAverage).
+ */
+
+public class SinkBenchmark2016 {
+
+	public static void main(String[] args) throws IOException {
+		Configuration config = new Configuration();
+		config.loadOpenCvLibrary();
+
+		File dir = new File(args.length > 0 ? args[0] : "res");
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		File[] files = dir.listFiles();
+		if(files == null) {
+			System.err.println("Unable to read image directory: " + dir);
+			return;
+		}
+		Arrays.sort(files);
+		
+		List<Mat> images = new ArrayList<>();
+		for(File file : files) {
+			String name = file.getName();
+			if(!name.endsWith(".png") && !name.endsWith(".jpg")) continue;
+			Mat img = Highgui.imread(file.getPath());
+			if(!img.empty()) images.add(img);
+		}
+		if(images.isEmpty()) {
+			System.err.println("No images found in: " + dir);
+			return;
+		}
+
+		File csvFile = File.createTempFile("targets", ".csv");
+		csvFile.deleteOnExit();
+		
+		String[] names = { "None", "Null", "Memory", "CSV", "Publisher(Memory)" };
+		
+		// analysis prints a lot, keep that out of the timings
+		PrintStream console = System.out;
+		PrintStream quiet = new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		
+		console.println("Sink                  Frame(ms)  Sink avg(us)  Sink max(us)  Reports");
+		for(int s = 0; s < names.length; s++) {
+			TargetSink sink = null;
+			MemoryTargetSink memory = null;
+			switch(s) {
+			case 1: sink = NullTargetSink.INSTANCE; break;
+			case 2: sink = memory = new MemoryTargetSink(); break;
+			case 3: sink = new CsvTargetSink(csvFile); break;
+			case 4:
+				memory = new MemoryTargetSink();
+				TargetPublisher pub = new TargetPublisher(memory);
+				pub.start();
+				sink = pub;
+				break;
+			}
+			
+			TargetFilter filter = new TargetFilter(2);
+			filter.setTargetSink(sink);
+			
+			System.setOut(quiet);
+			
+			// Warm up before timing
+			for(Mat img : images) filter.process(img);
+			filter.resetSinkStats();
+			
+			long frameNanos = 0;
+			int frames = 0;
+			for(int i = 0; i < iterations; i++) {
+				for(Mat img : images) {
+					long start = System.nanoTime();
+					filter.process(img);
+					frameNanos += System.nanoTime() - start;
+					frames++;
+				}
+			}
+			long sinkAvg = filter.getSinkNanosAverage();
+			long sinkMax = filter.getSinkNanosMax();
+			filter.setTargetSink(null); //closes sink (flushes publisher/CSV file)
+			
+			System.setOut(console);
+			
+			console.println(String.format("%-20s  %9.3f  %12.2f  %12.2f  %7s", names[s],
+					frameNanos / 1e6 / frames, sinkAvg / 1e3, sinkMax / 1e3,
+					(memory != null) ? Long.toString(memory.getPublishedCount()) : ""));
+		}
+	}
+}
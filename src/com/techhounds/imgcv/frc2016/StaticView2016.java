@@ -36,6 +36,7 @@ import javax.swing.JButton;
 import javax.swing.JFileChooser;
 
 import com.techhounds.imgcv.FilterToolGuiOpenCv;
+import com.techhounds.imgcv.utils.Log;
 
 /**
  * A more involved example of extending the filter tool for testing filters.
@@ -56,6 +57,8 @@ import com.techhounds.imgcv.FilterToolGuiOpenCv;
  */
 public final class StaticView2016 extends FilterToolGuiOpenCv {
 
+    private static final Log LOG = Log.getLog("StaticView2016");
+
     private StaticView2016() { //Constructs a new instance of our example filter tool.
         super("Vision Tool 2016");        
     }
@@ -97,8 +100,7 @@ public final class StaticView2016 extends FilterToolGuiOpenCv {
 						Writer configFile = new FileWriter(path);
 												
 						for(int i = 0; i < maxVals.length; i++) {
-							System.out.println("Wrote " + maxVals[i]);
-							System.out.println("Wrote " + minVals[i]);
+							LOG.info("Wrote", "max", maxVals[i], "min", minVals[i]);
 							configFile.write(Integer.toString(maxVals[i]));
 							configFile.write(System.lineSeparator());
 							configFile.write(Integer.toString(minVals[i]));
@@ -108,7 +110,7 @@ public final class StaticView2016 extends FilterToolGuiOpenCv {
 						configFile.close();
 					}
 				} catch (Exception ex) {
-					System.out.println(ex);
+					LOG.error("Failed to write color range config", ex);
 				}
 			}
 			
@@ -8,8 +8,10 @@ import java.util.List;
 
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 
+import com.techhounds.imgcv.FrameTrace;
 import com.techhounds.imgcv.PolygonCv;
 import com.techhounds.imgcv.filters.BlackWhite;
 import com.techhounds.imgcv.filters.ColorRange;
@@ -19,6 +21,7 @@ import com.techhounds.imgcv.filters.Dilate;
 import com.techhounds.imgcv.filters.Erode;
 import com.techhounds.imgcv.filters.GrayScale;
 import com.techhounds.imgcv.filters.MatFilter;
+import com.techhounds.imgcv.filters.Undistort;
 import com.techhounds.imgcv.utils.*;
 
 /*
@@ -32,12 +35,28 @@ import com.techhounds.imgcv.utils.*;
  */
 
 public class TargetFilter extends Filter implements MatFilter, TargetFilterConfig {
+	
+	private static final Log LOG = Log.getLog("TargetFilter");
 			
 	private FovCalculator fovCalc;
+	
+	//shared pixel to angle lookup tables (so per frame geometry is table reads)
+	private static final AngleTable xAngles = AngleTable.forFov(Camera.FOV_X_DEGREES, (int) Camera.RESOLUTION_X_PIXELS);
+	private static final AngleTable yAngles = AngleTable.forFov(Camera.FOV_Y_DEGREES, (int) Camera.RESOLUTION_Y_PIXELS);
 
 	private double robotAngleOffset;
 
 	private RotationEstimator rotEst;
+	
+	private TargetTracker tracker = null; //null when tracking is disabled
+	
+	private DistanceCalibration distanceCal = null; //null when distances are not corrected
+	
+	private Undistort lensCorrection = null; //null when lens distortion is ignored
+	
+	private final TargetReport.Builder report = new TargetReport.Builder(); //reused each frame
+	
+	private final Mat windowImage = new Mat(); //tracking window copy (reused each frame)
 
 	public TargetFilter(int input) {
 		
@@ -103,35 +122,77 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 		
 	public Mat process(Mat srcImage) {
 		if(stage == 0) return srcImage;
+		long startNanos = System.nanoTime();
+		FrameTrace trace = FrameTrace.getCurrent(); //null if caller isn't tracing latency
+		
+		//correct entire frame for lens distortion (no-op in points only mode)
+		if(lensCorrection != null) {
+			srcImage = lensCorrection.process(srcImage);
+		}
 		
 		List<PolygonCv> targets  = new ArrayList<>();
 		     PolygonCv  bestTarget;
 		
-		Mat workingImage = srcImage.clone();
+		//when tracking, only color process the area around where the target should be
+		Rect searchWindow = null;
+		if(tracker != null && stage != 1) {
+			tracker.predict(startNanos);
+			if(!tracker.needsFullDetection()) {
+				searchWindow = tracker.getSearchWindow(srcImage.cols(), srcImage.rows());
+			}
+		}
+		boolean fullDetection = (searchWindow == null);
 		
-		_ColorSpace.process(workingImage);
-		_ColorRange.process(workingImage);
-		_Erode.process(workingImage);     
-		_Dilate.process(workingImage);
-//		_GrayScale.process(workingImage);
-//		_BlackWhite.process(workingImage);
+		Mat workingImage;
+		int maskX = 0, maskY = 0; //frame position of mask's top left corner
+		if(fullDetection) {
+			workingImage = colorProcess(srcImage.clone());
+		} else {
+			//only the window is color processed and searched (targets come back in frame coordinates)
+			srcImage.submat(searchWindow).copyTo(windowImage);
+			workingImage = colorProcess(windowImage);
+			maskX = searchWindow.x;
+			maskY = searchWindow.y;
+		}
+		
+		mark(trace, FrameTrace.COLOR);
 		
 		if(stage == 1) return workingImage;
+		report.reset(frameCount, (trace != null) ? trace.getMark(FrameTrace.GRAB) : startNanos);
+		Log.setFrame(frameCount++); //per frame messages are sampled
 		
-		targets = findTargets(workingImage);
+		targets = findTargets(workingImage, maskX, maskY);
 		workingImage = srcImage.clone();
 		
 		addTargetingRectangle(workingImage);
 		
-		if(targets.size() > 0) {
-        	bestTarget = findBestTarget(targets);
-        	        	
-        	if(networkTable != null) { 
-        		targetAnalysis(bestTarget); //no return as it simply writes data to netTables 
-        		networkTable.putNumber("FrameCount", frameCount++); 
+		bestTarget = (targets.size() > 0) ? findBestTarget(targets) : null;
+		
+		if(tracker != null && !updateTracker(bestTarget, fullDetection)) {
+			bestTarget = null; //rejected by tracker, don't analyze/publish it
+		}
+		mark(trace, FrameTrace.DETECT);
+		
+		if(bestTarget != null) {
+        	
+        	//in points only mode, only the corners of the best target are corrected
+        	PolygonCv analysisTarget = bestTarget;
+        	if(lensCorrection != null && lensCorrection.isPointsOnly()) {
+        		lensCorrection.setImageSize(srcImage.cols(), srcImage.rows());
+        		analysisTarget = lensCorrection.undistort(bestTarget);
         	}
-        	targetAnalysis(bestTarget, false);
         	
+        	targetAnalysis(analysisTarget, report);
+        	addTopTargets(report);
+		}
+		
+		mark(trace, FrameTrace.ANALYZE);
+		
+		//hand results to sink (a TargetPublisher never waits on the network)
+		publish(report);
+		mark(trace, FrameTrace.PUBLISH);
+		
+		if(bestTarget != null) {
         	if(stage == 2) return workingImage; //commandline, so don't bother drawing anything
         	
         	if(stage == 3) {
@@ -159,6 +220,75 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 		return workingImage;
 	}
 	
+	private static void mark(FrameTrace trace, int stage) { //records when a stage of the frame finished
+		if(trace != null) trace.mark(stage);
+	}
+	
+	private Mat colorProcess(Mat workingImage) { //reduces color image to black & white target mask
+		workingImage = _ColorSpace.process(workingImage);
+		workingImage = _ColorRange.process(workingImage);
+		workingImage = _Erode.process(workingImage);     
+		workingImage = _Dilate.process(workingImage);
+//		_GrayScale.process(workingImage);
+//		_BlackWhite.process(workingImage);
+		return workingImage;
+	}
+	
+	/*
+	 * Enables frame to frame tracking of the best target. Between full detections
+	 * (at most fullInterval frames apart, or whenever the track is lost) only the
+	 * area around the predicted target location is searched. The smoothed target
+	 * state is published as Tracked* values in the network table.
+	 * Pass 0 (or less) to disable tracking.
+	 */
+	public void setTracking(int fullInterval) {
+		tracker = (fullInterval > 0) ? new TargetTracker() : null;
+		if(tracker != null) tracker.setFullDetectionInterval(fullInterval);
+	}
+	
+	public TargetTracker getTracker() {
+		return tracker;
+	}
+	
+	/*
+	 * Sets the correction applied to the distance computed by targetAnalysis
+	 * (fitted from measured pairs, see DistanceCalibration.main). The raw
+	 * value is still published as DistanceToTargetRaw so new pairs can be
+	 * collected. Pass null to disable correction.
+	 */
+	public void setDistanceCalibration(DistanceCalibration cal) {
+		distanceCal = cal;
+	}
+	
+	public DistanceCalibration getDistanceCalibration() {
+		return distanceCal;
+	}
+	
+	/*
+	 * Sets the lens distortion correction to apply (see CalibrateCamera tool).
+	 * If the filter is in points only mode, only the corners of the best target
+	 * are corrected before analysis, otherwise each frame is remapped before
+	 * processing. Pass null to disable correction.
+	 */
+	public void setLensCorrection(Undistort undistort) {
+		lensCorrection = undistort;
+	}
+	
+	//returns false if there was no target or the tracker rejected it (outside the search window gate)
+	private boolean updateTracker(PolygonCv bestTarget, boolean fullDetection) {
+		boolean accepted = bestTarget != null && (fullDetection || tracker.accepts(bestTarget));
+		if(accepted) {
+			double angle = -Math.toDegrees(distanceOffset(bestTarget.getCenterX(), bestTarget.getCenterY()));
+			tracker.update(bestTarget, angle, fullDetection);
+		} else {
+			tracker.miss(fullDetection);
+		}
+		
+		report.setTrack(tracker.isTracking(), tracker.getConfidence(), tracker.getCenterX(),
+				tracker.getCenterY(), tracker.getWidth(), tracker.getAngle());
+		return accepted;
+	}
+	
 	private void addTargetingRectangle(Mat workingImage) {
 		DrawTool draw = new DrawTool();
 		draw.setImage(workingImage);
@@ -172,24 +302,19 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 		
 	}
 	public void targetAnalysis(PolygonCv foundTarget){
-		targetAnalysis(foundTarget, true);
+		report.reset(frameCount++, System.nanoTime());
+		targetAnalysis(foundTarget, report);
+		publish(report);
 	}
 
-	private void targetAnalysis(PolygonCv foundTarget, boolean printToNetWorkTable) { //tells the robo info about the target
+	private void targetAnalysis(PolygonCv foundTarget, TargetReport.Builder report) { //tells the robo info about the target
         double offsetXDegrees, offsetXDegreesIdeal,
         	targetDistanceInches, baseDistanceInches, 
-        	cameraAngleElevationRadians, targetAngleRadians,
-        	targetAngleFactor; 
+        	cameraAngleElevationRadians, targetAngleRadians; 
             	
         //calculates how far off center the target is from the center of the camera
         //offsetXDegrees = Math.atan((400 - foundTarget.getCenterX()) * Math.tan(Camera.FOV_X_RADIANS/2) / (Camera.RESOLUTION_X_PIXELS/2));
-        offsetXDegrees = Math.atan((400 - foundTarget.getMinX()) * Math.tan(Camera.FOV_X_RADIANS/2) / (Camera.RESOLUTION_X_PIXELS/2));
-    	
-    	//converts from radians (output of Math) to degrees
-    	offsetXDegrees = Math.toDegrees(offsetXDegrees);
-    	
-    	//used to determine size of the target in radians
-    	targetAngleFactor = 2 * Math.tan(Camera.FOV_X_RADIANS / 2) / Camera.RESOLUTION_X_PIXELS;
+        offsetXDegrees = xAngles.toDegrees(400 - foundTarget.getMinX());
     	
  /*   	//gets size of target in Radians
     	targetAngleRadians = Math.atan(((Camera.RESOLUTION_X_PIXELS/2) - foundTarget.getMaxX()) * targetAngleFactor) - 
@@ -208,9 +333,15 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 */
     	
     	//new old algo
-    	double dpx = (Camera.RESOLUTION_X_PIXELS/2) / Math.tan(Camera.FOV_X_RADIANS/2);
+    	double dpx = xAngles.getFocalLength();
     	double tta = (foundTarget.getWidth()/2) / dpx;
     	targetDistanceInches = (Target.TAPE_WIDTH_INCHES) / Math.tan(tta);
+    	double rawDistanceInches = targetDistanceInches;
+    	
+    	//corrects distance using measured pairs (table lookup)
+    	if(distanceCal != null) {
+    		targetDistanceInches = distanceCal.correct(targetDistanceInches);
+    	}
     	
     	//System.out.println(dpx + " " + tta + " " + targetDistanceInches);
     	
@@ -246,22 +377,15 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
     	offsetXDegrees = rot; //TODO temporary substitution
     	
     	//determines if angle values are reasonable
-    	if(offsetXDegrees < (Camera.FOV_X_DEGREES/2) && offsetXDegrees > (-Camera.FOV_X_DEGREES/2) && printToNetWorkTable) {
-    		networkTable.putNumber("OffCenterDegreesX", -Math.toDegrees(distanceOffset(foundTarget.getCenterX(), foundTarget.getCenterY())));
-    		
-    	}
+    	boolean angleValid = offsetXDegrees < (Camera.FOV_X_DEGREES/2) && offsetXDegrees > (-Camera.FOV_X_DEGREES/2);
     		
-    	System.out.println("Angle: " + offsetXDegrees);
-    	    	
-    	//writes calculated data to network tables
-    	System.out.println("Distance: " + baseDistanceInches);
-    	if(printToNetWorkTable){
-    	networkTable.putNumber("DistanceToBase",  baseDistanceInches);
-    	networkTable.putNumber("DistanceToTarget", targetDistanceInches);  	
-    	}
+    	LOG.debug("Angle", offsetXDegrees, "Distance", baseDistanceInches);
     	
     	//Newest Algorithm
-    	distanceOffset(foundTarget.getCenterX(), foundTarget.getCenterY());
+    	double offCenterDegrees = -Math.toDegrees(distanceOffset(foundTarget.getCenterX(), foundTarget.getCenterY()));
+    	
+    	//collects calculated data for the network tables
+    	report.setTarget(angleValid, offCenterDegrees, baseDistanceInches, targetDistanceInches, rawDistanceInches);
     }
 	
 	//+x is right
@@ -276,10 +400,8 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 	  //signed distance from center, in x direction (px)
 	  double xv = iw/2 - x;
 
-	  //Field of view (rad)
-	  double fov = Camera.FOV_Y_RADIANS;
-	  //Distance to virtual image plane (px)
-	  double dv = (1.0 * ih) / (2 * Math.tan(fov/2));
+	  //Distance to virtual image plane (px) - focal length for FOV_Y_RADIANS
+	  double dv = yAngles.getFocalLength();
 
 	  //Height from camera to goal (in)
 	  double hr = 77.75;
@@ -292,7 +414,7 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 	  double ox = 9.25;
 
 	  //Real distance from center of rotation to goal (in)
-	  double dr = hr / Math.tan(ac - Math.atan(hv/dv)) + od;
+	  double dr = hr / Math.tan(ac - yAngles.toRadians(hv)) + od;
 
 	  //Real offset from center of rotation to goal (in)
 	  double xr = dr * xv / dv + ox;
@@ -303,8 +425,7 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 	  //Distance from center of rotation to goal (in)
 	  double d = Math.hypot(dr, xr);
 	  
-	  System.out.println("Real Angle: " + a * 180 / Math.PI);
-	  System.out.println("Real dist:  " + d);
+	  LOG.debug("Real", "angle", a * 180 / Math.PI, "dist", d);
 
 	  return a;
 	}
@@ -317,9 +438,8 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 			
 			for(int i = 0; i < Imgproc.COLOR_MAX.length; i++) {
 				Imgproc.COLOR_MAX[i] = Integer.parseInt(configFileBReader.readLine());
-				System.out.println("Read & Set " + Imgproc.COLOR_MAX[i]);
 				Imgproc.COLOR_MIN[i] = Integer.parseInt(configFileBReader.readLine());
-				System.out.println("Read & Set " + Imgproc.COLOR_MIN[i]);
+				LOG.info("Read & Set", "max", Imgproc.COLOR_MAX[i], "min", Imgproc.COLOR_MIN[i]);
 
 			}
 			
@@ -329,7 +449,7 @@ public class TargetFilter extends Filter implements MatFilter, TargetFilterConfi
 			configFileBReader.close();
 
 		} catch (Exception ex) {
-			System.out.println(ex);
+			LOG.error("Failed to read color range config", ex);
 		}
 	}
 }
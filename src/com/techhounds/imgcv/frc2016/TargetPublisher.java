@@ -0,0 +1,303 @@
+package com.techhounds.imgcv.frc2016;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.techhounds.imgcv.utils.LatencyHistogram;
+import com.techhounds.imgcv.utils.Log;
+
+/**
+ * Publishes {@link TargetReport}s to another {@link TargetSink} (typically a
+ * {@link NetworkTableSink}) from a background thread so network writes never
+ * slow down image processing.
+ *
+ * <p>
+ * The vision thread hands each report to {@link #offer(TargetReport)}, which
+ * just swaps it into a single slot mailbox (no locks, no waiting). The publish
+ * thread wakes up at a fixed rate, takes whatever report is in the slot and
+ * writes all of its values in one batch. If several frames are processed
+ * between flushes only the newest report is written (the robot only cares
+ * about the latest values), see {@link #getCoalescedCount()}.
+ * </p>
+ *
+ * <p>
+ * The one exception: if a report with a target was replaced by a report
+ * without one before it was written, the report with the target is written
+ * first and the newer report is held for the next flush. Otherwise a single
+ * frame where the target was missed could hide a detection the robot could
+ * have acted on.
+ * </p>
+ *
+ * <p>
+ * The {@link com.techhounds.imgcv.FrameTrace#PUBLISH} stage marked by the
+ * filters only covers the hand off to this class. How old each report really
+ * was when it was written (capture to the end of the sink write, including the
+ * wait for the next flush) is recorded in {@link #getWriteAge()}.
+ * </p>
+ */
+public class TargetPublisher implements TargetSink {
+
+	/** Default number of times per second reports are flushed. */
+	public static final double DEFAULT_RATE = 50;
+
+	private static final Log LOG = Log.getLog("TargetPublisher");
+
+	private final TargetSink sink;
+	private final AtomicReference<Pending> mailbox = new AtomicReference<>();
+	private final Object flushLock = new Object(); //one writer at a time (not this, stop() holds it while joining)
+	private final AtomicLong offeredCount   = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private volatile long    publishedCount = 0;
+	private volatile long    writeNanos     = 0; //total time spent in sink (publish thread)
+	private final LatencyHistogram writeAge = new LatencyHistogram(); //capture to written
+	private volatile long    periodNanos;
+	private volatile boolean running = false;
+	private Thread publishThread = null;
+
+	/**
+	 * What is waiting to be written. Never changed once created, so the newest
+	 * report and the newest one with a target are always swapped together.
+	 */
+	private static final class Pending {
+		final TargetReport latest; //newest report offered
+		final TargetReport valid;  //newest report with a target not yet written (null if none)
+
+		Pending(TargetReport latest, TargetReport valid) {
+			this.latest = latest;
+			this.valid = valid;
+		}
+	}
+
+	/**
+	 * Constructs a new publisher flushing at the {@link #DEFAULT_RATE} (call
+	 * {@link #start()} to begin publishing).
+	 *
+	 * @param sink
+	 *            Where to write reports to.
+	 */
+	public TargetPublisher(TargetSink sink) {
+		this(sink, DEFAULT_RATE);
+	}
+
+	/**
+	 * Constructs a new publisher (call {@link #start()} to begin publishing).
+	 *
+	 * @param sink
+	 *            Where to write reports to.
+	 * @param rate
+	 *            How many times per second to flush the latest report.
+	 */
+	public TargetPublisher(TargetSink sink, double rate) {
+		this.sink = sink;
+		setRate(rate);
+	}
+
+	/** @return Sink the reports are written to. */
+	public TargetSink getSink() {
+		return sink;
+	}
+
+	/**
+	 * Sets how often the latest report is written (takes effect after the next
+	 * flush).
+	 *
+	 * @param rate
+	 *            Flushes per second (must be positive).
+	 */
+	public void setRate(double rate) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("Publish rate must be positive: " + rate);
+		}
+		periodNanos = (long) (1e9 / rate);
+	}
+
+	/** @return Flushes per second. */
+	public double getRate() {
+		return 1e9 / periodNanos;
+	}
+
+	/**
+	 * Hands the report for the frame just processed to the publish thread.
+	 * Never blocks, if the previous report has not been written yet it is
+	 * replaced.
+	 *
+	 * @param report
+	 *            Report to publish.
+	 */
+	public void offer(TargetReport report) {
+		offeredCount.incrementAndGet();
+		Pending prev;
+		Pending next;
+		do {
+			prev = mailbox.get();
+			TargetReport valid = report.isValid() ? report : ((prev != null) ? prev.valid : null);
+			next = new Pending(report, valid);
+		} while (!mailbox.compareAndSet(prev, next));
+		if (prev != null) {
+			// Count the reports that will now never be written
+			if (prev.latest != next.valid) {
+				coalescedCount.incrementAndGet();
+			}
+			if ((prev.valid != null) && (prev.valid != prev.latest) && (prev.valid != next.valid)) {
+				coalescedCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #offer(TargetReport)}.
+	 */
+	@Override
+	public void publish(TargetReport report) {
+		offer(report);
+	}
+
+	/**
+	 * Stops the background thread (flushing any pending report) and then closes
+	 * the sink.
+	 */
+	@Override
+	public void close() {
+		stop();
+		sink.close();
+	}
+
+	/**
+	 * Writes the pending report (if any) right now in the calling thread. The
+	 * publish thread uses this, but you can also call it yourself if you did
+	 * not {@link #start()} the publisher. Only one thread writes at a time.
+	 *
+	 * @return true if a report was written.
+	 */
+	public boolean flush() {
+		synchronized (flushLock) {
+			return flushPending();
+		}
+	}
+
+	private boolean flushPending() {
+		Pending pending = mailbox.getAndSet(null);
+		if (pending == null) {
+			return false;
+		}
+		TargetReport report = pending.latest;
+		if (!report.isValid() && (pending.valid != null)) {
+			// Don't let a miss hide a detection that was never written, write
+			// the detection now and the miss next time (unless a newer report
+			// shows up first)
+			if (!mailbox.compareAndSet(null, new Pending(report, null))) {
+				coalescedCount.incrementAndGet();
+			}
+			report = pending.valid;
+		}
+		long start = System.nanoTime();
+		sink.publish(report);
+		long end = System.nanoTime();
+		writeNanos += end - start;
+		writeAge.record(end - report.getCaptureNanos());
+		publishedCount++;
+		return true;
+	}
+
+	/**
+	 * Starts the background thread which flushes reports (does nothing if
+	 * already running).
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		publishThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				publishLoop();
+			}
+		}, "TargetPublisher");
+		publishThread.setDaemon(true);
+		publishThread.start();
+	}
+
+	/**
+	 * Stops the background thread (any pending report is written first).
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(publishThread);
+		try {
+			publishThread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (publishThread.isAlive()) {
+			// Still stuck in the sink, leave the pending report to it
+			LOG.warn("Publish thread did not stop, pending report not flushed");
+			publishThread = null;
+			return;
+		}
+		publishThread = null;
+		if (flush()) {
+			flush(); // report held back by the first flush (if any)
+		}
+	}
+
+	/** @return true if the background thread is running. */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/** @return Number of reports handed to {@link #offer(TargetReport)}. */
+	public long getOfferedCount() {
+		return offeredCount.get();
+	}
+
+	/** @return Number of reports replaced by a newer one before they were written. */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/** @return Number of reports written. */
+	public long getPublishedCount() {
+		return publishedCount;
+	}
+
+	/** @return Average time (nanoseconds) the sink took to write a report (off the vision thread). */
+	public long getAverageWriteNanos() {
+		long n = publishedCount;
+		return (n > 0) ? writeNanos / n : 0;
+	}
+
+	/**
+	 * Returns how old the reports were when they were written: from
+	 * {@link TargetReport#getCaptureNanos()} to when the sink finished writing
+	 * them. This is the real capture to network table latency the
+	 * {@link com.techhounds.imgcv.FrameTrace} stages stop short of.
+	 *
+	 * @return Histogram of report ages (safe to read while publishing).
+	 */
+	public LatencyHistogram getWriteAge() {
+		return writeAge;
+	}
+
+	private void publishLoop() {
+		long next = System.nanoTime();
+		while (running) {
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				LOG.warn("Failed to publish target report:", e);
+			}
+			next += periodNanos;
+			long now = System.nanoTime();
+			if (next - now > 0) {
+				LockSupport.parkNanos(this, next - now);
+			} else {
+				next = now; //fell behind, don't try to catch up
+			}
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package com.techhounds.imgcv.frc2016;
+
+/**
+ * Immutable snapshot of everything the vision code tells the robot about a
+ * single processed frame (distances, angle, ranked targets and tracking
+ * state).
+ *
+ * <p>
+ * Because all of the values come from the same frame and travel together,
+ * whoever publishes the report (see {@link TargetPublisher}) can never mix
+ * the distance from one frame with the angle from another. Use a
+ * {@link Builder} (which can be reused between frames) to fill in the values
+ * and then {@link Builder#build()} the report.
+ * </p>
+ */
+public final class TargetReport {
+
+	/** Values stored per ranked target (score, center x, center y, width, height). */
+	private static final int TOP_FIELDS = 5;
+
+	private final long    frame;
+	private final long    captureNanos;
+	private final boolean valid;
+	private final boolean angleValid;
+	private final double  offCenterDegreesX;
+	private final double  distanceToBase;
+	private final double  distanceToTarget;
+	private final double  distanceToTargetRaw;
+	private final int     topTargetCount;
+	private final double[] topTargets; //TOP_FIELDS values per rank, best first
+	private final boolean tracking;
+	private final boolean trackLocked;
+	private final double  trackConfidence;
+	private final double  trackedCenterX;
+	private final double  trackedCenterY;
+	private final double  trackedWidth;
+	private final double  trackedAngle;
+
+	private TargetReport(Builder b) {
+		frame               = b.frame;
+		captureNanos        = b.captureNanos;
+		valid               = b.valid;
+		angleValid          = b.angleValid;
+		offCenterDegreesX   = b.offCenterDegreesX;
+		distanceToBase      = b.distanceToBase;
+		distanceToTarget    = b.distanceToTarget;
+		distanceToTargetRaw = b.distanceToTargetRaw;
+		topTargetCount      = b.topTargetCount;
+		topTargets          = new double[topTargetCount * TOP_FIELDS];
+		System.arraycopy(b.topTargets, 0, topTargets, 0, topTargets.length);
+		tracking            = b.tracking;
+		trackLocked         = b.trackLocked;
+		trackConfidence     = b.trackConfidence;
+		trackedCenterX      = b.trackedCenterX;
+		trackedCenterY      = b.trackedCenterY;
+		trackedWidth        = b.trackedWidth;
+		trackedAngle        = b.trackedAngle;
+	}
+
+	/** @return Frame number (counts every frame analyzed, found target or not). */
+	public long getFrame() {
+		return frame;
+	}
+
+	/** @return {@link System#nanoTime()} when the frame was captured (or processing started). */
+	public long getCaptureNanos() {
+		return captureNanos;
+	}
+
+	/** @return true if a target was found (distance, angle and top target values are valid). */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/** @return true if the off center angle was within the camera's field of view. */
+	public boolean isAngleValid() {
+		return angleValid;
+	}
+
+	/** @return How far (degrees) the robot needs to rotate to face the target. */
+	public double getOffCenterDegreesX() {
+		return offCenterDegreesX;
+	}
+
+	/** @return Distance (inches) along the ground to the base of the tower. */
+	public double getDistanceToBase() {
+		return distanceToBase;
+	}
+
+	/** @return Distance (inches) to the target (after any calibration correction). */
+	public double getDistanceToTarget() {
+		return distanceToTarget;
+	}
+
+	/** @return Distance (inches) to the target before calibration correction. */
+	public double getDistanceToTargetRaw() {
+		return distanceToTargetRaw;
+	}
+
+	/** @return Number of ranked targets in the report. */
+	public int getTopTargetCount() {
+		return topTargetCount;
+	}
+
+	/** @return Rating of ranked target (0 is best). */
+	public double getTopTargetScore(int rank) {
+		return topTargets[rank * TOP_FIELDS];
+	}
+
+	/** @return Center x (pixels) of ranked target (0 is best). */
+	public double getTopTargetCenterX(int rank) {
+		return topTargets[rank * TOP_FIELDS + 1];
+	}
+
+	/** @return Center y (pixels) of ranked target (0 is best). */
+	public double getTopTargetCenterY(int rank) {
+		return topTargets[rank * TOP_FIELDS + 2];
+	}
+
+	/** @return Width (pixels) of ranked target (0 is best). */
+	public double getTopTargetWidth(int rank) {
+		return topTargets[rank * TOP_FIELDS + 3];
+	}
+
+	/** @return Height (pixels) of ranked target (0 is best). */
+	public double getTopTargetHeight(int rank) {
+		return topTargets[rank * TOP_FIELDS + 4];
+	}
+
+	/** @return true if tracking is enabled (the Track* values are filled in). */
+	public boolean isTracking() {
+		return tracking;
+	}
+
+	/** @return true if the tracker is currently locked onto a target. */
+	public boolean isTrackLocked() {
+		return trackLocked;
+	}
+
+	/** @return Tracker confidence in the range of [0, 1.0]. */
+	public double getTrackConfidence() {
+		return trackConfidence;
+	}
+
+	/** @return Smoothed center x (pixels) of tracked target. */
+	public double getTrackedCenterX() {
+		return trackedCenterX;
+	}
+
+	/** @return Smoothed center y (pixels) of tracked target. */
+	public double getTrackedCenterY() {
+		return trackedCenterY;
+	}
+
+	/** @return Smoothed width (pixels) of tracked target. */
+	public double getTrackedWidth() {
+		return trackedWidth;
+	}
+
+	/** @return Smoothed angle (degrees) to tracked target. */
+	public double getTrackedAngle() {
+		return trackedAngle;
+	}
+
+	/**
+	 * Returns a JSON looking string of the values.
+	 *
+	 * @return String representation.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{ \"frame\":");
+		sb.append(frame).append(", \"valid\":").append(valid);
+		if (valid) {
+			sb.append(", \"angle\":").append(angleValid ? Double.toString(offCenterDegreesX) : "null");
+			sb.append(", \"distBase\":").append(distanceToBase);
+			sb.append(", \"dist\":").append(distanceToTarget);
+			sb.append(", \"distRaw\":").append(distanceToTargetRaw);
+			sb.append(", \"top\":[");
+			for (int i = 0; i < topTargetCount; i++) {
+				sb.append((i == 0) ? "[" : ", [");
+				for (int j = 0; j < TOP_FIELDS; j++) {
+					sb.append((j == 0) ? "" : ", ").append(topTargets[i * TOP_FIELDS + j]);
+				}
+				sb.append(']');
+			}
+			sb.append(']');
+		}
+		if (tracking) {
+			sb.append(", \"trackLocked\":").append(trackLocked);
+			sb.append(", \"trackConf\":").append(trackConfidence);
+			sb.append(", \"tracked\":[").append(trackedCenterX).append(", ").append(trackedCenterY)
+					.append(", ").append(trackedWidth).append(", ").append(trackedAngle).append(']');
+		}
+		sb.append(" }");
+		return sb.toString();
+	}
+
+	/**
+	 * Mutable helper used to collect the values of a report while a frame is
+	 * processed. Call {@link #reset(long, long)} at the start of each frame and
+	 * {@link #build()} at the end (the builder can then be reused).
+	 */
+	public static final class Builder {
+		private long    frame;
+		private long    captureNanos;
+		private boolean valid;
+		private boolean angleValid;
+		private double  offCenterDegreesX;
+		private double  distanceToBase;
+		private double  distanceToTarget;
+		private double  distanceToTargetRaw;
+		private int     topTargetCount;
+		private double[] topTargets = new double[3 * TOP_FIELDS];
+		private boolean tracking;
+		private boolean trackLocked;
+		private double  trackConfidence;
+		private double  trackedCenterX;
+		private double  trackedCenterY;
+		private double  trackedWidth;
+		private double  trackedAngle;
+
+		/**
+		 * Clears all values for a new frame.
+		 *
+		 * @param frame
+		 *            Frame number.
+		 * @param captureNanos
+		 *            {@link System#nanoTime()} when the frame was captured.
+		 * @return This builder.
+		 */
+		public Builder reset(long frame, long captureNanos) {
+			this.frame = frame;
+			this.captureNanos = captureNanos;
+			valid = angleValid = tracking = trackLocked = false;
+			offCenterDegreesX = distanceToBase = distanceToTarget = distanceToTargetRaw = 0;
+			trackConfidence = trackedCenterX = trackedCenterY = trackedWidth = trackedAngle = 0;
+			topTargetCount = 0;
+			return this;
+		}
+
+		/**
+		 * Fills in the values computed for the best target (marks the report
+		 * valid).
+		 *
+		 * @param angleValid
+		 *            Pass false if the angle is not trustworthy.
+		 * @param offCenterDegreesX
+		 *            Degrees robot needs to rotate to face the target.
+		 * @param distanceToBase
+		 *            Distance (inches) to base of tower.
+		 * @param distanceToTarget
+		 *            Corrected distance (inches) to target.
+		 * @param distanceToTargetRaw
+		 *            Uncorrected distance (inches) to target.
+		 * @return This builder.
+		 */
+		public Builder setTarget(boolean angleValid, double offCenterDegreesX, double distanceToBase,
+				double distanceToTarget, double distanceToTargetRaw) {
+			this.valid = true;
+			this.angleValid = angleValid;
+			this.offCenterDegreesX = offCenterDegreesX;
+			this.distanceToBase = distanceToBase;
+			this.distanceToTarget = distanceToTarget;
+			this.distanceToTargetRaw = distanceToTargetRaw;
+			return this;
+		}
+
+		/**
+		 * Appends the next ranked target (call in order, best first).
+		 *
+		 * @return This builder.
+		 */
+		public Builder addTopTarget(double score, double centerX, double centerY, double width, double height) {
+			int i = topTargetCount * TOP_FIELDS;
+			if (i + TOP_FIELDS > topTargets.length) {
+				double[] grown = new double[topTargets.length * 2];
+				System.arraycopy(topTargets, 0, grown, 0, i);
+				topTargets = grown;
+			}
+			topTargets[i] = score;
+			topTargets[i + 1] = centerX;
+			topTargets[i + 2] = centerY;
+			topTargets[i + 3] = width;
+			topTargets[i + 4] = height;
+			topTargetCount++;
+			return this;
+		}
+
+		/**
+		 * Fills in the current tracker state (marks the report as tracking).
+		 *
+		 * @return This builder.
+		 */
+		public Builder setTrack(boolean locked, double confidence, double centerX, double centerY,
+				double width, double angle) {
+			tracking = true;
+			trackLocked = locked;
+			trackConfidence = confidence;
+			trackedCenterX = centerX;
+			trackedCenterY = centerY;
+			trackedWidth = width;
+			trackedAngle = angle;
+			return this;
+		}
+
+		/**
+		 * Creates an immutable report from the current values.
+		 *
+		 * @return New report (not affected by later changes to the builder).
+		 */
+		public TargetReport build() {
+			return new TargetReport(this);
+		}
+	}
+}
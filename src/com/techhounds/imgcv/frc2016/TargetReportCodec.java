@@ -0,0 +1,226 @@
+package com.techhounds.imgcv.frc2016;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts {@link TargetReport}s to and from the fixed layout binary datagram
+ * sent by {@link UdpTargetSink} (so all of the values for a frame arrive
+ * together in a single packet).
+ *
+ * <p>
+ * Every packet is {@link #PACKET_SIZE} bytes in network (big endian) order:
+ * </p>
+ *
+ * <pre>
+ * Offset Type    Value
+ *      0 int16   Magic number 0x5448 ("TH")
+ *      2 uint8   Protocol version (1)
+ *      3 uint8   Flags: 1=valid, 2=angle valid, 4=tracking, 8=track locked
+ *      4 int32   Sequence number (incremented for each packet sent)
+ *      8 int32   Frame number
+ *     12 int64   Capture time (microseconds since 1970-01-01 UTC)
+ *     20 int64   Publish time (microseconds since 1970-01-01 UTC)
+ *     28 float32 OffCenterDegreesX
+ *     32 float32 DistanceToBase
+ *     36 float32 DistanceToTarget
+ *     40 float32 DistanceToTargetRaw
+ *     44 float32 TrackConfidence
+ *     48 float32 TrackedCenterX
+ *     52 float32 TrackedCenterY
+ *     56 float32 TrackedWidth
+ *     60 float32 TrackedAngle
+ *     64 uint8   Number of ranked targets (0 to 3), followed by 3 unused bytes
+ *     68 float32 Score, center x, center y, width, height of each of the
+ *                3 ranked target slots (best first, unused slots are 0)
+ * </pre>
+ *
+ * <p>
+ * Times are converted between {@link System#nanoTime()} and wall clock time
+ * using a single offset computed when this class is loaded (shared by every
+ * codec in the JVM, so a time encoded and decoded in the same JVM converts
+ * back to the original {@link System#nanoTime()} value, less the sub
+ * microsecond part). The one way latency measured between two machines is only
+ * as good as their clock synchronization.
+ * </p>
+ */
+public class TargetReportCodec {
+
+	/** Size of every packet in bytes. */
+	public static final int PACKET_SIZE = 128;
+
+	/** Value of first two bytes of each packet. */
+	public static final short MAGIC = 0x5448;
+
+	/** Version of packet layout. */
+	public static final int VERSION = 1;
+
+	/** Number of ranked target slots in each packet. */
+	public static final int MAX_TOP_TARGETS = 3;
+
+	private static final int FLAG_VALID        = 1;
+	private static final int FLAG_ANGLE_VALID  = 2;
+	private static final int FLAG_TRACKING     = 4;
+	private static final int FLAG_TRACK_LOCKED = 8;
+
+	/** Add to nanoTime() values to get nanoseconds since the epoch (same for all codecs). */
+	private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis() * 1000000L - System.nanoTime();
+
+	private final TargetReport.Builder builder = new TargetReport.Builder();
+	private TargetReport report;
+	private int sequence;
+	private long captureMicros;
+	private long publishMicros;
+
+	/**
+	 * Constructs a new codec (can be used for both encoding and decoding, but
+	 * not from multiple threads).
+	 */
+	public TargetReportCodec() {
+	}
+
+	/**
+	 * Converts a {@link System#nanoTime()} value to wall clock time.
+	 *
+	 * @param nanoTime
+	 *            Value from {@link System#nanoTime()}.
+	 * @return Microseconds since 1970-01-01 UTC.
+	 */
+	public long toEpochMicros(long nanoTime) {
+		return (nanoTime + EPOCH_OFFSET_NANOS) / 1000;
+	}
+
+	/**
+	 * Converts wall clock time to a {@link System#nanoTime()} value.
+	 *
+	 * @param epochMicros
+	 *            Microseconds since 1970-01-01 UTC.
+	 * @return Corresponding {@link System#nanoTime()} value for this JVM.
+	 */
+	public long toNanoTime(long epochMicros) {
+		return epochMicros * 1000 - EPOCH_OFFSET_NANOS;
+	}
+
+	/**
+	 * Writes a report as a packet.
+	 *
+	 * @param report
+	 *            Report to encode (only the first {@link #MAX_TOP_TARGETS}
+	 *            ranked targets are sent).
+	 * @param sequence
+	 *            Sequence number of packet.
+	 * @param publishNanos
+	 *            {@link System#nanoTime()} when the packet is sent.
+	 * @param buf
+	 *            Buffer to write to (cleared first, ready to send when done).
+	 */
+	public void encode(TargetReport report, int sequence, long publishNanos, ByteBuffer buf) {
+		buf.clear();
+		buf.order(ByteOrder.BIG_ENDIAN);
+		int flags = (report.isValid() ? FLAG_VALID : 0) | (report.isAngleValid() ? FLAG_ANGLE_VALID : 0)
+				| (report.isTracking() ? FLAG_TRACKING : 0) | (report.isTrackLocked() ? FLAG_TRACK_LOCKED : 0);
+		buf.putShort(MAGIC);
+		buf.put((byte) VERSION);
+		buf.put((byte) flags);
+		buf.putInt(sequence);
+		buf.putInt((int) report.getFrame());
+		buf.putLong(toEpochMicros(report.getCaptureNanos()));
+		buf.putLong(toEpochMicros(publishNanos));
+		buf.putFloat((float) report.getOffCenterDegreesX());
+		buf.putFloat((float) report.getDistanceToBase());
+		buf.putFloat((float) report.getDistanceToTarget());
+		buf.putFloat((float) report.getDistanceToTargetRaw());
+		buf.putFloat((float) report.getTrackConfidence());
+		buf.putFloat((float) report.getTrackedCenterX());
+		buf.putFloat((float) report.getTrackedCenterY());
+		buf.putFloat((float) report.getTrackedWidth());
+		buf.putFloat((float) report.getTrackedAngle());
+		int n = Math.min(report.getTopTargetCount(), MAX_TOP_TARGETS);
+		buf.put((byte) n);
+		buf.put((byte) 0);
+		buf.putShort((short) 0);
+		for (int i = 0; i < MAX_TOP_TARGETS; i++) {
+			boolean have = (i < n);
+			buf.putFloat(have ? (float) report.getTopTargetScore(i) : 0);
+			buf.putFloat(have ? (float) report.getTopTargetCenterX(i) : 0);
+			buf.putFloat(have ? (float) report.getTopTargetCenterY(i) : 0);
+			buf.putFloat(have ? (float) report.getTopTargetWidth(i) : 0);
+			buf.putFloat(have ? (float) report.getTopTargetHeight(i) : 0);
+		}
+		buf.flip();
+	}
+
+	/**
+	 * Reads a packet. If successful, the values can be retrieved via
+	 * {@link #getReport()}, {@link #getSequence()}, {@link #getCaptureMicros()}
+	 * and {@link #getPublishMicros()}.
+	 *
+	 * @param buf
+	 *            Buffer positioned at start of packet.
+	 * @return true if decoded, false if buffer did not contain a valid packet
+	 *         (wrong size, magic number or version).
+	 */
+	public boolean decode(ByteBuffer buf) {
+		buf.order(ByteOrder.BIG_ENDIAN);
+		if (buf.remaining() < PACKET_SIZE || buf.getShort() != MAGIC || buf.get() != VERSION) {
+			return false;
+		}
+		int flags = buf.get();
+		sequence = buf.getInt();
+		int frame = buf.getInt();
+		captureMicros = buf.getLong();
+		publishMicros = buf.getLong();
+
+		builder.reset(frame, toNanoTime(captureMicros));
+		float angle = buf.getFloat();
+		float base = buf.getFloat();
+		float dist = buf.getFloat();
+		float raw = buf.getFloat();
+		if ((flags & FLAG_VALID) != 0) {
+			builder.setTarget((flags & FLAG_ANGLE_VALID) != 0, angle, base, dist, raw);
+		}
+		float conf = buf.getFloat();
+		float cx = buf.getFloat();
+		float cy = buf.getFloat();
+		float width = buf.getFloat();
+		float trackAngle = buf.getFloat();
+		if ((flags & FLAG_TRACKING) != 0) {
+			builder.setTrack((flags & FLAG_TRACK_LOCKED) != 0, conf, cx, cy, width, trackAngle);
+		}
+		int n = Math.min(buf.get() & 0xff, MAX_TOP_TARGETS);
+		buf.get();
+		buf.getShort();
+		for (int i = 0; i < MAX_TOP_TARGETS; i++) {
+			float score = buf.getFloat();
+			float tx = buf.getFloat();
+			float ty = buf.getFloat();
+			float tw = buf.getFloat();
+			float th = buf.getFloat();
+			if (i < n) {
+				builder.addTopTarget(score, tx, ty, tw, th);
+			}
+		}
+		report = builder.build();
+		return true;
+	}
+
+	/** @return Report from last successful {@link #decode(ByteBuffer)}. */
+	public TargetReport getReport() {
+		return report;
+	}
+
+	/** @return Sequence number from last successful {@link #decode(ByteBuffer)}. */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/** @return Capture time (microseconds since epoch) from last successful decode. */
+	public long getCaptureMicros() {
+		return captureMicros;
+	}
+
+	/** @return Publish time (microseconds since epoch) from last successful decode. */
+	public long getPublishMicros() {
+		return publishMicros;
+	}
+}
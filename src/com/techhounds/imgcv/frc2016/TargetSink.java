@@ -0,0 +1,29 @@
+package com.techhounds.imgcv.frc2016;
+
+/**
+ * Destination for the {@link TargetReport} produced for each processed frame.
+ *
+ * <p>
+ * Implementations are provided for NetworkTables ({@link NetworkTableSink}),
+ * in memory capture for tests ({@link MemoryTargetSink}), CSV files
+ * ({@link CsvTargetSink}) and for throwing the reports away
+ * ({@link NullTargetSink}). Wrap any of them in a {@link TargetPublisher} if
+ * they should not be written from the vision thread.
+ * </p>
+ */
+public interface TargetSink {
+
+	/**
+	 * Publishes the results of a frame.
+	 *
+	 * @param report
+	 *            Report to publish (immutable, so it is safe to hold onto).
+	 */
+	void publish(TargetReport report);
+
+	/**
+	 * Releases any resources (files, threads) held by the sink. Reports
+	 * published after this are ignored or lost.
+	 */
+	void close();
+}
@@ -0,0 +1,275 @@
+package com.techhounds.imgcv.frc2016;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the packets sent by {@link UdpTargetSink} and keeps track of how
+ * many were lost and how old they were when they arrived. The robot side
+ * would do the same thing (decode via {@link TargetReportCodec}).
+ *
+ * <p>
+ * Can also be run as a stand alone tool:
+ * </p>
+ *
+ * <pre>
+ * UdpTargetReceiver [PORT]
+ *   Listens for packets and prints statistics every second.
+ *
+ * UdpTargetReceiver --loopback [COUNT [RATE [PORT]]]
+ *   Sends COUNT (default 1000) reports at RATE (default 100) per second to
+ *   itself over the loopback interface and prints the one way latency and
+ *   loss (sender and receiver share the same clock, so the latency is exact).
+ * </pre>
+ */
+public class UdpTargetReceiver {
+
+	private final DatagramSocket socket;
+	private final byte[] data = new byte[TargetReportCodec.PACKET_SIZE * 2];
+	private final DatagramPacket packet = new DatagramPacket(data, data.length);
+	private final ByteBuffer buf = ByteBuffer.wrap(data);
+	private final TargetReportCodec codec = new TargetReportCodec();
+
+	private boolean haveSequence;
+	private int expectedSequence;
+	private long receivedCount;
+	private long invalidCount;
+	private long lostCount;
+	private long lateCount;
+	private long latencyCount;
+	private long publishLatencySum, publishLatencyMin, publishLatencyMax;
+	private long captureLatencySum, captureLatencyMin, captureLatencyMax;
+
+	/**
+	 * Constructs a new receiver listening on a UDP port.
+	 *
+	 * @param port
+	 *            Port to listen on (use {@link UdpTargetSink#DEFAULT_PORT} to
+	 *            match the default sender).
+	 * @throws IOException
+	 *             If unable to bind to the port.
+	 */
+	public UdpTargetReceiver(int port) throws IOException {
+		socket = new DatagramSocket(port);
+		resetStats();
+	}
+
+	/**
+	 * Waits for the next report.
+	 *
+	 * @param timeoutMs
+	 *            How long to wait (0 to wait forever).
+	 * @return Report received (see {@link #getCodec()} for the sequence number
+	 *         and time stamps) or null if nothing valid arrived in time.
+	 * @throws IOException
+	 *             If there was a problem reading from the socket.
+	 */
+	public TargetReport receive(int timeoutMs) throws IOException {
+		socket.setSoTimeout(timeoutMs);
+		packet.setLength(data.length);
+		try {
+			socket.receive(packet);
+		} catch (SocketTimeoutException e) {
+			return null;
+		}
+		long now = System.nanoTime();
+
+		buf.clear();
+		buf.limit(packet.getLength());
+		if (!codec.decode(buf)) {
+			invalidCount++;
+			return null;
+		}
+		receivedCount++;
+
+		int seq = codec.getSequence();
+		if (haveSequence) {
+			int gap = seq - expectedSequence;
+			if (gap >= 0) {
+				lostCount += gap;
+			} else {
+				// arrived after we counted it as lost
+				lateCount++;
+				lostCount = Math.max(0, lostCount - 1);
+			}
+		}
+		if (!haveSequence || seq - expectedSequence >= 0) {
+			expectedSequence = seq + 1;
+			haveSequence = true;
+		}
+
+		// Compare in nanoTime() units, when the sender is in this JVM (loopback)
+		// both ends use the same clock and the latency can't come out negative
+		long publishLatency = (now - codec.toNanoTime(codec.getPublishMicros())) / 1000;
+		long captureLatency = (now - codec.toNanoTime(codec.getCaptureMicros())) / 1000;
+		latencyCount++;
+		publishLatencySum += publishLatency;
+		publishLatencyMin = Math.min(publishLatencyMin, publishLatency);
+		publishLatencyMax = Math.max(publishLatencyMax, publishLatency);
+		captureLatencySum += captureLatency;
+		captureLatencyMin = Math.min(captureLatencyMin, captureLatency);
+		captureLatencyMax = Math.max(captureLatencyMax, captureLatency);
+
+		return codec.getReport();
+	}
+
+	/** @return Codec holding the sequence number and time stamps of the last report received. */
+	public TargetReportCodec getCodec() {
+		return codec;
+	}
+
+	/** @return Local port being listened on. */
+	public int getPort() {
+		return socket.getLocalPort();
+	}
+
+	/** @return Number of valid packets received. */
+	public long getReceivedCount() {
+		return receivedCount;
+	}
+
+	/** @return Number of packets that never arrived (based on gaps in sequence numbers). */
+	public long getLostCount() {
+		return lostCount;
+	}
+
+	/** @return Number of packets that arrived out of order. */
+	public long getLateCount() {
+		return lateCount;
+	}
+
+	/** @return Number of packets that were not valid target reports. */
+	public long getInvalidCount() {
+		return invalidCount;
+	}
+
+	/** @return Average time (microseconds) from publish to receive. */
+	public long getAveragePublishLatency() {
+		return (latencyCount > 0) ? publishLatencySum / latencyCount : 0;
+	}
+
+	/** @return Average time (microseconds) from capture to receive. */
+	public long getAverageCaptureLatency() {
+		return (latencyCount > 0) ? captureLatencySum / latencyCount : 0;
+	}
+
+	/** Clears all counters. */
+	public void resetStats() {
+		haveSequence = false;
+		receivedCount = invalidCount = lostCount = lateCount = latencyCount = 0;
+		publishLatencySum = captureLatencySum = 0;
+		publishLatencyMin = captureLatencyMin = Long.MAX_VALUE;
+		publishLatencyMax = captureLatencyMax = Long.MIN_VALUE;
+	}
+
+	/** Stops listening. */
+	public void close() {
+		socket.close();
+	}
+
+	/**
+	 * Returns a JSON looking string of the statistics.
+	 *
+	 * @return String representation.
+	 */
+	public String toString() {
+		long total = receivedCount + lostCount;
+		double lossPct = (total > 0) ? (100.0 * lostCount / total) : 0;
+		StringBuilder sb = new StringBuilder("{ \"received\":");
+		sb.append(receivedCount).append(", \"lost\":").append(lostCount);
+		sb.append(", \"lossPct\":").append(String.format("%.2f", lossPct));
+		sb.append(", \"late\":").append(lateCount).append(", \"invalid\":").append(invalidCount);
+		if (latencyCount > 0) {
+			sb.append(", \"publishLatencyUs\":[").append(publishLatencyMin).append(", ")
+					.append(getAveragePublishLatency()).append(", ").append(publishLatencyMax).append(']');
+			sb.append(", \"captureLatencyUs\":[").append(captureLatencyMin).append(", ")
+					.append(getAverageCaptureLatency()).append(", ").append(captureLatencyMax).append(']');
+		}
+		sb.append(" }");
+		return sb.toString();
+	}
+
+	/**
+	 * Listens for packets or runs a loopback test (see class description).
+	 *
+	 * @param args
+	 *            Command line arguments.
+	 * @throws Exception
+	 *             If something goes wrong.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--loopback")) {
+			int count = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+			double rate = (args.length > 2) ? Double.parseDouble(args[2]) : 100;
+			int port = (args.length > 3) ? Integer.parseInt(args[3]) : UdpTargetSink.DEFAULT_PORT;
+			loopback(count, rate, port);
+			return;
+		}
+
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : UdpTargetSink.DEFAULT_PORT;
+		UdpTargetReceiver receiver = new UdpTargetReceiver(port);
+		System.out.println("Listening for target reports on UDP port " + receiver.getPort());
+		long nextPrint = System.currentTimeMillis() + 1000;
+		while (true) {
+			receiver.receive(1000);
+			if (System.currentTimeMillis() >= nextPrint) {
+				TargetReport last = receiver.getCodec().getReport();
+				System.out.println(receiver + ((last != null) ? (" last=" + last) : ""));
+				nextPrint += 1000;
+			}
+		}
+	}
+
+	/**
+	 * Sends reports to ourselves from a separate thread (the way the vision
+	 * code would) and measures what arrives.
+	 */
+	private static void loopback(final int count, double rate, int port) throws Exception {
+		final UdpTargetReceiver receiver = new UdpTargetReceiver(port);
+		final UdpTargetSink sink = new UdpTargetSink("127.0.0.1", receiver.getPort());
+		final long periodNanos = (long) (1e9 / rate);
+
+		Thread sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TargetReport.Builder builder = new TargetReport.Builder();
+				long next = System.nanoTime();
+				for (int i = 0; i < count; i++) {
+					builder.reset(i, System.nanoTime());
+					builder.setTarget(true, i * 0.01, 100 + i * 0.1, 110 + i * 0.1, 112 + i * 0.1);
+					builder.addTopTarget(1000000 - i, 400, 300, 100, 70);
+					sink.publish(builder.build());
+					next += periodNanos;
+					long sleep = next - System.nanoTime();
+					if (sleep > 0) {
+						try {
+							Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}
+		}, "LoopbackSender");
+
+		System.out.println("Sending " + count + " reports at " + rate + " per second to " + sink.getAddress());
+		sender.start();
+		while (receiver.getReceivedCount() + receiver.getInvalidCount() < count) {
+			if (receiver.receive(1000) == null && !sender.isAlive()) {
+				break; //nothing more is coming
+			}
+		}
+		sender.join();
+		sink.close();
+		receiver.close();
+
+		// packets missing from the end don't leave a gap in the sequence numbers
+		long missing = count - receiver.getReceivedCount() - receiver.getLostCount();
+		receiver.lostCount += Math.max(0, missing);
+		System.out.println("Sent: " + sink.getSentCount() + " (dropped " + sink.getDroppedCount() + ")");
+		System.out.println("Received: " + receiver);
+	}
+}
@@ -0,0 +1,109 @@
+package com.techhounds.imgcv.frc2016;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Sends each report to the robot as a single UDP packet (see
+ * {@link TargetReportCodec} for the layout and {@link UdpTargetReceiver} for
+ * the receiving side).
+ *
+ * <p>
+ * Unlike NetworkTables, all of the values from a frame arrive together along
+ * with a sequence number (so lost packets can be detected) and the capture
+ * and publish times (so the age of the values can be computed). The socket is
+ * non-blocking, if the operating system can't take the packet right away it is
+ * dropped (and counted) rather than holding up the vision code.
+ * </p>
+ */
+public class UdpTargetSink implements TargetSink {
+
+	/** Default UDP port (FRC allows teams to use 5800-5810). */
+	public static final int DEFAULT_PORT = 5800;
+
+	private final DatagramChannel channel;
+	private final InetSocketAddress address;
+	private final TargetReportCodec codec = new TargetReportCodec();
+	private final ByteBuffer buf = ByteBuffer.allocateDirect(TargetReportCodec.PACKET_SIZE);
+	private int sequence = 0;
+	private long sentCount = 0;
+	private long droppedCount = 0;
+	private IOException error = null;
+
+	/**
+	 * Constructs a new sink sending to {@link #DEFAULT_PORT}.
+	 *
+	 * @param host
+	 *            Host name or IP address to send to (like "10.8.68.2").
+	 * @throws IOException
+	 *             If unable to open the socket.
+	 */
+	public UdpTargetSink(String host) throws IOException {
+		this(host, DEFAULT_PORT);
+	}
+
+	/**
+	 * Constructs a new sink.
+	 *
+	 * @param host
+	 *            Host name or IP address to send to.
+	 * @param port
+	 *            UDP port to send to.
+	 * @throws IOException
+	 *             If unable to open the socket.
+	 */
+	public UdpTargetSink(String host, int port) throws IOException {
+		address = new InetSocketAddress(host, port);
+		channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+	}
+
+	/*
+	 * Send errors are counted and remembered (see getError) rather than thrown,
+	 * the vision code should keep running if the robot isn't there.
+	 */
+	@Override
+	public synchronized void publish(TargetReport report) {
+		codec.encode(report, sequence++, System.nanoTime(), buf);
+		try {
+			if (channel.send(buf, address) > 0) {
+				sentCount++;
+				return;
+			}
+		} catch (IOException e) {
+			error = e;
+		}
+		droppedCount++;
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+	/** @return Address packets are sent to. */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	/** @return Number of packets sent. */
+	public synchronized long getSentCount() {
+		return sentCount;
+	}
+
+	/** @return Number of packets which could not be sent. */
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/** @return Most recent send error (or null if none). */
+	public synchronized IOException getError() {
+		return error;
+	}
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
@@ -29,6 +28,12 @@ public class FindPinkRectangleFilter implements MatFilter {
 	/** Will be true if we found the pink rectangle. */
 	private boolean _Found;
 
+	/** Will be true if a solution was computed for the rectangle found. */
+	private boolean _Solved;
+
+	/** Largest rectangle found in the last image (null if none). */
+	private PolygonCv _Best;
+
 	/**
 	 * The set of filters to apply to reduce a source image to a black and white
 	 * image where (hopefully) the large white rectangle corresponds to the pink
@@ -73,6 +78,7 @@ public class FindPinkRectangleFilter implements MatFilter {
 
 	// Fields used to enable "hole checking" on each potential polygon found
 	private boolean _HoleCheckEnabled;
+	private IntegralImage _HoleIntegral;
 	private double _HoleLeft;
 	private double _HoleRight;
 	private double _HoleTop;
@@ -95,6 +101,7 @@ public class FindPinkRectangleFilter implements MatFilter {
 		_Id = "pink";
 		_DrawTool = new DrawTool();
 		_HoleCheckEnabled = false;
+		_HoleIntegral = new IntegralImage();
 
 		_ColorSpace = ColorSpace.createBGRtoHSV();
 		// _Erode = new Erode(6);
@@ -230,6 +237,8 @@ public class FindPinkRectangleFilter implements MatFilter {
 	 */
 	public Mat process(Mat srcImage) {
 		_Found = false;
+		_Solved = false;
+		_Best = null;
 		int hImg = srcImage.rows();
 		int wImg = srcImage.cols();
 		int imgMid = hImg / 2;
@@ -238,9 +247,9 @@ public class FindPinkRectangleFilter implements MatFilter {
 		Mat copy = srcImage.clone();
 		Mat d1 = _Filter.process(copy);
 
-		// Keep a clean copy of binary 1/0 matrix as find contours does the
-		// other stuff
-		Mat binary = d1.clone();
+		// Sum up the clean binary 1/0 matrix (for hole checks) before find
+		// contours does the other stuff
+		_HoleIntegral.setImage(d1);
 
 		// Uncomment to use BW image as output to draw on
 		// Imgproc.cvtColor(d1, output, Imgproc.COLOR_GRAY2BGR);
@@ -283,7 +292,7 @@ public class FindPinkRectangleFilter implements MatFilter {
 						/ leftHeight : 0;
 				if (leftHeight >= 10 && rightHeight >= 10
 						&& (heightRatio > 0.75) && (heightRatio < 1.25)
-						&& holeCheck(binary, poly)) {
+						&& holeCheck(poly)) {
 					polygons.add(poly);
 					_Found = true;
 					if (w > maxWidth) {
@@ -342,6 +351,10 @@ public class FindPinkRectangleFilter implements MatFilter {
 				_Finder.setImageSize(wImg, hImg);
 				if (_Finder.computeSolution(p)) {
 					good = p;
+					_Solved = true;
+					_Best = p;
+				} else if (_Best == null) {
+					_Best = p;
 				}
 				if (_Debug) {
 					System.out.println(_Finder);
@@ -405,9 +418,11 @@ public class FindPinkRectangleFilter implements MatFilter {
 	 * Returns true if the pixels within a region of the polygon's bounding box
 	 * are all black.
 	 * 
-	 * @param binary
-	 *            The full binary image (values of 0 or 255 for each pixel) the
-	 *            polygon comes from.
+	 * <p>
+	 * The check is answered from the integral of the binary image computed
+	 * once per frame, so it costs the same no matter how large the polygon is.
+	 * </p>
+	 * 
 	 * @param poly
 	 *            The polygon to check.
 	 * @return true if hole checking has been disabled, or we find a hole within
@@ -415,7 +430,7 @@ public class FindPinkRectangleFilter implements MatFilter {
 	 *         region (accept polygon), false if hole checking is enabled but we
 	 *         did not find the expected hole (reject polygon).
 	 */
-	private boolean holeCheck(Mat binary, PolygonCv poly) {
+	private boolean holeCheck(PolygonCv poly) {
 		if (_HoleCheckEnabled != true) {
 			// Just indicate things are OK if hole check has not been enabled.
 			return true;
@@ -431,29 +446,19 @@ public class FindPinkRectangleFilter implements MatFilter {
 		int begCol = (int) (poly.getMinX() + (_HoleLeft * w));
 		int endCol = (int) (poly.getMaxX() - (_HoleRight * w));
 
-		// NOTE: We want to grab the pixels from a "clean" binary image
-		// (state of binary image before looking for contours/polygons
-		// as they corrupt the data during processing)
-		Mat bboxPixels = binary.submat(begRow, endRow, begCol, endCol);
-
-		// Compute total number of white pixels possible
-		int hBbox = bboxPixels.rows();
-		int wBbox = bboxPixels.cols();
-		double totalPixels = wBbox * hBbox;
-
 		// See how many white pixels we actually have
-		Scalar sum = Core.sumElems(bboxPixels);
 		// White pixels have value of 255 in binary images (0xff)
 		// Black pixels have a value of 0 (0x00)
-		double whitePixels = sum.val[0] / 255;
-		int percentWhite = (int) Math.round(100 * whitePixels / totalPixels);
+		double whitePixels = _HoleIntegral.countWhite(begRow, endRow, begCol,
+				endCol);
 
-		// Sanity check that all values are 0 or 1
-		boolean allInRange = Core.checkRange(bboxPixels, true, 0, 2);
 		if (_Debug) {
-			System.out.println("Cutout Check: (" + wBbox + "x" + hBbox
-					+ ")  total: " + totalPixels + "  white: " + whitePixels
-					+ " (" + percentWhite + "%)  binary: " + allInRange);
+			double totalPixels = _HoleIntegral.area(begRow, endRow, begCol,
+					endCol);
+			int percentWhite = (int) Math.round(100 * whitePixels / totalPixels);
+			System.out.println("Cutout Check: (" + (endCol - begCol) + "x"
+					+ (endRow - begRow) + ")  total: " + totalPixels
+					+ "  white: " + whitePixels + " (" + percentWhite + "%)");
 		}
 
 		// Found hole if none of the black/white pixels were white.
@@ -519,4 +524,33 @@ public class FindPinkRectangleFilter implements MatFilter {
 	public boolean wasFound() {
 		return _Found;
 	}
+
+	/**
+	 * Returns the rectangle found in the last image that was processed (the
+	 * widest one, preferring the one a solution was computed for).
+	 * 
+	 * @return Polygon outlining the rectangle (image coordinates) or null if
+	 *         the rectangle was not found.
+	 */
+	public PolygonCv getBestTarget() {
+		return _Best;
+	}
+
+	/**
+	 * Copies the real world location of the rectangle found in the last image
+	 * that was processed.
+	 * 
+	 * @param dest
+	 *            Where to store the solution (only hasSolution is set if no
+	 *            solution was found).
+	 * @return true if a solution was found.
+	 */
+	public boolean getSolution(TargetPose dest) {
+		if (_Solved) {
+			_Finder.getSolution(dest);
+		} else {
+			dest.hasSolution = false;
+		}
+		return dest.hasSolution;
+	}
 }
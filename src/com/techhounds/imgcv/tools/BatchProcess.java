@@ -0,0 +1,638 @@
+package com.techhounds.imgcv.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+import org.opencv.highgui.VideoCapture;
+
+import com.techhounds.imgcv.Configuration;
+import com.techhounds.imgcv.FrameTrace;
+import com.techhounds.imgcv.FrameTraceStats;
+import com.techhounds.imgcv.PolygonCv;
+import com.techhounds.imgcv.filters.MatFilter;
+import com.techhounds.imgcv.frc2016.Filter;
+import com.techhounds.imgcv.frc2016.MemoryTargetSink;
+import com.techhounds.imgcv.frc2016.TargetReport;
+import com.techhounds.imgcv.pinksquare.FindPinkRectangleFilter;
+import com.techhounds.imgcv.utils.TargetPose;
+
+/**
+ * Command line tool which runs a filter over a directory of images (or a
+ * recorded video) without a GUI, using all of the CPU cores, and writes what
+ * was detected in each frame.
+ *
+ * <pre>
+ * BatchProcess [--threads N] [--json] [--out FILE] FILTER INPUT
+ * </pre>
+ *
+ * <ul>
+ * <li>FILTER names the filter to create (see {@link #createFilter(String)}),
+ * like "TargetFilter(2)" or
+ * "FindPinkRectangleFilter.createFor2016Target()".</li>
+ * <li>INPUT is a directory of .png/.jpg images (like the ones saved by
+ * {@link com.techhounds.imgcv.FrameGrabber#enableSave(File, int, int)}), a
+ * single image or a video file.</li>
+ * <li>--threads sets the number of worker threads (default is number of
+ * cores). Each worker has its own filter instance.</li>
+ * <li>--json writes a JSON array instead of CSV.</li>
+ * <li>--out writes the results to a file instead of standard output.</li>
+ * </ul>
+ *
+ * <p>
+ * One line (or object) is written per frame, in input order, with the decode
+ * and filter times and what was found: the target report for the 2016
+ * {@link Filter} classes, the found flag, rectangle (as the only target, with
+ * no score) and solution (camera angle and distance as the off center degrees
+ * and distance to target) for {@link FindPinkRectangleFilter}. A throughput
+ * summary and a table of stage
+ * times (see {@link FrameTraceStats}) is written to standard error when done.
+ * </p>
+ */
+public final class BatchProcess {
+
+	/** Packages searched when a filter name is not fully qualified. */
+	private static final String[] PACKAGES = { "com.techhounds.imgcv.filters", "com.techhounds.imgcv.frc2016",
+			"com.techhounds.imgcv.pinksquare", "com.techhounds.imgcv.frc2015", "com.techhounds.imgcv.frc2014",
+			"com.techhounds.imgcv.frc2013", "com.techhounds.imgcv" };
+
+	/** Number of ranked targets written per frame. */
+	private static final int TOP_TARGETS = 3;
+
+	/** What happened to a single frame. */
+	private static final class Result {
+		int _Index;
+		String _Name;
+		int _Worker;
+		int _Width;
+		int _Height;
+		long _DecodeNanos;
+		long _ProcessNanos;
+		/** null if filter doesn't say. */
+		Boolean _Found;
+		/** Report published by 2016 filters (null for other filters). */
+		TargetReport _Report;
+		/** Rectangle found by {@link FindPinkRectangleFilter} (null if none). */
+		PolygonCv _Best;
+		/** Solution for rectangle found by {@link FindPinkRectangleFilter} (null if none). */
+		TargetPose _Pose;
+		String _Error;
+	}
+
+	private final String _FilterSpec;
+	private final int _Threads;
+	private final File[] _Files;
+	private final VideoCapture _Video;
+	private final AtomicInteger _Next = new AtomicInteger();
+	private int _VideoFrame = 0;
+	private final List<Result> _Results = Collections.synchronizedList(new ArrayList<Result>());
+	private final FrameTraceStats _Stats = new FrameTraceStats();
+
+	/**
+	 * Constructs a new batch run.
+	 *
+	 * @param filterSpec
+	 *            Name of filter to create for each worker (see
+	 *            {@link #createFilter(String)}).
+	 * @param input
+	 *            Directory of images, single image or video file.
+	 * @param threads
+	 *            Number of worker threads.
+	 * @throws IOException
+	 *             If the input can't be read.
+	 */
+	public BatchProcess(String filterSpec, File input, int threads) throws IOException {
+		_FilterSpec = filterSpec;
+		_Threads = Math.max(1, threads);
+		if (input.isDirectory()) {
+			_Files = listImages(input);
+			_Video = null;
+		} else if (isImage(input.getName())) {
+			_Files = new File[] { input };
+			_Video = null;
+		} else {
+			_Files = null;
+			_Video = new VideoCapture(input.getPath());
+			if (!_Video.isOpened()) {
+				throw new IOException("Unable to open video: " + input);
+			}
+		}
+		// Fail now (on the main thread) if the filter can't be created
+		createFilter(filterSpec);
+	}
+
+	/**
+	 * Processes all of the frames.
+	 *
+	 * @return Results of each frame (in input order).
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the workers.
+	 */
+	List<Result> run() throws InterruptedException {
+		Thread[] workers = new Thread[_Threads];
+		for (int i = 0; i < _Threads; i++) {
+			final int worker = i;
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(worker);
+				}
+			}, "BatchWorker-" + i);
+			workers[i].start();
+		}
+		for (Thread t : workers) {
+			t.join();
+		}
+		List<Result> results = new ArrayList<Result>(_Results);
+		Collections.sort(results, new Comparator<Result>() {
+			@Override
+			public int compare(Result a, Result b) {
+				return (a._Index < b._Index) ? -1 : ((a._Index == b._Index) ? 0 : 1);
+			}
+		});
+		return results;
+	}
+
+	/** @return Stage times of all frames processed. */
+	public FrameTraceStats getStats() {
+		return _Stats;
+	}
+
+	/**
+	 * Body of each worker thread, pulls the next frame, decodes it and runs
+	 * it through the worker's own filter.
+	 */
+	private void work(int worker) {
+		MatFilter filter;
+		try {
+			filter = createFilter(_FilterSpec);
+		} catch (IllegalArgumentException e) {
+			return; // already checked by constructor
+		}
+		MemoryTargetSink sink = null;
+		if (filter instanceof Filter) {
+			sink = new MemoryTargetSink(1);
+			((Filter) filter).setTargetSink(sink);
+		}
+		FrameTrace trace = new FrameTrace();
+		Mat img = new Mat();
+
+		while (true) {
+			Result r = new Result();
+			r._Worker = worker;
+			long start = System.nanoTime();
+			if (_Files != null) {
+				r._Index = _Next.getAndIncrement();
+				if (r._Index >= _Files.length) {
+					break;
+				}
+				r._Name = _Files[r._Index].getName();
+				img = Highgui.imread(_Files[r._Index].getPath());
+			} else {
+				// Videos can only be decoded in order
+				synchronized (_Video) {
+					if (!_Video.read(img)) {
+						break;
+					}
+					r._Index = _VideoFrame++;
+				}
+				r._Name = "frame-" + r._Index;
+			}
+			trace.reset(r._Index, start);
+			trace.mark(FrameTrace.RETRIEVE);
+			r._DecodeNanos = trace.getMark(FrameTrace.RETRIEVE) - start;
+			_Results.add(r);
+			if (img.empty()) {
+				r._Error = "Unable to decode image";
+				continue;
+			}
+			r._Width = img.cols();
+			r._Height = img.rows();
+
+			if (sink != null) {
+				sink.clear();
+			}
+			FrameTrace.setCurrent(trace);
+			long procStart = System.nanoTime();
+			try {
+				filter.process(img);
+			} catch (RuntimeException e) {
+				r._Error = e.toString();
+			}
+			r._ProcessNanos = System.nanoTime() - procStart;
+			FrameTrace.setCurrent(null);
+			if (!trace.isMarked(FrameTrace.PUBLISH)) {
+				trace.mark(FrameTrace.PUBLISH, procStart + r._ProcessNanos);
+			}
+			_Stats.record(trace);
+
+			if (sink != null) {
+				r._Report = sink.getLast();
+				r._Found = (r._Report != null) && r._Report.isValid();
+			} else if (filter instanceof FindPinkRectangleFilter) {
+				FindPinkRectangleFilter pink = (FindPinkRectangleFilter) filter;
+				r._Found = pink.wasFound();
+				r._Best = pink.getBestTarget();
+				TargetPose pose = new TargetPose();
+				if (pink.getSolution(pose)) {
+					r._Pose = pose;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a filter from a name and optional arguments.
+	 *
+	 * <p>
+	 * Supported forms are "ClassName", "ClassName(ARGS)" (constructor) and
+	 * "ClassName.method(ARGS)" (static factory method) where ARGS is a comma
+	 * separated list of numbers, true/false or strings. Class names that are
+	 * not fully qualified are looked up in the filters and season packages.
+	 * </p>
+	 *
+	 * @param spec
+	 *            Filter to create, like "TargetFilter(2)",
+	 *            "FindPinkRectangleFilter.createFor2016Target()" or
+	 *            "GrayScale".
+	 * @return New filter instance.
+	 * @throws IllegalArgumentException
+	 *             If unable to create the filter.
+	 */
+	public static MatFilter createFilter(String spec) {
+		String name = spec.trim();
+		String[] args = new String[0];
+		int paren = name.indexOf('(');
+		if (paren >= 0) {
+			if (!name.endsWith(")")) {
+				throw new IllegalArgumentException("Missing ')' in filter: " + spec);
+			}
+			String argStr = name.substring(paren + 1, name.length() - 1).trim();
+			args = argStr.isEmpty() ? args : argStr.split("\\s*,\\s*");
+			name = name.substring(0, paren).trim();
+		}
+
+		try {
+			Class<?> cls = findClass(name);
+			if (cls != null) {
+				for (Constructor<?> c : cls.getConstructors()) {
+					Object[] vals = convert(c.getParameterTypes(), args);
+					if (vals != null) {
+						return toFilter(c.newInstance(vals), spec);
+					}
+				}
+				throw new IllegalArgumentException("No matching constructor for filter: " + spec);
+			}
+
+			int dot = name.lastIndexOf('.');
+			cls = (dot > 0) ? findClass(name.substring(0, dot)) : null;
+			if (cls == null) {
+				throw new IllegalArgumentException("Unknown filter: " + spec);
+			}
+			String methodName = name.substring(dot + 1);
+			for (Method m : cls.getMethods()) {
+				if (m.getName().equals(methodName) && Modifier.isStatic(m.getModifiers())) {
+					Object[] vals = convert(m.getParameterTypes(), args);
+					if (vals != null) {
+						return toFilter(m.invoke(null, vals), spec);
+					}
+				}
+			}
+			throw new IllegalArgumentException("No matching static method for filter: " + spec);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unable to create filter: " + spec + " (" + e + ")", e);
+		}
+	}
+
+	/** Finds a class by full or short name (null if not found). */
+	private static Class<?> findClass(String name) {
+		List<String> names = new ArrayList<String>();
+		names.add(name);
+		for (String pkg : PACKAGES) {
+			names.add(pkg + "." + name);
+		}
+		for (String n : names) {
+			try {
+				return Class.forName(n);
+			} catch (ClassNotFoundException e) {
+				// try next package
+			}
+		}
+		return null;
+	}
+
+	/** Converts arguments to parameter types, returns null if they don't fit. */
+	private static Object[] convert(Class<?>[] types, String[] args) {
+		if (types.length != args.length) {
+			return null;
+		}
+		Object[] vals = new Object[args.length];
+		try {
+			for (int i = 0; i < args.length; i++) {
+				Class<?> t = types[i];
+				String a = args[i];
+				if (t == int.class || t == Integer.class) {
+					vals[i] = Integer.valueOf(a);
+				} else if (t == long.class || t == Long.class) {
+					vals[i] = Long.valueOf(a);
+				} else if (t == double.class || t == Double.class) {
+					vals[i] = Double.valueOf(a);
+				} else if (t == float.class || t == Float.class) {
+					vals[i] = Float.valueOf(a);
+				} else if (t == boolean.class || t == Boolean.class) {
+					if (!a.equals("true") && !a.equals("false")) {
+						return null;
+					}
+					vals[i] = Boolean.valueOf(a);
+				} else if (t == String.class) {
+					vals[i] = a.replaceAll("^\"|\"$", "");
+				} else {
+					return null;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return vals;
+	}
+
+	/** Makes sure object created is a filter. */
+	private static MatFilter toFilter(Object o, String spec) {
+		if (!(o instanceof MatFilter)) {
+			throw new IllegalArgumentException("Not a MatFilter: " + spec);
+		}
+		return (MatFilter) o;
+	}
+
+	/** Returns the images in a directory (sorted by name). */
+	static File[] listImages(File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to read image directory: " + dir);
+		}
+		List<File> images = new ArrayList<File>();
+		for (File f : files) {
+			if (f.isFile() && isImage(f.getName())) {
+				images.add(f);
+			}
+		}
+		File[] sorted = images.toArray(new File[images.size()]);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	static boolean isImage(String name) {
+		String lower = name.toLowerCase();
+		return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg");
+	}
+
+	/**
+	 * Writes the results as CSV (one line per frame, empty columns for values
+	 * that are not available).
+	 */
+	private static void writeCsv(List<Result> results, Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder("Index,File,Worker,Width,Height,DecodeMs,ProcessMs,Found,"
+				+ "OffCenterDegreesX,DistanceToBase,DistanceToTarget,TargetCount");
+		for (int i = 0; i < TOP_TARGETS; i++) {
+			sb.append(",Target").append(i).append("Score,Target").append(i).append("CenterX,Target").append(i)
+					.append("CenterY,Target").append(i).append("Width,Target").append(i).append("Height");
+		}
+		sb.append(",Error\n");
+		out.write(sb.toString());
+
+		for (Result r : results) {
+			sb.setLength(0);
+			sb.append(r._Index).append(',').append(quoteCsv(r._Name)).append(',').append(r._Worker).append(',');
+			sb.append(r._Width).append(',').append(r._Height).append(',');
+			sb.append(String.format("%.3f,%.3f,", r._DecodeNanos / 1e6, r._ProcessNanos / 1e6));
+			if (r._Found != null) {
+				sb.append(r._Found ? 1 : 0);
+			}
+			sb.append(',');
+			TargetReport rep = r._Report;
+			boolean valid = (rep != null) && rep.isValid();
+			if (valid && rep.isAngleValid()) {
+				sb.append(rep.getOffCenterDegreesX());
+			} else if (r._Pose != null) {
+				sb.append(r._Pose.rotateCamera);
+			}
+			sb.append(',');
+			if (valid) {
+				sb.append(rep.getDistanceToBase()).append(',').append(rep.getDistanceToTarget());
+			} else if (r._Pose != null) {
+				sb.append(',').append(r._Pose.cameraDist);
+			} else {
+				sb.append(',');
+			}
+			sb.append(',');
+			int n = (rep != null) ? rep.getTopTargetCount() : 0;
+			if (rep != null) {
+				sb.append(n);
+			} else if (r._Best != null) {
+				sb.append(1);
+			}
+			for (int i = 0; i < TOP_TARGETS; i++) {
+				if ((i == 0) && (r._Best != null)) {
+					PolygonCv p = r._Best;
+					sb.append(",,").append(p.getCenterX()).append(',').append(p.getCenterY()).append(',')
+							.append(p.getWidth()).append(',').append(p.getHeight());
+				} else if (i < n) {
+					sb.append(',').append(rep.getTopTargetScore(i)).append(',').append(rep.getTopTargetCenterX(i))
+							.append(',').append(rep.getTopTargetCenterY(i)).append(',')
+							.append(rep.getTopTargetWidth(i)).append(',').append(rep.getTopTargetHeight(i));
+				} else {
+					sb.append(",,,,,");
+				}
+			}
+			sb.append(',');
+			if (r._Error != null) {
+				sb.append(quoteCsv(r._Error));
+			}
+			sb.append('\n');
+			out.write(sb.toString());
+		}
+	}
+
+	/** Quotes a CSV value if it contains a comma, quote or line break. */
+	static String quoteCsv(String s) {
+		boolean quote = (s.indexOf(',') >= 0) || (s.indexOf('"') >= 0) || (s.indexOf('\n') >= 0)
+				|| (s.indexOf('\r') >= 0);
+		return quote ? "\"" + s.replace("\"", "\"\"") + "\"" : s;
+	}
+
+	/**
+	 * Escapes a string for use inside a JSON string value (quote, backslash
+	 * and control characters).
+	 */
+	private static String escapeJson(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 8);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Writes the results as a JSON array (one object per frame). */
+	private static void writeJson(List<Result> results, Writer out) throws IOException {
+		out.write("[\n");
+		StringBuilder sb = new StringBuilder();
+		for (int j = 0; j < results.size(); j++) {
+			Result r = results.get(j);
+			sb.setLength(0);
+			sb.append("  { \"index\":").append(r._Index).append(", \"file\":\"").append(escapeJson(r._Name))
+					.append("\", \"worker\":").append(r._Worker).append(", \"width\":").append(r._Width)
+					.append(", \"height\":").append(r._Height);
+			sb.append(String.format(", \"decodeMs\":%.3f, \"processMs\":%.3f", r._DecodeNanos / 1e6,
+					r._ProcessNanos / 1e6));
+			if (r._Found != null) {
+				sb.append(", \"found\":").append(r._Found);
+			}
+			TargetReport rep = r._Report;
+			if ((rep != null) && rep.isValid()) {
+				if (rep.isAngleValid()) {
+					sb.append(", \"offCenterDegreesX\":").append(rep.getOffCenterDegreesX());
+				}
+				sb.append(", \"distanceToBase\":").append(rep.getDistanceToBase());
+				sb.append(", \"distanceToTarget\":").append(rep.getDistanceToTarget());
+			} else if (r._Pose != null) {
+				sb.append(", \"offCenterDegreesX\":").append(r._Pose.rotateCamera);
+				sb.append(", \"distanceToTarget\":").append(r._Pose.cameraDist);
+			}
+			if (rep != null) {
+				sb.append(", \"targets\":[");
+				int n = Math.min(TOP_TARGETS, rep.getTopTargetCount());
+				for (int i = 0; i < n; i++) {
+					sb.append((i > 0) ? ", " : "").append("{ \"score\":").append(rep.getTopTargetScore(i))
+							.append(", \"centerX\":").append(rep.getTopTargetCenterX(i)).append(", \"centerY\":")
+							.append(rep.getTopTargetCenterY(i)).append(", \"width\":")
+							.append(rep.getTopTargetWidth(i)).append(", \"height\":")
+							.append(rep.getTopTargetHeight(i)).append(" }");
+				}
+				sb.append(']');
+			} else if (r._Best != null) {
+				PolygonCv p = r._Best;
+				sb.append(", \"targets\":[{ \"centerX\":").append(p.getCenterX()).append(", \"centerY\":")
+						.append(p.getCenterY()).append(", \"width\":").append(p.getWidth()).append(", \"height\":")
+						.append(p.getHeight()).append(" }]");
+			}
+			if (r._Error != null) {
+				sb.append(", \"error\":\"").append(escapeJson(r._Error)).append('"');
+			}
+			sb.append((j + 1 < results.size()) ? " },\n" : " }\n");
+			out.write(sb.toString());
+		}
+		out.write("]\n");
+	}
+
+	/**
+	 * Runs the batch (see class description for arguments).
+	 *
+	 * @param args
+	 *            Command line arguments.
+	 * @throws Exception
+	 *             If unable to read the input or write the results.
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean json = false;
+		File outFile = null;
+		List<String> rest = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--threads") && (i + 1 < args.length)) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--json")) {
+				json = true;
+			} else if (args[i].equals("--out") && (i + 1 < args.length)) {
+				outFile = new File(args[++i]);
+			} else {
+				rest.add(args[i]);
+			}
+		}
+		if (rest.size() != 2) {
+			System.err.println("Usage: BatchProcess [--threads N] [--json] [--out FILE] FILTER INPUT");
+			System.err.println("  Example: BatchProcess \"TargetFilter(2)\" res");
+			System.exit(1);
+		}
+		Configuration config = new Configuration();
+		config.loadOpenCvLibrary();
+
+		BatchProcess batch;
+		try {
+			batch = new BatchProcess(rest.get(0), new File(rest.get(1)), threads);
+		} catch (IllegalArgumentException | IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		long start = System.nanoTime();
+		List<Result> results = batch.run();
+		long wallNanos = System.nanoTime() - start;
+
+		Writer out = (outFile != null) ? new BufferedWriter(new FileWriter(outFile))
+				: new BufferedWriter(new OutputStreamWriter(System.out));
+		if (json) {
+			writeJson(results, out);
+		} else {
+			writeCsv(results, out);
+		}
+		out.flush();
+		if (outFile != null) {
+			out.close();
+		}
+
+		int errors = 0;
+		int found = 0;
+		long decodeNanos = 0;
+		long processNanos = 0;
+		for (Result r : results) {
+			errors += (r._Error != null) ? 1 : 0;
+			found += Boolean.TRUE.equals(r._Found) ? 1 : 0;
+			decodeNanos += r._DecodeNanos;
+			processNanos += r._ProcessNanos;
+		}
+		int n = Math.max(1, results.size());
+		System.err.println(String.format("Frames: %d  found: %d  errors: %d  threads: %d", results.size(), found,
+				errors, batch._Threads));
+		System.err.println(String.format("Wall: %.3f s  throughput: %.1f frames/s  decode: %.3f ms  filter: %.3f ms"
+				+ " (average per frame)", wallNanos / 1e9, results.size() * 1e9 / Math.max(1, wallNanos),
+				decodeNanos / 1e6 / n, processNanos / 1e6 / n));
+		System.err.print(batch.getStats());
+	}
+}
@@ -0,0 +1,600 @@
+package com.techhounds.imgcv.tools;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.opencv.highgui.Highgui;
+import org.opencv.imgproc.Imgproc;
+
+import com.techhounds.imgcv.Configuration;
+import com.techhounds.imgcv.PolygonCv;
+import com.techhounds.imgcv.filters.BitwiseOr;
+import com.techhounds.imgcv.filters.BlackWhite;
+import com.techhounds.imgcv.filters.Blur;
+import com.techhounds.imgcv.filters.CameraUntilt;
+import com.techhounds.imgcv.filters.ColorRange;
+import com.techhounds.imgcv.filters.ColorSpace;
+import com.techhounds.imgcv.filters.Contours;
+import com.techhounds.imgcv.filters.ContrastBrightness;
+import com.techhounds.imgcv.filters.Crop;
+import com.techhounds.imgcv.filters.CrossHair;
+import com.techhounds.imgcv.filters.Dilate;
+import com.techhounds.imgcv.filters.DoNothingFilter;
+import com.techhounds.imgcv.filters.Erode;
+import com.techhounds.imgcv.filters.FillChannel;
+import com.techhounds.imgcv.filters.FovOverlay;
+import com.techhounds.imgcv.filters.GrayScale;
+import com.techhounds.imgcv.filters.LutFilter;
+import com.techhounds.imgcv.filters.MatFilter;
+import com.techhounds.imgcv.filters.Morphology;
+import com.techhounds.imgcv.filters.Negative;
+import com.techhounds.imgcv.filters.Sequence;
+import com.techhounds.imgcv.filters.Undistort;
+import com.techhounds.imgcv.frc2016.TargetFilter;
+import com.techhounds.imgcv.frc2016.TargetFilterConfig;
+import com.techhounds.imgcv.pinksquare.FindPinkRectangleFilter;
+import com.techhounds.imgcv.utils.CameraIntrinsics;
+import com.techhounds.imgcv.utils.FovCalculator;
+import com.techhounds.imgcv.utils.RectangularTarget;
+import com.techhounds.imgcv.utils.TargetPose;
+
+/**
+ * Micro benchmarks of the image processing code, so changes that make things
+ * slower (or allocate more) show up as numbers instead of guesses.
+ *
+ * <pre>
+ * Benchmark [--warmup MS] [--time MS] [--iterations N] [--sizes W,W,...] [--include REGEX] [--csv] [IMAGE_DIR]
+ * </pre>
+ *
+ * <ul>
+ * <li>IMAGE_DIR holds the input images (defaults to res, where the
+ * arena_*.png images are).</li>
+ * <li>--sizes lists the image widths to run at (images are scaled keeping
+ * their aspect ratio), default is 320,640,800.</li>
+ * <li>--warmup is how long each benchmark runs before measuring (default
+ * 500).</li>
+ * <li>--time is how long each measured iteration runs (default 1000) and
+ * --iterations is how many are measured (default 3).</li>
+ * <li>--include only runs benchmarks whose name matches the regular
+ * expression (like "filters\\.Blur" or "Filter\\.").</li>
+ * <li>--csv writes CSV instead of a table.</li>
+ * </ul>
+ *
+ * <p>
+ * What is measured:
+ * </p>
+ * <ul>
+ * <li>filters.* - each class in {@link com.techhounds.imgcv.filters} applied to
+ * the images (converted to what the filter expects, like HSV for
+ * {@link ColorRange}). Every operation starts by copying the input into a
+ * reused image (filters modify their input), Mat.copyTo measures just
+ * that.</li>
+ * <li>Filter.* - the 2016 detection stages (findTargets, findBestTarget and
+ * holeCheck) run on color filtered
+ * masks, and TargetFilter.process for the whole frame. The masks come from the
+ * color filter of {@link FindPinkRectangleFilter#createFor2016Target()} as
+ * the 2016 color range finds nothing in the arena images.</li>
+ * <li>PolygonCv.fromContour - converting all of the contours found in a
+ * mask.</li>
+ * <li>FovCalculator.* and RectangularTarget.computeSolution - the per target
+ * math.</li>
+ * </ul>
+ *
+ * <p>
+ * For each benchmark, the operations per second (average, and the slowest and
+ * fastest iteration), time per operation, bytes allocated per operation and
+ * allocation rate, and the garbage collections that happened while measuring
+ * are reported. NOTE: Allocations are of the Java heap only, the pixel data of
+ * a {@link Mat} is allocated by OpenCV outside of the heap (only the small Mat
+ * object shows up).
+ * </p>
+ */
+public final class Benchmark {
+
+	/** Image widths run at if none are specified. */
+	public static final int[] DEFAULT_WIDTHS = { 320, 640, 800 };
+
+	/** Smallest amount of time to run between clock reads (ns). */
+	private static final long MIN_BATCH_NANOS = 20000;
+
+	/** Something to measure. */
+	private interface Op {
+		/**
+		 * Performs a single operation.
+		 *
+		 * @param i
+		 *            Operation number (used to cycle through the inputs).
+		 * @return Some value computed (kept so the work can't be optimized
+		 *         away).
+		 */
+		long run(int i);
+	}
+
+	/** Exposes the protected 2016 detection stages. */
+	private static final class Stages extends TargetFilter {
+		Stages() {
+			super(2);
+		}
+
+		List<PolygonCv> targets(Mat mask) {
+			return findTargets(mask);
+		}
+
+		PolygonCv best(List<PolygonCv> targets) {
+			return findBestTarget(targets);
+		}
+
+		boolean hole(PolygonCv poly) {
+			return holeCheck(poly);
+		}
+	}
+
+	/** Images (and what was found in them) scaled to a single width. */
+	private static final class Inputs {
+		final int _Width;
+		final List<Mat> _Bgr = new ArrayList<Mat>();
+		final List<Mat> _Hsv = new ArrayList<Mat>();
+		final List<Mat> _Gray = new ArrayList<Mat>();
+		final List<Mat> _Mask = new ArrayList<Mat>();
+		final List<List<MatOfPoint>> _Contours = new ArrayList<List<MatOfPoint>>();
+		final List<List<PolygonCv>> _Candidates = new ArrayList<List<PolygonCv>>();
+		final List<PolygonCv> _Best = new ArrayList<PolygonCv>();
+
+		Inputs(int width) {
+			_Width = width;
+		}
+	}
+
+	private long _WarmupMs = 500;
+	private long _TimeMs = 1000;
+	private int _Iterations = 3;
+	private Pattern _Include;
+	private boolean _Csv;
+
+	/** Where results are written. */
+	private final PrintStream _Out;
+
+	/** Where the values returned by operations end up. */
+	private long _Sink;
+
+	/** Number of benchmarks run. */
+	private int _Count;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Constructs a new instance.
+	 *
+	 * @param out
+	 *            Where to write the results.
+	 */
+	Benchmark(PrintStream out) {
+		_Out = out;
+	}
+
+	/**
+	 * Scales images to a width and finds what the benchmarks need in them.
+	 */
+	private static Inputs loadInputs(List<Mat> images, int width) {
+		Inputs in = new Inputs(width);
+		// The arena images have pink rectangles (nothing the 2016 color
+		// range picks out), so use the pink color filter to get masks that
+		// have targets in them
+		MatFilter maskFilter = FindPinkRectangleFilter.createFor2016Target().createSequence();
+		Stages stages = new Stages();
+		MatFilter toHsv = ColorSpace.createBGRtoHSV();
+		MatFilter toGray = new GrayScale();
+
+		for (Mat img : images) {
+			Mat bgr = img;
+			if (img.cols() != width) {
+				bgr = new Mat();
+				int height = (int) Math.round(img.rows() * (double) width / img.cols());
+				int interp = (width < img.cols()) ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+				Imgproc.resize(img, bgr, new Size(width, height), 0, 0, interp);
+			}
+			in._Bgr.add(bgr);
+			in._Hsv.add(toHsv.process(bgr.clone()));
+			in._Gray.add(toGray.process(bgr.clone()));
+			Mat mask = maskFilter.process(bgr.clone());
+			in._Mask.add(mask);
+
+			List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
+			Imgproc.findContours(mask.clone(), contours, new Mat(), Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+			in._Contours.add(contours);
+
+			List<PolygonCv> candidates = stages.targets(mask.clone());
+			in._Candidates.add(new ArrayList<PolygonCv>(candidates));
+			if (!candidates.isEmpty()) {
+				in._Best.add(stages.best(candidates));
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Runs all of the benchmarks at a single image size.
+	 */
+	private void runAll(final Inputs in) {
+		final int width = in._Width;
+		final int height = in._Bgr.get(0).rows();
+
+		runFilter("Mat.copyTo", new DoNothingFilter(), in._Bgr, width);
+
+		runFilter("filters.BitwiseOr", new BitwiseOr(new Erode(), new Dilate()), in._Mask, width);
+		runFilter("filters.BlackWhite", new BlackWhite(), in._Gray, width);
+		runFilter("filters.Blur", new Blur(), in._Bgr, width);
+		runFilter("filters.CameraUntilt", new CameraUntilt(), in._Bgr, width);
+		runFilter("filters.ColorRange", new ColorRange(TargetFilterConfig.Imgproc.COLOR_MIN, TargetFilterConfig.Imgproc.COLOR_MAX,
+				true), in._Hsv, width);
+		runFilter("filters.ColorSpace", ColorSpace.createBGRtoHSV(), in._Bgr, width);
+		runFilter("filters.Contours", new Contours(), in._Mask, width);
+		runFilter("filters.ContrastBrightness", new ContrastBrightness(1.5, 20), in._Bgr, width);
+		runFilter("filters.Crop", new Crop(0.1, 0.1, 0.9, 0.9), in._Bgr, width);
+		runFilter("filters.CrossHair", new CrossHair(), in._Bgr, width);
+		runFilter("filters.Dilate", new Dilate(), in._Mask, width);
+		runFilter("filters.DoNothingFilter", new DoNothingFilter(), in._Bgr, width);
+		runFilter("filters.Erode", new Erode(), in._Mask, width);
+		runFilter("filters.FillChannel", new FillChannel(0), in._Bgr, width);
+		runFilter("filters.FovOverlay", new FovOverlay(), in._Bgr, width);
+		runFilter("filters.GrayScale", new GrayScale(), in._Bgr, width);
+		runFilter("filters.LutFilter", new LutFilter(createGammaTable(0.5)), in._Bgr, width);
+		runFilter("filters.Morphology", new Morphology(), in._Mask, width);
+		runFilter("filters.Negative", new Negative(), in._Bgr, width);
+		Sequence seq = new Sequence();
+		seq.addFilter(new GrayScale());
+		seq.addFilter(new BlackWhite());
+		runFilter("filters.Sequence", seq, in._Bgr, width);
+		runFilter("filters.Undistort", new Undistort(new CameraIntrinsics(TargetFilterConfig.Camera.FOV_X_DEGREES, width,
+				height)), in._Bgr, width);
+
+		final int images = in._Mask.size();
+		final Stages contourStages = new Stages();
+		run("Filter.findTargets", width, new Op() {
+			private final Mat _Scratch = new Mat();
+
+			@Override
+			public long run(int i) {
+				// findContours modifies the mask
+				in._Mask.get(i % images).copyTo(_Scratch);
+				return contourStages.targets(_Scratch).size();
+			}
+		});
+
+		run("Filter.findBestTarget", width, new Op() {
+			private final List<PolygonCv> _Targets = new ArrayList<PolygonCv>();
+
+			@Override
+			public long run(int i) {
+				// findBestTarget removes the best target from the list
+				// (copied one at a time, addAll would allocate an array)
+				List<PolygonCv> candidates = in._Candidates.get(i % images);
+				_Targets.clear();
+				for (int j = 0; j < candidates.size(); j++) {
+					_Targets.add(candidates.get(j));
+				}
+				PolygonCv best = contourStages.best(_Targets);
+				return (best != null) ? best.size() : 0;
+			}
+		});
+
+		// Hole check all of the polygons in the image with the most of them
+		int most = 0;
+		for (int i = 1; i < images; i++) {
+			if (in._Contours.get(i).size() > in._Contours.get(most).size()) {
+				most = i;
+			}
+		}
+		final Stages holeStages = new Stages();
+		holeStages.targets(in._Mask.get(most).clone());
+		final List<PolygonCv> holePolys = toPolygons(in._Contours.get(most));
+		if (holePolys.isEmpty()) {
+			System.err.println("No contours found at width " + width + ", skipping Filter.holeCheck");
+		} else {
+			run("Filter.holeCheck", width, new Op() {
+				@Override
+				public long run(int i) {
+					return holeStages.hole(holePolys.get(i % holePolys.size())) ? 1 : 0;
+				}
+			});
+		}
+
+		final TargetFilter targetFilter = new TargetFilter(2);
+		run("TargetFilter.process", width, new Op() {
+			private final Mat _Scratch = new Mat();
+
+			@Override
+			public long run(int i) {
+				in._Bgr.get(i % images).copyTo(_Scratch);
+				return targetFilter.process(_Scratch).rows();
+			}
+		});
+
+		run("PolygonCv.fromContour", width, new Op() {
+			@Override
+			public long run(int i) {
+				List<MatOfPoint> contours = in._Contours.get(i % images);
+				long sides = 0;
+				for (int j = 0; j < contours.size(); j++) {
+					sides += PolygonCv.fromContour(contours.get(j), 5.0).size();
+				}
+				return sides;
+			}
+		});
+
+		final FovCalculator fov = new FovCalculator(TargetFilterConfig.Camera.FOV_X_DEGREES, width, 100.0);
+		run("FovCalculator.pixelFromCenterToDeg", width, new Op() {
+			@Override
+			public long run(int i) {
+				return Double.doubleToRawLongBits(fov.pixelFromCenterToDeg((i % width) - (width / 2)));
+			}
+		});
+		run("FovCalculator.degFromCenterToPixel", width, new Op() {
+			@Override
+			public long run(int i) {
+				return Double.doubleToRawLongBits(fov.degFromCenterToPixel((i % 60) - 30));
+			}
+		});
+
+		if (in._Best.isEmpty()) {
+			System.err.println("No targets found at width " + width + ", skipping RectangularTarget.computeSolution");
+			return;
+		}
+		final RectangularTarget finder = new RectangularTarget(TargetFilterConfig.Target.TAPE_WIDTH_INCHES,
+				TargetFilterConfig.Target.TAPE_HEIGHT_INCHES * Math.cos(Math.toRadians(40)), width, height,
+				TargetFilterConfig.Camera.FOV_Y_DEGREES);
+		finder.setVerticalLineTolerance(0.1);
+		final TargetPose pose = new TargetPose();
+		run("RectangularTarget.computeSolution", width, new Op() {
+			@Override
+			public long run(int i) {
+				return finder.computeSolution(in._Best.get(i % in._Best.size()), pose) ? 1 : 0;
+			}
+		});
+	}
+
+	/**
+	 * Measures a filter applied to a copy of each input.
+	 */
+	private void runFilter(String name, final MatFilter filter, final List<Mat> inputs, int width) {
+		run(name, width, new Op() {
+			private final Mat _Scratch = new Mat();
+
+			@Override
+			public long run(int i) {
+				inputs.get(i % inputs.size()).copyTo(_Scratch);
+				return filter.process(_Scratch).rows();
+			}
+		});
+	}
+
+	/**
+	 * Warms up and measures a single benchmark (if it is included) and writes
+	 * the results.
+	 */
+	private void run(String name, int width, Op op) {
+		if ((_Include != null) && !_Include.matcher(name).find()) {
+			return;
+		}
+
+		// Warm up, finding how many operations to run between clock reads
+		int i = 0;
+		int batch = 1;
+		long end = System.nanoTime() + _WarmupMs * 1000000L;
+		long now;
+		do {
+			long start = System.nanoTime();
+			for (int j = 0; j < batch; j++) {
+				_Sink += op.run(i++);
+			}
+			now = System.nanoTime();
+			if ((now - start) < MIN_BATCH_NANOS) {
+				batch *= 2;
+			}
+		} while (now < end);
+
+		double[] rates = new double[_Iterations];
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		long gcCount = gcCount();
+		long gcMillis = gcMillis();
+		for (int k = 0; k < _Iterations; k++) {
+			long n = 0;
+			long bytesStart = allocatedBytes();
+			long start = System.nanoTime();
+			long stop = start + _TimeMs * 1000000L;
+			do {
+				for (int j = 0; j < batch; j++) {
+					_Sink += op.run(i++);
+				}
+				n += batch;
+			} while ((now = System.nanoTime()) < stop);
+			bytes += allocatedBytes() - bytesStart;
+			rates[k] = n * 1e9 / (now - start);
+			ops += n;
+			nanos += now - start;
+		}
+		gcCount = gcCount() - gcCount;
+		gcMillis = gcMillis() - gcMillis;
+
+		Arrays.sort(rates);
+		double opsPerSec = ops * 1e9 / nanos;
+		double bytesPerOp = (double) bytes / ops;
+		double allocRate = bytes / 1e6 / (nanos / 1e9);
+		if (_Csv) {
+			if (_Count == 0) {
+				_Out.println("benchmark,width,ops_per_sec,min_ops_per_sec,max_ops_per_sec,us_per_op,"
+						+ "bytes_per_op,alloc_mb_per_sec,gc_count,gc_ms");
+			}
+			_Out.println(String.format("%s,%d,%.1f,%.1f,%.1f,%.3f,%.1f,%.2f,%d,%d", name, width, opsPerSec,
+					rates[0], rates[rates.length - 1], 1e6 / opsPerSec, bytesPerOp, allocRate, gcCount, gcMillis));
+		} else {
+			if (_Count == 0) {
+				_Out.println(String.format("%-36s %5s %12s %25s %10s %10s %8s %4s %6s", "Benchmark", "Width",
+						"ops/s", "(min - max)", "us/op", "B/op", "MB/s", "GCs", "GC ms"));
+			}
+			_Out.println(String.format("%-36s %5d %12.1f (%10.1f - %10.1f) %10.3f %10.1f %8.2f %4d %6d", name,
+					width, opsPerSec, rates[0], rates[rates.length - 1], 1e6 / opsPerSec, bytesPerOp, allocRate,
+					gcCount, gcMillis));
+		}
+		_Out.flush();
+		_Count++;
+	}
+
+	/**
+	 * Converts contours to polygons.
+	 */
+	private static List<PolygonCv> toPolygons(List<MatOfPoint> contours) {
+		List<PolygonCv> polys = new ArrayList<PolygonCv>(contours.size());
+		for (MatOfPoint contour : contours) {
+			polys.add(PolygonCv.fromContour(contour, 5.0));
+		}
+		return polys;
+	}
+
+	/**
+	 * Creates a look up table for the {@link LutFilter}.
+	 */
+	private static Mat createGammaTable(double gamma) {
+		byte[] table = new byte[256];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (byte) Math.round(255 * Math.pow(i / 255.0, gamma));
+		}
+		Mat lut = new Mat(1, 256, CvType.CV_8UC1);
+		lut.put(0, 0, table);
+		return lut;
+	}
+
+	/**
+	 * @return Bytes allocated on the heap by the calling thread (0 if the JVM
+	 *         can't tell us).
+	 */
+	private static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread()
+					.getId());
+		}
+		return 0;
+	}
+
+	/** @return Total number of garbage collections. */
+	private static long gcCount() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, gc.getCollectionCount());
+		}
+		return total;
+	}
+
+	/** @return Total time spent collecting garbage in milliseconds. */
+	private static long gcMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, gc.getCollectionTime());
+		}
+		return total;
+	}
+
+	/**
+	 * Loads the .png/.jpg images in a directory.
+	 */
+	private static List<Mat> loadImages(File dir) {
+		List<Mat> images = new ArrayList<Mat>();
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return images;
+		}
+		Arrays.sort(files);
+		for (File f : files) {
+			String name = f.getName().toLowerCase();
+			if (name.endsWith(".png") || name.endsWith(".jpg")) {
+				Mat img = Highgui.imread(f.getPath());
+				// Skip diagrams and such that are not camera frames
+				if (!img.empty() && !name.contains(" ")) {
+					images.add(img);
+				}
+			}
+		}
+		return images;
+	}
+
+	/**
+	 * Runs the benchmarks (see class description for arguments).
+	 *
+	 * @param args
+	 *            Command line arguments.
+	 */
+	public static void main(String[] args) {
+		Configuration config = new Configuration();
+		config.loadOpenCvLibrary();
+
+		PrintStream console = System.out;
+		Benchmark bench = new Benchmark(console);
+		int[] widths = DEFAULT_WIDTHS;
+		File dir = new File("res");
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--warmup") && (i + 1 < args.length)) {
+				bench._WarmupMs = Long.parseLong(args[++i]);
+			} else if (arg.equals("--time") && (i + 1 < args.length)) {
+				bench._TimeMs = Long.parseLong(args[++i]);
+			} else if (arg.equals("--iterations") && (i + 1 < args.length)) {
+				bench._Iterations = Math.max(1, Integer.parseInt(args[++i]));
+			} else if (arg.equals("--sizes") && (i + 1 < args.length)) {
+				String[] vals = args[++i].split(",");
+				widths = new int[vals.length];
+				for (int j = 0; j < vals.length; j++) {
+					widths[j] = Integer.parseInt(vals[j].trim());
+				}
+			} else if (arg.equals("--include") && (i + 1 < args.length)) {
+				bench._Include = Pattern.compile(args[++i]);
+			} else if (arg.equals("--csv")) {
+				bench._Csv = true;
+			} else if (arg.startsWith("--")) {
+				System.err.println("Usage: Benchmark [--warmup MS] [--time MS] [--iterations N] [--sizes W,W,...] "
+						+ "[--include REGEX] [--csv] [IMAGE_DIR]");
+				System.exit(1);
+			} else {
+				dir = new File(arg);
+			}
+		}
+
+		List<Mat> images = loadImages(dir);
+		if (images.isEmpty()) {
+			System.err.println("No images found in: " + dir);
+			System.exit(1);
+		}
+
+		// The detection code writes diagnostics to standard output, keep them
+		// out of the results (and timings)
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+
+		for (int width : widths) {
+			System.err.println("Running at width " + width + " (" + images.size() + " images from " + dir + ")");
+			bench.runAll(loadInputs(images, width));
+		}
+		System.setOut(console);
+		if (bench._Sink == 42) {
+			// Never true in practice, keeps results of operations alive
+			System.err.println();
+		}
+	}
+}
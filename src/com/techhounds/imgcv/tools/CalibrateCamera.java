@@ -0,0 +1,154 @@
+package com.techhounds.imgcv.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.MatOfPoint3f;
+import org.opencv.core.Point3;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.highgui.Highgui;
+import org.opencv.imgproc.Imgproc;
+
+import com.techhounds.imgcv.Configuration;
+import com.techhounds.imgcv.utils.CameraIntrinsics;
+
+/**
+ * Command line tool which computes camera intrinsics (focal length, optical
+ * center and lens distortion) from a directory of checkerboard images.
+ *
+ * <p>
+ * Print a checkerboard, tape it to something flat and take 10 to 20 pictures
+ * of it with the camera (at the resolution you will be using) from different
+ * angles and distances - make sure some are near the edges and corners of the
+ * image where distortion is worst. Then run:
+ * </p>
+ *
+ * <pre>
+ * CalibrateCamera IMAGE_DIR [COLS ROWS [SQUARE_SIZE [NAME]]]
+ * </pre>
+ *
+ * <ul>
+ * <li>COLS and ROWS are the number of INSIDE corners (default 9 6).</li>
+ * <li>SQUARE_SIZE is the size of a square in real world units (default 1.0,
+ * only matters if you use the extrinsics).</li>
+ * <li>NAME is the name to save the calibration under (default "default" which
+ * is what the 2016 viewers load at start up).</li>
+ * </ul>
+ *
+ * <p>
+ * The results can then be used by the
+ * {@link com.techhounds.imgcv.filters.Undistort} filter.
+ * </p>
+ */
+public final class CalibrateCamera {
+
+	/**
+	 * Runs calibration.
+	 *
+	 * @param args
+	 *            Command line arguments (see class description).
+	 * @throws IOException
+	 *             If unable to save results.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: CalibrateCamera IMAGE_DIR [COLS ROWS [SQUARE_SIZE [NAME]]]");
+			System.exit(1);
+		}
+		Configuration config = new Configuration();
+		config.loadOpenCvLibrary();
+
+		File dir = new File(args[0]);
+		int cols = (args.length > 2) ? Integer.parseInt(args[1]) : 9;
+		int rows = (args.length > 2) ? Integer.parseInt(args[2]) : 6;
+		double squareSize = (args.length > 3) ? Double.parseDouble(args[3]) : 1.0;
+		String name = (args.length > 4) ? args[4] : "default";
+
+		Size boardSize = new Size(cols, rows);
+		MatOfPoint3f board = createBoard(cols, rows, squareSize);
+
+		List<Mat> objectPoints = new ArrayList<Mat>();
+		List<Mat> imagePoints = new ArrayList<Mat>();
+		Size imageSize = null;
+		Mat gray = new Mat();
+		TermCriteria subPixCriteria = new TermCriteria(TermCriteria.EPS + TermCriteria.MAX_ITER, 30, 0.001);
+		int flags = Calib3d.CALIB_CB_ADAPTIVE_THRESH | Calib3d.CALIB_CB_NORMALIZE_IMAGE;
+
+		File[] files = dir.listFiles();
+		if (files == null) {
+			System.err.println("Unable to read directory: " + dir);
+			System.exit(1);
+		}
+		Arrays.sort(files);
+		for (File f : files) {
+			String fname = f.getName().toLowerCase();
+			if (!(fname.endsWith(".png") || fname.endsWith(".jpg") || fname.endsWith(".jpeg"))) {
+				continue;
+			}
+			Mat img = Highgui.imread(f.getPath());
+			if (img.empty()) {
+				System.out.println("SKIP " + f + " (unable to load)");
+				continue;
+			}
+			if (imageSize == null) {
+				imageSize = img.size();
+			} else if (!imageSize.equals(img.size())) {
+				System.out.println("SKIP " + f + " (size " + img.size() + " does not match " + imageSize + ")");
+				continue;
+			}
+
+			Imgproc.cvtColor(img, gray, Imgproc.COLOR_BGR2GRAY);
+			MatOfPoint2f corners = new MatOfPoint2f();
+			if (!Calib3d.findChessboardCorners(gray, boardSize, corners, flags)) {
+				System.out.println("SKIP " + f + " (checkerboard not found)");
+				continue;
+			}
+			Imgproc.cornerSubPix(gray, corners, new Size(5, 5), new Size(-1, -1), subPixCriteria);
+			imagePoints.add(corners);
+			objectPoints.add(board);
+			System.out.println("OK   " + f);
+		}
+
+		if (imagePoints.size() < 3) {
+			System.err.println("Found checkerboard in " + imagePoints.size()
+					+ " images, need at least 3 (10 or more recommended)");
+			System.exit(1);
+		}
+
+		Mat cameraMatrix = new Mat();
+		Mat distCoeffs = new Mat();
+		List<Mat> rvecs = new ArrayList<Mat>();
+		List<Mat> tvecs = new ArrayList<Mat>();
+		double rms = Calib3d.calibrateCamera(objectPoints, imagePoints, imageSize, cameraMatrix, distCoeffs,
+				rvecs, tvecs);
+
+		CameraIntrinsics intrinsics = new CameraIntrinsics(cameraMatrix, distCoeffs, (int) imageSize.width,
+				(int) imageSize.height, rms);
+		System.out.println("Calibrated from " + imagePoints.size() + " images: " + intrinsics);
+
+		File out = CameraIntrinsics.getFile(name);
+		intrinsics.saveSettings(out);
+		System.out.println("Saved calibration to " + out);
+	}
+
+	/**
+	 * Builds the real world coordinates of the inside corners of the
+	 * checkerboard (all on the z = 0 plane).
+	 */
+	private static MatOfPoint3f createBoard(int cols, int rows, double squareSize) {
+		Point3[] pts = new Point3[cols * rows];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				pts[r * cols + c] = new Point3(c * squareSize, r * squareSize, 0);
+			}
+		}
+		return new MatOfPoint3f(pts);
+	}
+}
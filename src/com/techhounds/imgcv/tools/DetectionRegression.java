@@ -0,0 +1,586 @@
+package com.techhounds.imgcv.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+import org.opencv.highgui.VideoCapture;
+
+import com.techhounds.imgcv.Configuration;
+import com.techhounds.imgcv.PolygonCv;
+import com.techhounds.imgcv.filters.MatFilter;
+import com.techhounds.imgcv.frc2016.Filter;
+import com.techhounds.imgcv.frc2016.MemoryTargetSink;
+import com.techhounds.imgcv.frc2016.TargetFilter;
+import com.techhounds.imgcv.frc2016.TargetReport;
+import com.techhounds.imgcv.pinksquare.FindPinkRectangleFilter;
+import com.techhounds.imgcv.utils.LatencyHistogram;
+import com.techhounds.imgcv.utils.TargetPose;
+
+/**
+ * Runs the target detection filters over a set of images (and recorded
+ * sessions) and checks that they still find the same thing and are still fast
+ * enough, so changes made to speed things up can be shown not to change the
+ * answers or slow things down.
+ *
+ * <pre>
+ * DetectionRegression [--record] [--golden FILE] [--filter SPEC]... [--repeat N] [--budget [SPEC=]MS]...
+ *                     [--color-config FILE] [--tolerance-px PX] [--tolerance-deg DEG] [--tolerance-dist RATIO]
+ *                     [INPUT]...
+ * </pre>
+ *
+ * <ul>
+ * <li>INPUT is a directory of images (like a session recorded with
+ * {@link com.techhounds.imgcv.FrameGrabber#enableSave(File, int, int)}), a
+ * single image or a video. The res/arena_*.png images are used if no inputs
+ * are given.</li>
+ * <li>--filter names a filter to check (see
+ * {@link BatchProcess#createFilter(String)}), default is "TargetFilter(2)" and
+ * "FindPinkRectangleFilter.createFor2016Target()".</li>
+ * <li>--golden is the file of expected detections (default
+ * res/golden-detections.csv).</li>
+ * <li>--record writes what was found to the golden file (replacing the
+ * entries of the filters and inputs that were run) instead of checking. Do
+ * this when a change is SUPPOSED to change what is found and check the
+ * differences in.</li>
+ * <li>--repeat is how many timed passes are made over the inputs (default 3).
+ * A pass to warm up (and collect the detections) is always made first.</li>
+ * <li>--budget is the longest the 95th percentile of the per frame times may
+ * be in milliseconds (default 33, one frame at 30 FPS), either for all filters
+ * or one of them (like "TargetFilter(2)=20").</li>
+ * <li>--color-config is a color range file (see
+ * {@link TargetFilter#setColorRangeConfig(File)}) loaded into the
+ * {@link TargetFilter} before it is run. The targets in the res/arena_*.png
+ * images are pink, not the green of the 2016 reflective tape, so
+ * res/arena-color-range.txt is used when no inputs are given (otherwise the
+ * filter would never find anything in them and only its times would be
+ * checked).</li>
+ * <li>--tolerance-px, --tolerance-deg and --tolerance-dist set how far target
+ * positions and sizes (pixels, default 2), angles (degrees, default 0.5) and
+ * distances (ratio of expected, default 0.02) may be from the expected
+ * values.</li>
+ * </ul>
+ *
+ * <p>
+ * What is compared depends on the filter: whether a target was found, the best
+ * target's center and size, angle and distance from the report of the 2016
+ * {@link Filter} classes. Whether the rectangle was found, its center and size
+ * and the angle and distance of its solution for
+ * {@link FindPinkRectangleFilter}. Just the times for other filters. Exits
+ * with a status of 1 if any detection doesn't match or a budget is exceeded.
+ * </p>
+ */
+public final class DetectionRegression {
+
+	/** Filters checked if none are specified. */
+	public static final String[] DEFAULT_FILTERS = { "TargetFilter(2)",
+			"FindPinkRectangleFilter.createFor2016Target()" };
+
+	/** Expected detections file used if none is specified. */
+	public static final String DEFAULT_GOLDEN = "res/golden-detections.csv";
+
+	/** Color range loaded into the {@link TargetFilter} for the res/arena_*.png images. */
+	public static final String ARENA_COLOR_CONFIG = "res/arena-color-range.txt";
+
+	/** Default 95th percentile frame time budget (ms). */
+	public static final double DEFAULT_BUDGET_MS = 33;
+
+	/** Header line of golden file. */
+	private static final String HEADER = "Filter,Input,Found,CenterX,CenterY,Width,Height,OffCenterDegrees,Distance";
+
+	/** Indexes of values compared (and their golden file columns). */
+	private static final int CENTER_X = 0;
+	private static final int CENTER_Y = 1;
+	private static final int WIDTH = 2;
+	private static final int HEIGHT = 3;
+	private static final int ANGLE = 4;
+	private static final int DISTANCE = 5;
+	private static final int VALUES = 6;
+	private static final String[] NAMES = { "CenterX", "CenterY", "Width", "Height", "OffCenterDegrees",
+			"Distance" };
+
+	/** What a filter found in a single frame. */
+	private static final class Detection {
+		final String _Filter;
+		final String _Input;
+		/** null if filter doesn't say. */
+		Boolean _Found;
+		/** NaN for values that were not available. */
+		final double[] _Values = new double[VALUES];
+
+		Detection(String filter, String input) {
+			_Filter = filter;
+			_Input = input;
+			Arrays.fill(_Values, Double.NaN);
+		}
+
+		String getKey() {
+			return _Filter + "\n" + _Input;
+		}
+	}
+
+	/** Called with each frame of the inputs. */
+	private interface FrameHandler {
+		void frame(String input, Mat img);
+	}
+
+	private final List<File> _Inputs = new ArrayList<File>();
+	private final List<String> _Filters = new ArrayList<String>();
+	private final Map<String, Double> _Budgets = new HashMap<String, Double>();
+	private double _DefaultBudgetMs = DEFAULT_BUDGET_MS;
+	private double _TolerancePx = 2.0;
+	private double _ToleranceDeg = 0.5;
+	private double _ToleranceDist = 0.02;
+	private int _Repeat = 3;
+	private File _ColorConfig;
+
+	/** Where the report is written. */
+	private final PrintStream _Out;
+
+	/** Number of problems found. */
+	private int _Failures;
+
+	/**
+	 * Constructs a new instance.
+	 *
+	 * @param out
+	 *            Where to write the report.
+	 */
+	DetectionRegression(PrintStream out) {
+		_Out = out;
+	}
+
+	/**
+	 * Runs each filter over all of the inputs.
+	 *
+	 * @return What was found in each frame by each filter.
+	 * @throws IOException
+	 *             If unable to read an input.
+	 */
+	private List<Detection> run() throws IOException {
+		// Fail now (before any output) if a filter can't be created
+		for (String spec : _Filters) {
+			BatchProcess.createFilter(spec);
+		}
+		List<Detection> found = new ArrayList<Detection>();
+		_Out.println(String.format("%-48s %6s %8s %8s %8s %8s %8s  %s", "Filter", "Frames", "Mean", "p50", "p95",
+				"Max", "Budget", "(ms)"));
+		for (String spec : _Filters) {
+			found.addAll(runFilter(spec));
+		}
+		return found;
+	}
+
+	/**
+	 * Runs a single filter over all of the inputs, checking its frame times
+	 * against its budget.
+	 */
+	private List<Detection> runFilter(final String spec) throws IOException {
+		final MatFilter filter = BatchProcess.createFilter(spec);
+		final MemoryTargetSink sink = (filter instanceof Filter) ? new MemoryTargetSink(1) : null;
+		if (sink != null) {
+			((Filter) filter).setTargetSink(sink);
+		}
+		if ((_ColorConfig != null) && (filter instanceof TargetFilter)) {
+			if (!_ColorConfig.isFile()) {
+				throw new IOException("Color range config not found: " + _ColorConfig);
+			}
+			// NOTE: Sets the ranges used by every TargetFilter in this JVM
+			((TargetFilter) filter).setColorRangeConfig(_ColorConfig);
+		}
+		final List<Detection> found = new ArrayList<Detection>();
+		final LatencyHistogram latency = new LatencyHistogram();
+		final TargetPose pose = new TargetPose();
+
+		for (int pass = 0; pass <= _Repeat; pass++) {
+			final boolean warmup = (pass == 0);
+			forEachFrame(new FrameHandler() {
+				@Override
+				public void frame(String input, Mat img) {
+					if (sink != null) {
+						sink.clear();
+					}
+					long start = System.nanoTime();
+					filter.process(img);
+					long nanos = System.nanoTime() - start;
+					if (warmup) {
+						found.add(detect(spec, input, filter, sink, pose));
+					} else {
+						latency.record(nanos);
+					}
+				}
+			});
+		}
+
+		double budget = _Budgets.containsKey(spec) ? _Budgets.get(spec) : _DefaultBudgetMs;
+		double p95 = latency.getPercentile(95) / 1e3;
+		boolean ok = (p95 <= budget);
+		_Out.println(String.format("%-48s %6d %8.2f %8.2f %8.2f %8.2f %8.2f  %s", spec, found.size(),
+				latency.getMean() / 1e3, latency.getPercentile(50) / 1e3, p95, latency.getMax() / 1e3, budget,
+				ok ? "OK" : "OVER BUDGET"));
+		if (!ok) {
+			_Failures++;
+		}
+		return found;
+	}
+
+	/**
+	 * Pulls what was found out of a filter after it processed a frame.
+	 */
+	private static Detection detect(String spec, String input, MatFilter filter, MemoryTargetSink sink,
+			TargetPose pose) {
+		Detection d = new Detection(spec, input);
+		if (sink != null) {
+			TargetReport rep = sink.getLast();
+			d._Found = (rep != null) && rep.isValid();
+			if (d._Found) {
+				if (rep.getTopTargetCount() > 0) {
+					d._Values[CENTER_X] = rep.getTopTargetCenterX(0);
+					d._Values[CENTER_Y] = rep.getTopTargetCenterY(0);
+					d._Values[WIDTH] = rep.getTopTargetWidth(0);
+					d._Values[HEIGHT] = rep.getTopTargetHeight(0);
+				}
+				if (rep.isAngleValid()) {
+					d._Values[ANGLE] = rep.getOffCenterDegreesX();
+				}
+				d._Values[DISTANCE] = rep.getDistanceToTarget();
+			}
+		} else if (filter instanceof FindPinkRectangleFilter) {
+			FindPinkRectangleFilter pink = (FindPinkRectangleFilter) filter;
+			d._Found = pink.wasFound();
+			PolygonCv best = pink.getBestTarget();
+			if (best != null) {
+				d._Values[CENTER_X] = best.getCenterX();
+				d._Values[CENTER_Y] = best.getCenterY();
+				d._Values[WIDTH] = best.getWidth();
+				d._Values[HEIGHT] = best.getHeight();
+			}
+			if (pink.getSolution(pose)) {
+				d._Values[ANGLE] = pose.rotateCamera;
+				d._Values[DISTANCE] = pose.cameraDist;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Compares detections against the expected ones, writing each difference.
+	 */
+	private void check(List<Detection> found, Map<String, Detection> golden, File goldenFile) {
+		int mismatched = 0;
+		int missing = 0;
+		for (Detection d : found) {
+			Detection g = golden.get(d.getKey());
+			if (g == null) {
+				_Out.println("MISSING  " + d._Filter + " " + d._Input + ": no expected detection");
+				missing++;
+				continue;
+			}
+			StringBuilder diffs = new StringBuilder();
+			if ((g._Found == null) ? (d._Found != null) : !g._Found.equals(d._Found)) {
+				diffs.append(" Found expected ").append(g._Found).append(" got ").append(d._Found);
+			}
+			for (int i = 0; i < VALUES; i++) {
+				double exp = g._Values[i];
+				double act = d._Values[i];
+				if (!withinTolerance(i, exp, act)) {
+					diffs.append(String.format(" %s expected %s got %s", NAMES[i], format(exp), format(act)));
+				}
+			}
+			if (diffs.length() > 0) {
+				_Out.println("MISMATCH " + d._Filter + " " + d._Input + ":" + diffs);
+				mismatched++;
+			}
+		}
+		_Out.println(String.format("Detections: %d checked, %d mismatched, %d missing from %s", found.size(),
+				mismatched, missing, goldenFile));
+		if (missing > 0) {
+			_Out.println("(run with --record to add missing detections)");
+		}
+		_Failures += mismatched + missing;
+	}
+
+	/** Checks whether a value is close enough to what was expected. */
+	private boolean withinTolerance(int index, double exp, double act) {
+		if (Double.isNaN(exp) || Double.isNaN(act)) {
+			return Double.isNaN(exp) && Double.isNaN(act);
+		}
+		double tol;
+		if (index == ANGLE) {
+			tol = _ToleranceDeg;
+		} else if (index == DISTANCE) {
+			tol = Math.abs(exp) * _ToleranceDist;
+		} else {
+			tol = _TolerancePx;
+		}
+		return Math.abs(exp - act) <= tol;
+	}
+
+	/**
+	 * Calls the handler with each frame of each input (in order).
+	 */
+	private void forEachFrame(FrameHandler handler) throws IOException {
+		for (File input : _Inputs) {
+			if (input.isDirectory()) {
+				for (File f : BatchProcess.listImages(input)) {
+					handleImage(f, handler);
+				}
+			} else if (BatchProcess.isImage(input.getName())) {
+				handleImage(input, handler);
+			} else {
+				VideoCapture video = new VideoCapture(input.getPath());
+				if (!video.isOpened()) {
+					throw new IOException("Unable to open video: " + input);
+				}
+				Mat img = new Mat();
+				for (int frame = 0; video.read(img); frame++) {
+					handler.frame(getName(input) + "#" + frame, img);
+				}
+				video.release();
+			}
+		}
+	}
+
+	private static void handleImage(File f, FrameHandler handler) throws IOException {
+		Mat img = Highgui.imread(f.getPath());
+		if (img.empty()) {
+			throw new IOException("Unable to read image: " + f);
+		}
+		handler.frame(getName(f), img);
+	}
+
+	/** Name of input in golden file (same on all systems). */
+	private static String getName(File f) {
+		return f.getPath().replace(File.separatorChar, '/');
+	}
+
+	/** Returns the arena images in the res directory. */
+	private static List<File> getDefaultInputs() throws IOException {
+		List<File> inputs = new ArrayList<File>();
+		for (File f : BatchProcess.listImages(new File("res"))) {
+			if (f.getName().startsWith("arena_")) {
+				inputs.add(f);
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Loads the expected detections.
+	 *
+	 * @return Detections keyed by {@link Detection#getKey()} (empty if file
+	 *         does not exist).
+	 */
+	private static Map<String, Detection> loadGolden(File file) throws IOException {
+		Map<String, Detection> golden = new LinkedHashMap<String, Detection>();
+		if (!file.isFile()) {
+			return golden;
+		}
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			String line;
+			int lineNum = 0;
+			while ((line = in.readLine()) != null) {
+				lineNum++;
+				if (line.isEmpty() || line.startsWith("#") || line.equals(HEADER)) {
+					continue;
+				}
+				List<String> cols = splitCsv(line);
+				if (cols.size() != 3 + VALUES) {
+					throw new IOException(file + ":" + lineNum + ": expected " + (3 + VALUES) + " columns");
+				}
+				Detection d = new Detection(cols.get(0), cols.get(1));
+				String found = cols.get(2);
+				d._Found = found.isEmpty() ? null : Boolean.valueOf(found.equals("1"));
+				try {
+					for (int i = 0; i < VALUES; i++) {
+						String val = cols.get(3 + i);
+						d._Values[i] = val.isEmpty() ? Double.NaN : Double.parseDouble(val);
+					}
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + lineNum + ": " + e.getMessage());
+				}
+				golden.put(d.getKey(), d);
+			}
+		}
+		return golden;
+	}
+
+	/**
+	 * Writes the expected detections.
+	 */
+	private static void saveGolden(File file, Map<String, Detection> golden) throws IOException {
+		try (Writer out = new BufferedWriter(new FileWriter(file))) {
+			out.write("# Expected detections checked by DetectionRegression (update with --record)\n");
+			out.write(HEADER + "\n");
+			StringBuilder sb = new StringBuilder();
+			for (Detection d : golden.values()) {
+				sb.setLength(0);
+				sb.append(BatchProcess.quoteCsv(d._Filter)).append(',').append(BatchProcess.quoteCsv(d._Input))
+						.append(',');
+				if (d._Found != null) {
+					sb.append(d._Found ? 1 : 0);
+				}
+				for (int i = 0; i < VALUES; i++) {
+					sb.append(',');
+					if (!Double.isNaN(d._Values[i])) {
+						sb.append(format(d._Values[i]));
+					}
+				}
+				sb.append('\n');
+				out.write(sb.toString());
+			}
+		}
+	}
+
+	private static String format(double val) {
+		return Double.isNaN(val) ? "none" : String.format("%.3f", val);
+	}
+
+	/** Splits a line of CSV (handles quoted values). */
+	private static List<String> splitCsv(String line) {
+		List<String> cols = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					sb.append(c);
+				} else if ((i + 1 < line.length()) && (line.charAt(i + 1) == '"')) {
+					sb.append(c);
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				cols.add(sb.toString());
+				sb.setLength(0);
+			} else {
+				sb.append(c);
+			}
+		}
+		cols.add(sb.toString());
+		return cols;
+	}
+
+	private static void usage() {
+		System.err.println("Usage: DetectionRegression [--record] [--golden FILE] [--filter SPEC]... [--repeat N]"
+				+ " [--budget [SPEC=]MS]... [--color-config FILE] [--tolerance-px PX] [--tolerance-deg DEG] [--tolerance-dist RATIO]"
+				+ " [INPUT]...");
+		System.exit(2);
+	}
+
+	/**
+	 * Runs the check (see class description for arguments).
+	 *
+	 * @param args
+	 *            Command line arguments.
+	 * @throws IOException
+	 *             If unable to read the inputs or golden file.
+	 */
+	public static void main(String[] args) throws IOException {
+		PrintStream console = System.out;
+		DetectionRegression reg = new DetectionRegression(console);
+		File goldenFile = new File(DEFAULT_GOLDEN);
+		boolean record = false;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				boolean hasVal = (i + 1 < args.length);
+				if (arg.equals("--record")) {
+					record = true;
+				} else if (arg.equals("--golden") && hasVal) {
+					goldenFile = new File(args[++i]);
+				} else if (arg.equals("--filter") && hasVal) {
+					reg._Filters.add(args[++i]);
+				} else if (arg.equals("--repeat") && hasVal) {
+					reg._Repeat = Math.max(1, Integer.parseInt(args[++i]));
+				} else if (arg.equals("--budget") && hasVal) {
+					String val = args[++i];
+					int eq = val.lastIndexOf('=');
+					if (eq < 0) {
+						reg._DefaultBudgetMs = Double.parseDouble(val);
+					} else {
+						reg._Budgets.put(val.substring(0, eq), Double.parseDouble(val.substring(eq + 1)));
+					}
+				} else if (arg.equals("--color-config") && hasVal) {
+					reg._ColorConfig = new File(args[++i]);
+				} else if (arg.equals("--tolerance-px") && hasVal) {
+					reg._TolerancePx = Double.parseDouble(args[++i]);
+				} else if (arg.equals("--tolerance-deg") && hasVal) {
+					reg._ToleranceDeg = Double.parseDouble(args[++i]);
+				} else if (arg.equals("--tolerance-dist") && hasVal) {
+					reg._ToleranceDist = Double.parseDouble(args[++i]);
+				} else if (arg.startsWith("--")) {
+					usage();
+				} else {
+					reg._Inputs.add(new File(arg));
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid number: " + e.getMessage());
+			usage();
+		}
+		if (reg._Filters.isEmpty()) {
+			reg._Filters.addAll(Arrays.asList(DEFAULT_FILTERS));
+		}
+		if (reg._Inputs.isEmpty()) {
+			reg._Inputs.addAll(getDefaultInputs());
+			if (reg._ColorConfig == null) {
+				reg._ColorConfig = new File(ARENA_COLOR_CONFIG);
+			}
+		}
+
+		Configuration config = new Configuration();
+		config.loadOpenCvLibrary();
+
+		Map<String, Detection> golden;
+		List<Detection> found;
+		try {
+			golden = loadGolden(goldenFile);
+			// Keep the filters' diagnostic output out of the report
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+			found = reg.run();
+		} catch (IllegalArgumentException | IOException e) {
+			System.setOut(console);
+			System.err.println(e.getMessage());
+			System.exit(2);
+			return;
+		}
+		System.setOut(console);
+
+		if (record) {
+			for (Detection d : found) {
+				golden.put(d.getKey(), d);
+			}
+			saveGolden(goldenFile, golden);
+			console.println("Recorded " + found.size() + " detections to " + goldenFile);
+		} else {
+			reg.check(found, golden, goldenFile);
+		}
+
+		console.println(reg._Failures == 0 ? "PASSED" : ("FAILED (" + reg._Failures + " problems)"));
+		System.exit(reg._Failures == 0 ? 0 : 1);
+	}
+}
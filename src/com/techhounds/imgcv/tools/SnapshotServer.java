@@ -0,0 +1,202 @@
+package com.techhounds.imgcv.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.highgui.Highgui;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.techhounds.imgcv.Configuration;
+import com.techhounds.imgcv.HttpSnapshotSource;
+
+/**
+ * Stand-in for the robot's IP camera that serves still images from a local
+ * directory (the res directory by default) so
+ * {@link HttpSnapshotSource}, {@link com.techhounds.imgcv.FrameGrabber} and
+ * the "Grab Image" actions can be tried without a camera.
+ *
+ * <pre>
+ * SnapshotServer [DIR [PORT [DELAY_MS]]]
+ * </pre>
+ *
+ * <ul>
+ * <li>http://localhost:PORT/jpg/1/image.jpg returns the next image in the
+ * directory (as a JPEG) each time it is requested (like a camera would).</li>
+ * <li>http://localhost:PORT/NAME returns the file NAME from the directory
+ * as is.</li>
+ * <li>PORT defaults to 8080.</li>
+ * <li>DELAY_MS is how long to wait before answering each request (to act like
+ * a camera that takes time to produce a snapshot), default 0.</li>
+ * </ul>
+ *
+ * <p>
+ * Connections are kept alive (HTTP/1.1) like the camera does.
+ * </p>
+ */
+public final class SnapshotServer {
+
+	/** Default port to listen on. */
+	public static final int DEFAULT_PORT = 8080;
+
+	/** Path cameras use for still images. */
+	public static final String SNAPSHOT_PATH = "/jpg/1/image.jpg";
+
+	static {
+		// Like a camera, send responses right away (otherwise the small
+		// header packet can sit waiting on the client's delayed ACK)
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer _Server;
+	private final File _Dir;
+	private final List<byte[]> _Jpegs = new ArrayList<byte[]>();
+	private final AtomicLong _Requests = new AtomicLong();
+	private volatile int _DelayMs;
+
+	/**
+	 * Creates and starts a server on the loopback interface.
+	 *
+	 * @param dir
+	 *            Directory of .png/.jpg images to serve.
+	 * @param port
+	 *            Port to listen on (0 to pick any free port).
+	 * @throws IOException
+	 *             If there are no images or unable to bind to the port.
+	 */
+	public SnapshotServer(File dir, int port) throws IOException {
+		_Dir = dir;
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException("Unable to read image directory: " + dir);
+		}
+		Arrays.sort(files);
+		for (File f : files) {
+			String name = f.getName().toLowerCase();
+			if (name.endsWith(".png") || name.endsWith(".jpg")) {
+				Mat img = Highgui.imread(f.getPath());
+				MatOfByte jpg = new MatOfByte();
+				if (!img.empty() && Highgui.imencode(".jpg", img, jpg)) {
+					_Jpegs.add(jpg.toArray());
+				}
+			}
+		}
+		if (_Jpegs.isEmpty()) {
+			throw new IOException("No images found in: " + dir);
+		}
+
+		_Server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		_Server.setExecutor(Executors.newCachedThreadPool());
+		_Server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		_Server.start();
+	}
+
+	/**
+	 * Sets how long to wait before answering each request.
+	 *
+	 * @param millis
+	 *            Delay in milliseconds (0 for none).
+	 */
+	public void setDelay(int millis) {
+		_DelayMs = millis;
+	}
+
+	/** @return Port being listened on. */
+	public int getPort() {
+		return _Server.getAddress().getPort();
+	}
+
+	/** @return URL of the snapshot image (like the camera's). */
+	public String getSnapshotUrl() {
+		return "http://localhost:" + getPort() + SNAPSHOT_PATH;
+	}
+
+	/** @return Number of requests answered. */
+	public long getRequestCount() {
+		return _Requests.get();
+	}
+
+	/** Stops the server. */
+	public void stop() {
+		_Server.stop(0);
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		byte[] body = null;
+		String type = "image/jpeg";
+		if (path.equals(SNAPSHOT_PATH)) {
+			long n = _Requests.getAndIncrement();
+			body = _Jpegs.get((int) (n % _Jpegs.size()));
+		} else {
+			File f = new File(_Dir, path.substring(1));
+			// Only serve files directly in the directory
+			if (f.isFile() && f.getParentFile().equals(_Dir) && !path.contains("..")) {
+				body = Files.readAllBytes(f.toPath());
+				type = path.toLowerCase().endsWith(".png") ? "image/png" : type;
+				_Requests.incrementAndGet();
+			}
+		}
+
+		int delay = _DelayMs;
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (body == null) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", type);
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Starts the server (see class description for arguments).
+	 *
+	 * @param args
+	 *            Command line arguments.
+	 * @throws IOException
+	 *             If unable to start the server.
+	 */
+	public static void main(String[] args) throws IOException {
+		Configuration config = new Configuration();
+		config.loadOpenCvLibrary();
+
+		File dir = new File((args.length > 0) ? args[0] : "res");
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+		SnapshotServer server = new SnapshotServer(dir, port);
+		if (args.length > 2) {
+			server.setDelay(Integer.parseInt(args[2]));
+		}
+		System.out.println("Serving " + server._Jpegs.size() + " images from " + dir + " at "
+				+ server.getSnapshotUrl());
+	}
+}
@@ -0,0 +1,110 @@
+package com.techhounds.imgcv.utils;
+
+/**
+ * A simple alpha-beta (g-h) filter that smooths a single noisy measurement
+ * and estimates how fast it is changing (a constant velocity model).
+ *
+ * <p>
+ * Each update predicts where the value should be based on the last estimate
+ * and rate, then moves the estimate towards the measurement by alpha and the
+ * rate by beta. Smaller values give smoother (but slower to respond) results.
+ * </p>
+ */
+public class AlphaBetaFilter {
+
+	/** How much of the measurement residual to apply to the value. */
+	private double _Alpha;
+
+	/** How much of the measurement residual to apply to the rate. */
+	private double _Beta;
+
+	/** Current estimate of value. */
+	private double _Value;
+
+	/** Current estimate of rate of change (units per second). */
+	private double _Rate;
+
+	/**
+	 * Constructs a new instance.
+	 *
+	 * @param alpha
+	 *            Value gain in the range of (0, 1.0] (1.0 means take the
+	 *            measurement as is).
+	 * @param beta
+	 *            Rate gain in the range of [0, 1.0] (0 means don't track rate
+	 *            of change).
+	 */
+	public AlphaBetaFilter(double alpha, double beta) {
+		_Alpha = alpha;
+		_Beta = beta;
+	}
+
+	/**
+	 * Resets the filter to a known value with no rate of change.
+	 *
+	 * @param value
+	 *            The value to start with.
+	 */
+	public void reset(double value) {
+		_Value = value;
+		_Rate = 0;
+	}
+
+	/**
+	 * Returns where the value is expected to be after some time passes (does
+	 * not change the state of the filter).
+	 *
+	 * @param dt
+	 *            Seconds since last update.
+	 * @return Predicted value.
+	 */
+	public double predict(double dt) {
+		return _Value + (_Rate * dt);
+	}
+
+	/**
+	 * Moves the estimate forward in time without a measurement (use when
+	 * measurement is missing).
+	 *
+	 * @param dt
+	 *            Seconds since last update.
+	 */
+	public void coast(double dt) {
+		_Value = predict(dt);
+	}
+
+	/**
+	 * Applies a new measurement.
+	 *
+	 * @param measured
+	 *            The measured value.
+	 * @param dt
+	 *            Seconds since last update.
+	 */
+	public void update(double measured, double dt) {
+		double predicted = predict(dt);
+		double residual = measured - predicted;
+		_Value = predicted + (_Alpha * residual);
+		if (dt > 0) {
+			_Rate += _Beta * residual / dt;
+		}
+	}
+
+	/**
+	 * Returns the current (smoothed) estimate.
+	 *
+	 * @return Estimated value.
+	 */
+	public double getValue() {
+		return _Value;
+	}
+
+	/**
+	 * Returns the current estimate of how fast the value is changing.
+	 *
+	 * @return Rate of change in units per second.
+	 */
+	public double getRate() {
+		return _Rate;
+	}
+}
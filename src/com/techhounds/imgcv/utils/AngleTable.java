@@ -0,0 +1,193 @@
+package com.techhounds.imgcv.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable lookup table which converts a pixel offset from the center of an
+ * image into an angle without calling {@link Math#atan(double)}.
+ *
+ * <p>
+ * The angle for every whole pixel offset from 0 up to the number of pixels the
+ * image spans is computed once when the table is built. Sub-pixel offsets are
+ * linearly interpolated between neighboring entries (the error this introduces
+ * is well under 0.001 degrees for typical cameras). Offsets which fall outside
+ * the table are computed directly.
+ * </p>
+ *
+ * <p>
+ * Tables are shared through a small cache keyed by the focal length (derived
+ * from the FOV) and resolution, so every {@link FovCalculator},
+ * {@link AovCalculator} and filter working with the same camera settings uses
+ * the same table. Tables are never modified after construction and are safe to
+ * use from multiple threads.
+ * </p>
+ */
+public final class AngleTable {
+
+	/** Maximum number of tables to keep around in the cache. */
+	private static final int CACHE_SIZE = 16;
+
+	/** Cache of tables already built (least recently used dropped first). */
+	private static final Map<Key, AngleTable> CACHE = new LinkedHashMap<Key, AngleTable>(
+			CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, AngleTable> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/** Focal length of camera in pixels. */
+	private final double _FocalLength;
+
+	/** 1.0 / focal length (tangent of angle per pixel). */
+	private final double _TanPerPixel;
+
+	/** Number of pixels the image spans. */
+	private final int _Pixels;
+
+	/** Angle (radians) for each whole pixel offset in range of [0, pixels]. */
+	private final double[] _Radians;
+
+	/**
+	 * Returns the table for a camera given its field of view and the number of
+	 * pixels the field of view spans (built if not already cached).
+	 *
+	 * @param fovDeg
+	 *            Entire field of view of the camera in degrees.
+	 * @param pixels
+	 *            Number of pixels the field of view spans.
+	 * @return Shared table for the camera settings.
+	 */
+	public static AngleTable forFov(double fovDeg, int pixels) {
+		return forFocalLength(
+				AovCalculator.computeFocalLengthPixels(fovDeg, pixels), pixels);
+	}
+
+	/**
+	 * Returns the table for a camera given its focal length in pixels (built if
+	 * not already cached).
+	 *
+	 * @param focalLength
+	 *            Focal length of camera in pixels.
+	 * @param pixels
+	 *            Number of pixels the image spans (offsets up to this many
+	 *            pixels from center are served from the table).
+	 * @return Shared table for the camera settings.
+	 */
+	public static AngleTable forFocalLength(double focalLength, int pixels) {
+		Key key = new Key(focalLength, pixels);
+		synchronized (CACHE) {
+			AngleTable table = CACHE.get(key);
+			if (table == null) {
+				table = new AngleTable(focalLength, pixels);
+				CACHE.put(key, table);
+			}
+			return table;
+		}
+	}
+
+	/**
+	 * Builds a new table (use {@link #forFov(double, int)} or
+	 * {@link #forFocalLength(double, int)} to share tables).
+	 */
+	private AngleTable(double focalLength, int pixels) {
+		_FocalLength = focalLength;
+		_TanPerPixel = 1.0 / focalLength;
+		_Pixels = Math.max(1, pixels);
+		_Radians = new double[_Pixels + 1];
+		for (int i = 0; i <= _Pixels; i++) {
+			_Radians[i] = Math.atan(i * _TanPerPixel);
+		}
+	}
+
+	/**
+	 * Returns the focal length the table was built for.
+	 *
+	 * @return Focal length in pixels.
+	 */
+	public double getFocalLength() {
+		return _FocalLength;
+	}
+
+	/**
+	 * Returns the number of pixels the table covers (offsets larger than this
+	 * are computed directly).
+	 *
+	 * @return Number of pixels.
+	 */
+	public int getPixels() {
+		return _Pixels;
+	}
+
+	/**
+	 * Returns the tangent of the angle for a pixel offset (this is just the
+	 * offset divided by the focal length).
+	 *
+	 * @param pixelsFromCenter
+	 *            Signed pixel offset from center of image.
+	 * @return Tangent of angle from center.
+	 */
+	public double toTangent(double pixelsFromCenter) {
+		return pixelsFromCenter * _TanPerPixel;
+	}
+
+	/**
+	 * Returns the angle from center for a pixel offset.
+	 *
+	 * @param pixelsFromCenter
+	 *            Signed pixel offset from center of image.
+	 * @return Signed angle from center in radians.
+	 */
+	public double toRadians(double pixelsFromCenter) {
+		double a = (pixelsFromCenter < 0) ? -pixelsFromCenter : pixelsFromCenter;
+		if (!(a < _Pixels)) {
+			// Outside of table (or NaN)
+			return Math.atan(pixelsFromCenter * _TanPerPixel);
+		}
+		int i = (int) a;
+		double r0 = _Radians[i];
+		double rad = r0 + (_Radians[i + 1] - r0) * (a - i);
+		return (pixelsFromCenter < 0) ? -rad : rad;
+	}
+
+	/**
+	 * Returns the angle from center for a pixel offset.
+	 *
+	 * @param pixelsFromCenter
+	 *            Signed pixel offset from center of image.
+	 * @return Signed angle from center in degrees.
+	 */
+	public double toDegrees(double pixelsFromCenter) {
+		return Math.toDegrees(toRadians(pixelsFromCenter));
+	}
+
+	/**
+	 * Cache key made up of the focal length and number of pixels.
+	 */
+	private static final class Key {
+		private final long _FocalBits;
+		private final int _Pixels;
+
+		Key(double focalLength, int pixels) {
+			_FocalBits = Double.doubleToLongBits(focalLength);
+			_Pixels = pixels;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (_FocalBits ^ (_FocalBits >>> 32)) * 31 + _Pixels;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return (k._FocalBits == _FocalBits) && (k._Pixels == _Pixels);
+		}
+	}
+}
@@ -24,6 +24,9 @@ public final class AovCalculator {
 	/** Holds focal length in pixels. */
 	private double _FocalLengthPixels;
 
+	/** Shared pixel to angle lookup table. */
+	private AngleTable _Table;
+
 	/**
 	 * Constructs a new instance where you know the focal length in pixels.
 	 * 
@@ -31,7 +34,8 @@ public final class AovCalculator {
 	 *            The focal length of the camera in pixels.
 	 */
 	public AovCalculator(double focalLengthPixels) {
-		_FocalLengthPixels = focalLengthPixels;
+		// Without the image size, cover offsets up to about 63 degrees
+		this(AngleTable.forFocalLength(focalLengthPixels, (int) Math.ceil(2 * focalLengthPixels)));
 	}
 
 	/**
@@ -45,7 +49,37 @@ public final class AovCalculator {
 	 *            Typically the horizontal width of the image in pixels.
 	 */
 	public AovCalculator(double fovDeg, double pixelsSpanned) {
-		this(computeFocalLengthPixels(fovDeg, pixelsSpanned));
+		this(AngleTable.forFocalLength(computeFocalLengthPixels(fovDeg, pixelsSpanned),
+				(int) Math.ceil(pixelsSpanned)));
+	}
+
+	/**
+	 * Constructs a new instance using a (shared) lookup table.
+	 */
+	private AovCalculator(AngleTable table) {
+		_FocalLengthPixels = table.getFocalLength();
+		_Table = table;
+	}
+
+	/**
+	 * Creates a new instance where you know the focal length in pixels and the
+	 * size of the image.
+	 * 
+	 * <p>
+	 * This is a factory method rather than a constructor so it can't be
+	 * confused with {@link #AovCalculator(double, double)} (field of view in
+	 * degrees) when the second argument happens to be an int.
+	 * </p>
+	 * 
+	 * @param focalLengthPixels
+	 *            The focal length of the camera in pixels.
+	 * @param pixels
+	 *            Largest pixel offset from center you expect to convert
+	 *            (typically the width of the image).
+	 * @return New calculator.
+	 */
+	public static AovCalculator forFocalLength(double focalLengthPixels, int pixels) {
+		return new AovCalculator(AngleTable.forFocalLength(focalLengthPixels, pixels));
 	}
 
 	/**
@@ -70,9 +104,7 @@ public final class AovCalculator {
 	 * @return The angle (in signed degrees).
 	 */
 	public double toAngle(double pixelsFromCenter) {
-		double angle = Math.atan(pixelsFromCenter / _FocalLengthPixels);
-		angle = Math.toDegrees(angle);
-		return angle;
+		return _Table.toDegrees(pixelsFromCenter);
 	}
 
 	/**
@@ -99,16 +131,18 @@ public final class AovCalculator {
 		FovCalculator fc = new FovCalculator(fov, width, 100);
 		AovCalculator ac = new AovCalculator(fov, width);
 
-		System.out.println("Pixel  FOV Ang  FOV Pix  AOV Ang  AOV Pix  AngDiff");
-		System.out.println("-----  -------  -------  -------  -------  -------");
-		for (double pixel = -(width / 2); pixel <= (width / 2); pixel += 5) {
+		System.out.println("  Pixel  FOV Ang  FOV Pix  AOV Ang  AOV Pix  AngDiff   TblErr");
+		System.out.println("-------  -------  -------  -------  -------  -------  -------");
+		for (double pixel = -(width / 2); pixel <= (width / 2); pixel += 5.25) {
 			double fcAng = fc.pixelFromCenterToDeg(pixel);
 			double acAng = ac.toAngle(pixel);
 			double fcPix = fc.degFromCenterToPixel(fcAng);
 			double acPix = ac.toPixel(acAng);
 			double diff = (fcAng - acAng);
-			String line = String.format("%5d  %7.2f  %7.2f  %7.2f  %7.2f  %7.4f", (int) pixel, fcAng, fcPix, acAng,
-					acPix, diff);
+			// Error introduced by lookup table (compared to calling atan)
+			double tblErr = acAng - Math.toDegrees(Math.atan(pixel / ac._FocalLengthPixels));
+			String line = String.format("%7.2f  %7.2f  %7.2f  %7.2f  %7.2f  %7.4f  %7.5f", pixel, fcAng, fcPix,
+					acAng, acPix, diff, tblErr);
 			System.out.println(line);
 		}
 	}
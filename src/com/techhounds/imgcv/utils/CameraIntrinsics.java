@@ -0,0 +1,373 @@
+package com.techhounds.imgcv.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Holds the intrinsic parameters of a camera (focal lengths, optical center and
+ * lens distortion coefficients) as computed by
+ * {@link org.opencv.calib3d.Calib3d#calibrateCamera} (see the
+ * {@link com.techhounds.imgcv.tools.CalibrateCamera} tool).
+ *
+ * <p>
+ * The values are for the resolution the calibration images were taken at. If
+ * you capture at a different resolution (with the same aspect ratio), use
+ * {@link #getCameraMatrix(int, int)} to get a camera matrix scaled to your
+ * image size (the distortion coefficients do not depend on resolution).
+ * </p>
+ *
+ * <p>
+ * Values can be saved and loaded like {@link ColorRangeValues}.
+ * </p>
+ */
+public final class CameraIntrinsics {
+	// Key names used to store and retrieve values
+	private static final String WIDTH_KEY = "CameraCalWidth";
+	private static final String HEIGHT_KEY = "CameraCalHeight";
+	private static final String FX_KEY = "CameraCalFx";
+	private static final String FY_KEY = "CameraCalFy";
+	private static final String CX_KEY = "CameraCalCx";
+	private static final String CY_KEY = "CameraCalCy";
+	private static final String DIST_KEY = "CameraCalDist";
+	private static final String RMS_KEY = "CameraCalRms";
+
+	/** Number of distortion coefficients (k1, k2, p1, p2, k3). */
+	public static final int DIST_COEFFS = 5;
+
+	/** Width of images used for calibration. */
+	private int _Width;
+
+	/** Height of images used for calibration. */
+	private int _Height;
+
+	/** Focal length in X (pixels). */
+	private double _Fx;
+
+	/** Focal length in Y (pixels). */
+	private double _Fy;
+
+	/** X coordinate of optical center (pixels). */
+	private double _Cx;
+
+	/** Y coordinate of optical center (pixels). */
+	private double _Cy;
+
+	/** Distortion coefficients (k1, k2, p1, p2, k3). */
+	private final double[] _Dist = new double[DIST_COEFFS];
+
+	/** RMS re-projection error reported when calibrated (0 if unknown). */
+	private double _Rms;
+
+	/**
+	 * Constructs a new instance for an ideal (no distortion) camera.
+	 *
+	 * @param fovDeg
+	 *            Horizontal field of view in degrees.
+	 * @param width
+	 *            Width of image in pixels.
+	 * @param height
+	 *            Height of image in pixels.
+	 */
+	public CameraIntrinsics(double fovDeg, int width, int height) {
+		_Width = width;
+		_Height = height;
+		_Fx = _Fy = AovCalculator.computeFocalLengthPixels(fovDeg, width);
+		_Cx = width / 2.0;
+		_Cy = height / 2.0;
+	}
+
+	/**
+	 * Constructs a new instance from the results of
+	 * {@link org.opencv.calib3d.Calib3d#calibrateCamera}.
+	 *
+	 * @param cameraMatrix
+	 *            3x3 camera matrix.
+	 * @param distCoeffs
+	 *            Distortion coefficients (at least 4 values).
+	 * @param width
+	 *            Width of calibration images in pixels.
+	 * @param height
+	 *            Height of calibration images in pixels.
+	 * @param rms
+	 *            RMS re-projection error returned by calibration.
+	 */
+	public CameraIntrinsics(Mat cameraMatrix, Mat distCoeffs, int width, int height, double rms) {
+		_Width = width;
+		_Height = height;
+		_Fx = cameraMatrix.get(0, 0)[0];
+		_Fy = cameraMatrix.get(1, 1)[0];
+		_Cx = cameraMatrix.get(0, 2)[0];
+		_Cy = cameraMatrix.get(1, 2)[0];
+		Mat d = distCoeffs.reshape(1, 1);
+		int n = Math.min(DIST_COEFFS, d.cols());
+		for (int i = 0; i < n; i++) {
+			_Dist[i] = d.get(0, i)[0];
+		}
+		_Rms = rms;
+	}
+
+	/**
+	 * Returns the width of the images the camera was calibrated with.
+	 *
+	 * @return Width in pixels.
+	 */
+	public int getWidth() {
+		return _Width;
+	}
+
+	/**
+	 * Returns the height of the images the camera was calibrated with.
+	 *
+	 * @return Height in pixels.
+	 */
+	public int getHeight() {
+		return _Height;
+	}
+
+	/**
+	 * Returns the horizontal focal length at the calibrated resolution.
+	 *
+	 * @return Focal length in pixels.
+	 */
+	public double getFx() {
+		return _Fx;
+	}
+
+	/**
+	 * Returns the vertical focal length at the calibrated resolution.
+	 *
+	 * @return Focal length in pixels.
+	 */
+	public double getFy() {
+		return _Fy;
+	}
+
+	/**
+	 * Returns the RMS re-projection error from calibration.
+	 *
+	 * @return Error in pixels (0 if unknown).
+	 */
+	public double getRms() {
+		return _Rms;
+	}
+
+	/**
+	 * Returns a distortion coefficient.
+	 *
+	 * @param i
+	 *            Index in range of [0, {@link #DIST_COEFFS} - 1] (k1, k2, p1,
+	 *            p2, k3).
+	 * @return Coefficient value.
+	 */
+	public double getDistCoeff(int i) {
+		return _Dist[i];
+	}
+
+	/**
+	 * Creates a 3x3 camera matrix scaled to a specific image size.
+	 *
+	 * @param width
+	 *            Width of images you will be processing.
+	 * @param height
+	 *            Height of images you will be processing.
+	 * @return New 3x3 CV_64F camera matrix.
+	 */
+	public Mat getCameraMatrix(int width, int height) {
+		double sx = (double) width / _Width;
+		double sy = (double) height / _Height;
+		Mat k = Mat.zeros(3, 3, CvType.CV_64F);
+		k.put(0, 0, _Fx * sx, 0, _Cx * sx, 0, _Fy * sy, _Cy * sy, 0, 0, 1);
+		return k;
+	}
+
+	/**
+	 * Creates a matrix containing the distortion coefficients.
+	 *
+	 * @return New 1x5 CV_64F matrix.
+	 */
+	public Mat getDistCoeffs() {
+		Mat d = new Mat(1, DIST_COEFFS, CvType.CV_64F);
+		d.put(0, 0, _Dist);
+		return d;
+	}
+
+	/**
+	 * Creates a standard {@link Properties} object containing current values.
+	 *
+	 * @return A set of properties that you can store and the load later via
+	 *         {@link #setProperties(Properties)}.
+	 */
+	public Properties getProperties() {
+		Properties props = new Properties();
+		props.setProperty(WIDTH_KEY, Integer.toString(_Width));
+		props.setProperty(HEIGHT_KEY, Integer.toString(_Height));
+		props.setProperty(FX_KEY, Double.toString(_Fx));
+		props.setProperty(FY_KEY, Double.toString(_Fy));
+		props.setProperty(CX_KEY, Double.toString(_Cx));
+		props.setProperty(CY_KEY, Double.toString(_Cy));
+		for (int i = 0; i < DIST_COEFFS; i++) {
+			props.setProperty(DIST_KEY + i, Double.toString(_Dist[i]));
+		}
+		props.setProperty(RMS_KEY, Double.toString(_Rms));
+		return props;
+	}
+
+	/**
+	 * Loads values from property settings previously stored via
+	 * {@link #getProperties()}.
+	 *
+	 * @param props
+	 *            The properties object containing the values to load.
+	 * @throws IllegalArgumentException
+	 *             If the properties were missing one or more expected settings.
+	 * @throws NumberFormatException
+	 *             If the property values are corrupt (failed to parse numeric
+	 *             value).
+	 */
+	public void setProperties(Properties props) throws IllegalArgumentException, NumberFormatException {
+		int width = Integer.parseInt(getRequired(props, WIDTH_KEY));
+		int height = Integer.parseInt(getRequired(props, HEIGHT_KEY));
+		if ((width <= 0) || (height <= 0)) {
+			throw new IllegalArgumentException("Invalid camera calibration size: " + width + "x" + height);
+		}
+		_Width = width;
+		_Height = height;
+		_Fx = Double.parseDouble(getRequired(props, FX_KEY));
+		_Fy = Double.parseDouble(getRequired(props, FY_KEY));
+		_Cx = Double.parseDouble(getRequired(props, CX_KEY));
+		_Cy = Double.parseDouble(getRequired(props, CY_KEY));
+		for (int i = 0; i < DIST_COEFFS; i++) {
+			_Dist[i] = Double.parseDouble(props.getProperty(DIST_KEY + i, "0"));
+		}
+		_Rms = Double.parseDouble(props.getProperty(RMS_KEY, "0"));
+	}
+
+	/**
+	 * Returns the "default directory" location (where applications should
+	 * probably look for and store settings under).
+	 *
+	 * @return A file pointing at the default directory for camera
+	 *         calibrations.
+	 */
+	public static File getDefaultDir() {
+		File defaultDir = new File(System.getProperty("user.home"), ".etc");
+		defaultDir = new File(defaultDir, "camera-cal");
+		return defaultDir;
+	}
+
+	/**
+	 * Returns the "default file" location (what applications might try to load
+	 * at start up).
+	 *
+	 * @return A file pointing at the default file location.
+	 */
+	public static File getDefaultFile() {
+		return getFile("default");
+	}
+
+	/**
+	 * Converts a simple name (like "axis") into the fully qualified path where
+	 * we expect the calibration to be stored.
+	 *
+	 * @param name
+	 *            Base name of the calibration file.
+	 * @return A file object with the fully qualified path and extension to
+	 *         store the file under.
+	 */
+	public static File getFile(String name) {
+		return new File(getDefaultDir(), name + ".camera-cal.xml");
+	}
+
+	/**
+	 * Loads the default calibration (if one has been saved).
+	 *
+	 * @return Intrinsics loaded from {@link #getDefaultFile()} or null if there
+	 *         isn't one (or it could not be loaded).
+	 */
+	public static CameraIntrinsics loadDefault() {
+		File f = getDefaultFile();
+		if (!f.isFile()) {
+			return null;
+		}
+		CameraIntrinsics cal = new CameraIntrinsics(60, 640, 480);
+		try {
+			cal.loadSettings(f);
+			return cal;
+		} catch (IOException | IllegalArgumentException ex) {
+			System.err.println("Failed to load camera calibration from " + f + ": " + ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the settings to a file.
+	 *
+	 * @param f
+	 *            The file to save the settings to (must not be null).
+	 * @throws FileNotFoundException
+	 *             If unable to write to file.
+	 * @throws IOException
+	 *             If write failed.
+	 */
+	public void saveSettings(File f) throws FileNotFoundException, IOException {
+		File pdir = f.getAbsoluteFile().getParentFile();
+		if (!pdir.isDirectory() && !pdir.mkdirs()) {
+			throw new IOException("Directory " + pdir + " does not exist and we were unable to create it");
+		}
+		try (FileOutputStream out = new FileOutputStream(f)) {
+			Properties props = getProperties();
+			props.storeToXML(out, "Camera calibration");
+		}
+	}
+
+	/**
+	 * Loads settings from contents of file (typically from previous
+	 * {@link #saveSettings(File)} invocation).
+	 *
+	 * @param f
+	 *            File to load the settings from.
+	 * @throws FileNotFoundException
+	 *             If file doesn't exist.
+	 * @throws IOException
+	 *             If problem reading from file.
+	 * @throws IllegalArgumentException
+	 *             If failed to find a valid calibration file.
+	 */
+	public void loadSettings(File f) throws FileNotFoundException, IOException, IllegalArgumentException {
+		try (FileInputStream in = new FileInputStream(f)) {
+			Properties props = new Properties();
+			props.loadFromXML(in);
+			setProperties(props);
+		}
+	}
+
+	/**
+	 * Returns a JSON looking string of the values.
+	 *
+	 * @return String representation.
+	 */
+	public String toString() {
+		return String.format(
+				"{ \"size\":[%d, %d], \"fx\":%.2f, \"fy\":%.2f, \"cx\":%.2f, \"cy\":%.2f, "
+						+ "\"dist\":[%.5f, %.5f, %.5f, %.5f, %.5f], \"rms\":%.3f }",
+				_Width, _Height, _Fx, _Fy, _Cx, _Cy, _Dist[0], _Dist[1], _Dist[2], _Dist[3], _Dist[4], _Rms);
+	}
+
+	/**
+	 * Returns a property value or throws exception if it is missing.
+	 */
+	private static String getRequired(Properties props, String key) throws IllegalArgumentException {
+		String val = props.getProperty(key);
+		if (val == null) {
+			throw new IllegalArgumentException("Missing camera calibration setting: " + key);
+		}
+		return val;
+	}
+}
@@ -0,0 +1,613 @@
+package com.techhounds.imgcv.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Corrects distances computed from images using measurements taken on the
+ * field.
+ *
+ * <p>
+ * Calibration starts with pairs of values: the actual (tape measured) distance
+ * and the distance the vision code reported. A correction curve is fitted to
+ * the pairs (either piecewise-linear through the points or a least squares
+ * polynomial) and then sampled into an evenly spaced table. At run time
+ * {@link #correct(double)} maps a reported distance to a corrected distance
+ * with one table read and a linear interpolation (O(1) no matter how many
+ * pairs were measured). Reported values outside the measured range are
+ * extrapolated using the slope at the nearest end of the table.
+ * </p>
+ *
+ * <p>
+ * The fitted table (and the pairs it came from) can be saved and loaded like
+ * {@link ColorRangeValues} so robots don't need to refit at start up.
+ * </p>
+ *
+ * <p>
+ * Pair files are plain text with one "actual:reported" pair per line (like the
+ * "distance value table.txt" file kept with the source). Lines which don't
+ * contain a pair are ignored.
+ * </p>
+ */
+public final class DistanceCalibration {
+	// Key names used to store and retrieve values
+	private static final String PAIRS_KEY = "DistanceCalPairs";
+	private static final String ACTUAL_KEY = "DistanceCalActual";
+	private static final String REPORTED_KEY = "DistanceCalReported";
+	private static final String FIT_KEY = "DistanceCalFit";
+	private static final String MIN_KEY = "DistanceCalMin";
+	private static final String STEP_KEY = "DistanceCalStep";
+	private static final String SIZE_KEY = "DistanceCalSize";
+	private static final String VALUE_KEY = "DistanceCalValue";
+
+	/** Number of intervals the fitted curve is sampled into. */
+	private static final int TABLE_INTERVALS = 256;
+
+	/** Measured (actual) distances (sorted by reported distance). */
+	private double[] _Actual = new double[0];
+
+	/** Reported distances (sorted). */
+	private double[] _Reported = new double[0];
+
+	/** Degree of polynomial fitted (0 for piecewise-linear, -1 if not fit). */
+	private int _Fit = -1;
+
+	/** Reported distance of first table entry. */
+	private double _Min;
+
+	/** Reported distance between table entries. */
+	private double _Step;
+
+	/** 1.0 / _Step. */
+	private double _InvStep;
+
+	/** Corrected distance at each table entry (null if not fit). */
+	private double[] _Table;
+
+	/**
+	 * Constructs a new instance with no pairs (which passes distances through
+	 * unchanged until a correction is fit or loaded).
+	 */
+	public DistanceCalibration() {
+	}
+
+	/**
+	 * Adds a measured pair (invalidates any current fit).
+	 *
+	 * @param actual
+	 *            Actual distance to target (as measured on the field).
+	 * @param reported
+	 *            Distance reported by the vision code at the same position.
+	 */
+	public void addPair(double actual, double reported) {
+		int n = _Reported.length;
+		int pos = 0;
+		while ((pos < n) && (_Reported[pos] <= reported)) {
+			pos++;
+		}
+		_Actual = insert(_Actual, pos, actual);
+		_Reported = insert(_Reported, pos, reported);
+		_Fit = -1;
+		_Table = null;
+	}
+
+	/**
+	 * Returns the number of measured pairs.
+	 *
+	 * @return Pair count.
+	 */
+	public int getPairCount() {
+		return _Reported.length;
+	}
+
+	/**
+	 * Returns the actual distance of a measured pair.
+	 *
+	 * @param i
+	 *            Pair index in range of [0, {@link #getPairCount()} - 1]
+	 *            (pairs are sorted by reported distance).
+	 * @return Actual distance.
+	 */
+	public double getActual(int i) {
+		return _Actual[i];
+	}
+
+	/**
+	 * Returns the reported distance of a measured pair.
+	 *
+	 * @param i
+	 *            Pair index in range of [0, {@link #getPairCount()} - 1]
+	 *            (pairs are sorted by reported distance).
+	 * @return Reported distance.
+	 */
+	public double getReported(int i) {
+		return _Reported[i];
+	}
+
+	/**
+	 * Loads measured pairs from a text file containing "actual:reported" lines
+	 * (other lines are ignored).
+	 *
+	 * @param f
+	 *            File to read.
+	 * @return Number of pairs added.
+	 * @throws IOException
+	 *             If unable to read the file.
+	 */
+	public int loadPairs(File f) throws IOException {
+		int added = 0;
+		try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] parts = line.trim().split("\\s*:\\s*");
+				if (parts.length != 2) {
+					continue;
+				}
+				try {
+					double actual = Double.parseDouble(parts[0]);
+					double reported = Double.parseDouble(parts[1]);
+					addPair(actual, reported);
+					added++;
+				} catch (NumberFormatException ignore) {
+					// Header or comment line
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Fits a correction which passes through each measured pair and linearly
+	 * interpolates between them.
+	 *
+	 * @throws IllegalStateException
+	 *             If there are less than 2 pairs.
+	 */
+	public void fitPiecewiseLinear() throws IllegalStateException {
+		requirePairs(2);
+		_Fit = 0;
+		buildTable();
+	}
+
+	/**
+	 * Fits a least squares polynomial correction to the measured pairs.
+	 *
+	 * @param degree
+	 *            Degree of polynomial (1 for a straight line, 2 for a
+	 *            quadratic, ...).
+	 * @throws IllegalStateException
+	 *             If there are not more pairs than the degree.
+	 */
+	public void fitPolynomial(int degree) throws IllegalStateException {
+		if (degree < 1) {
+			throw new IllegalArgumentException("Polynomial degree must be at least 1 (not " + degree + ")");
+		}
+		requirePairs(degree + 1);
+		_Fit = degree;
+		buildTable();
+	}
+
+	/**
+	 * Indicates whether a correction has been fit or loaded.
+	 *
+	 * @return true if {@link #correct(double)} will adjust values.
+	 */
+	public boolean isFit() {
+		return _Table != null;
+	}
+
+	/**
+	 * Returns the type of correction fitted.
+	 *
+	 * @return 0 for piecewise-linear, polynomial degree if positive, -1 if no
+	 *         correction has been fit.
+	 */
+	public int getFit() {
+		return _Fit;
+	}
+
+	/**
+	 * Converts a reported distance to a corrected (actual) distance.
+	 *
+	 * @param reported
+	 *            Distance reported by the vision code.
+	 * @return Corrected distance (or reported value as is if no correction has
+	 *         been fit or loaded).
+	 */
+	public double correct(double reported) {
+		double[] table = _Table;
+		if (table == null) {
+			return reported;
+		}
+		int last = table.length - 1;
+		double t = (reported - _Min) * _InvStep;
+		int i;
+		if (t < 0) {
+			i = 0;
+		} else if (t >= last) {
+			i = last - 1;
+		} else {
+			i = (int) t;
+		}
+		return table[i] + (table[i + 1] - table[i]) * (t - i);
+	}
+
+	/**
+	 * Creates a standard {@link Properties} object containing the measured
+	 * pairs and fitted table.
+	 *
+	 * @return A set of properties that you can store and the load later via
+	 *         {@link #setProperties(Properties)}.
+	 */
+	public Properties getProperties() {
+		Properties props = new Properties();
+		int n = getPairCount();
+		props.setProperty(PAIRS_KEY, Integer.toString(n));
+		for (int i = 0; i < n; i++) {
+			props.setProperty(ACTUAL_KEY + i, Double.toString(_Actual[i]));
+			props.setProperty(REPORTED_KEY + i, Double.toString(_Reported[i]));
+		}
+		props.setProperty(FIT_KEY, Integer.toString(_Fit));
+		if (_Table != null) {
+			props.setProperty(MIN_KEY, Double.toString(_Min));
+			props.setProperty(STEP_KEY, Double.toString(_Step));
+			props.setProperty(SIZE_KEY, Integer.toString(_Table.length));
+			for (int i = 0; i < _Table.length; i++) {
+				props.setProperty(VALUE_KEY + i, Double.toString(_Table[i]));
+			}
+		}
+		return props;
+	}
+
+	/**
+	 * Loads values from property settings previously stored via
+	 * {@link #getProperties()}.
+	 *
+	 * @param props
+	 *            The properties object containing the values to load.
+	 * @throws IllegalArgumentException
+	 *             If the properties were missing one or more expected settings.
+	 * @throws NumberFormatException
+	 *             If the property values are corrupt (failed to parse numeric
+	 *             value).
+	 */
+	public void setProperties(Properties props) throws IllegalArgumentException, NumberFormatException {
+		int n = Integer.parseInt(props.getProperty(PAIRS_KEY, "0"));
+		double[] actual = new double[n];
+		double[] reported = new double[n];
+		for (int i = 0; i < n; i++) {
+			actual[i] = Double.parseDouble(getRequired(props, ACTUAL_KEY + i));
+			reported[i] = Double.parseDouble(getRequired(props, REPORTED_KEY + i));
+		}
+
+		double[] table = null;
+		double min = 0;
+		double step = 0;
+		int size = Integer.parseInt(props.getProperty(SIZE_KEY, "0"));
+		if (size > 0) {
+			if (size < 2) {
+				throw new IllegalArgumentException("Distance calibration table must have at least 2 values");
+			}
+			min = Double.parseDouble(getRequired(props, MIN_KEY));
+			step = Double.parseDouble(getRequired(props, STEP_KEY));
+			if (!(step > 0)) {
+				throw new IllegalArgumentException("Invalid distance calibration step: " + step);
+			}
+			table = new double[size];
+			for (int i = 0; i < size; i++) {
+				table[i] = Double.parseDouble(getRequired(props, VALUE_KEY + i));
+			}
+		}
+
+		_Actual = actual;
+		_Reported = reported;
+		_Fit = (table != null) ? Integer.parseInt(props.getProperty(FIT_KEY, "0")) : -1;
+		_Min = min;
+		_Step = step;
+		_InvStep = (step > 0) ? 1.0 / step : 0;
+		_Table = table;
+	}
+
+	/**
+	 * Returns the "default directory" location (where applications should
+	 * probably look for and store settings under).
+	 *
+	 * @return A file pointing at the default directory for distance
+	 *         calibrations.
+	 */
+	public static File getDefaultDir() {
+		File defaultDir = new File(System.getProperty("user.home"), ".etc");
+		defaultDir = new File(defaultDir, "distance-cal");
+		return defaultDir;
+	}
+
+	/**
+	 * Returns the "default file" location (what applications might try to load
+	 * at start up).
+	 *
+	 * @return A file pointing at the default file location.
+	 */
+	public static File getDefaultFile() {
+		return getFile("default");
+	}
+
+	/**
+	 * Converts a simple name (like "2016") into the fully qualified path where
+	 * we expect the calibration to be stored.
+	 *
+	 * @param name
+	 *            Base name of the calibration file.
+	 * @return A file object with the fully qualified path and extension to
+	 *         store the file under.
+	 */
+	public static File getFile(String name) {
+		return new File(getDefaultDir(), name + ".distance-cal.xml");
+	}
+
+	/**
+	 * Loads the default calibration (if one has been saved).
+	 *
+	 * @return Calibration loaded from {@link #getDefaultFile()} or null if there
+	 *         isn't one (or it could not be loaded).
+	 */
+	public static DistanceCalibration loadDefault() {
+		File f = getDefaultFile();
+		if (!f.isFile()) {
+			return null;
+		}
+		DistanceCalibration cal = new DistanceCalibration();
+		try {
+			cal.loadSettings(f);
+			return cal;
+		} catch (IOException | IllegalArgumentException ex) {
+			System.err.println("Failed to load distance calibration from " + f + ": " + ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the settings to a file.
+	 *
+	 * @param f
+	 *            The file to save the settings to (must not be null).
+	 * @throws FileNotFoundException
+	 *             If unable to write to file.
+	 * @throws IOException
+	 *             If write failed.
+	 */
+	public void saveSettings(File f) throws FileNotFoundException, IOException {
+		File pdir = f.getAbsoluteFile().getParentFile();
+		if (!pdir.isDirectory() && !pdir.mkdirs()) {
+			throw new IOException("Directory " + pdir + " does not exist and we were unable to create it");
+		}
+		try (FileOutputStream out = new FileOutputStream(f)) {
+			Properties props = getProperties();
+			props.storeToXML(out, "Distance calibration");
+		}
+	}
+
+	/**
+	 * Loads settings from contents of file (typically from previous
+	 * {@link #saveSettings(File)} invocation).
+	 *
+	 * @param f
+	 *            File to load the settings from.
+	 * @throws FileNotFoundException
+	 *             If file doesn't exist.
+	 * @throws IOException
+	 *             If problem reading from file.
+	 * @throws IllegalArgumentException
+	 *             If failed to find a valid calibration file.
+	 */
+	public void loadSettings(File f) throws FileNotFoundException, IOException, IllegalArgumentException {
+		try (FileInputStream in = new FileInputStream(f)) {
+			Properties props = new Properties();
+			props.loadFromXML(in);
+			setProperties(props);
+		}
+	}
+
+	/**
+	 * Samples the fitted curve into the evenly spaced lookup table.
+	 */
+	private void buildTable() {
+		int n = _Reported.length;
+		double lo = _Reported[0];
+		double hi = _Reported[n - 1];
+		if (!(hi > lo)) {
+			throw new IllegalStateException("Need pairs with at least two different reported distances");
+		}
+
+		double[] coefs = (_Fit > 0) ? fitCoefficients(_Fit) : null;
+		double[] table = new double[TABLE_INTERVALS + 1];
+		double step = (hi - lo) / TABLE_INTERVALS;
+		for (int i = 0; i <= TABLE_INTERVALS; i++) {
+			double x = (i == TABLE_INTERVALS) ? hi : (lo + i * step);
+			table[i] = (coefs != null) ? evaluate(coefs, x - lo) : interpolate(x);
+		}
+
+		_Min = lo;
+		_Step = step;
+		_InvStep = 1.0 / step;
+		_Table = table;
+	}
+
+	/**
+	 * Linearly interpolates between measured pairs (extrapolates using the
+	 * end segments).
+	 */
+	private double interpolate(double reported) {
+		int n = _Reported.length;
+		int i = 0;
+		while ((i < n - 2) && (reported > _Reported[i + 1])) {
+			i++;
+		}
+		double x0 = _Reported[i];
+		double x1 = _Reported[i + 1];
+		double y0 = _Actual[i];
+		double y1 = _Actual[i + 1];
+		if (x1 == x0) {
+			// Same distance reported for two positions
+			return (y0 + y1) / 2;
+		}
+		return y0 + (y1 - y0) * (reported - x0) / (x1 - x0);
+	}
+
+	/**
+	 * Computes least squares polynomial coefficients (constant term first) in
+	 * terms of (reported - lowest reported) to keep the normal equations well
+	 * conditioned.
+	 */
+	private double[] fitCoefficients(int degree) {
+		int m = degree + 1;
+		int n = _Reported.length;
+		double x0 = _Reported[0];
+		double[][] a = new double[m][m + 1];
+		for (int k = 0; k < n; k++) {
+			double x = _Reported[k] - x0;
+			double[] pow = new double[2 * m];
+			pow[0] = 1;
+			for (int p = 1; p < pow.length; p++) {
+				pow[p] = pow[p - 1] * x;
+			}
+			for (int r = 0; r < m; r++) {
+				for (int c = 0; c < m; c++) {
+					a[r][c] += pow[r + c];
+				}
+				a[r][m] += pow[r] * _Actual[k];
+			}
+		}
+
+		// Gaussian elimination with partial pivoting
+		for (int col = 0; col < m; col++) {
+			int pivot = col;
+			for (int r = col + 1; r < m; r++) {
+				if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) {
+					pivot = r;
+				}
+			}
+			double[] tmp = a[col];
+			a[col] = a[pivot];
+			a[pivot] = tmp;
+			if (a[col][col] == 0) {
+				throw new IllegalStateException("Unable to fit degree " + degree + " polynomial to pairs");
+			}
+			for (int r = 0; r < m; r++) {
+				if (r != col) {
+					double f = a[r][col] / a[col][col];
+					for (int c = col; c <= m; c++) {
+						a[r][c] -= f * a[col][c];
+					}
+				}
+			}
+		}
+
+		double[] coefs = new double[m];
+		for (int r = 0; r < m; r++) {
+			coefs[r] = a[r][m] / a[r][r];
+		}
+		return coefs;
+	}
+
+	/**
+	 * Evaluates polynomial (constant term first) at x.
+	 */
+	private static double evaluate(double[] coefs, double x) {
+		double y = 0;
+		for (int i = coefs.length - 1; i >= 0; i--) {
+			y = y * x + coefs[i];
+		}
+		return y;
+	}
+
+	/**
+	 * Verifies we have enough pairs for a fit.
+	 */
+	private void requirePairs(int n) throws IllegalStateException {
+		if (_Reported.length < n) {
+			throw new IllegalStateException("Need at least " + n + " distance pairs to fit correction (have "
+					+ _Reported.length + ")");
+		}
+	}
+
+	/**
+	 * Returns a property value or throws exception if it is missing.
+	 */
+	private static String getRequired(Properties props, String key) throws IllegalArgumentException {
+		String val = props.getProperty(key);
+		if (val == null) {
+			throw new IllegalArgumentException("Missing distance calibration setting: " + key);
+		}
+		return val;
+	}
+
+	/**
+	 * Helper to insert a value into a copy of an array.
+	 */
+	private static double[] insert(double[] vals, int pos, double val) {
+		double[] copy = Arrays.copyOf(vals, vals.length + 1);
+		System.arraycopy(vals, pos, copy, pos + 1, vals.length - pos);
+		copy[pos] = val;
+		return copy;
+	}
+
+	/**
+	 * Fits a correction to a file of measured pairs, shows how well it does and
+	 * optionally saves it.
+	 *
+	 * <pre>
+	 * DistanceCalibration [PAIRS_FILE [DEGREE [NAME]]]
+	 * </pre>
+	 *
+	 * <p>
+	 * DEGREE is 0 (the default) for a piecewise-linear correction or the degree
+	 * of the polynomial to fit. If NAME is given, the calibration is saved to
+	 * {@link #getFile(String)} (use "default" to have the 2016 viewers pick it
+	 * up at start up).
+	 * </p>
+	 *
+	 * @param args
+	 *            Command line arguments (see above).
+	 * @throws IOException
+	 *             If unable to read pairs or save calibration.
+	 */
+	public static void main(String[] args) throws IOException {
+		File pairsFile = new File((args.length > 0) ? args[0]
+				: "src/com/techhounds/imgcv/distance value table.txt");
+		int degree = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+
+		DistanceCalibration cal = new DistanceCalibration();
+		int n = cal.loadPairs(pairsFile);
+		System.out.println("Loaded " + n + " pairs from " + pairsFile);
+		if (degree == 0) {
+			cal.fitPiecewiseLinear();
+		} else {
+			cal.fitPolynomial(degree);
+		}
+
+		// Compare against hand derived fit: reported = (actual / 10) * 15 + 50
+		System.out.println("Reported   Actual  Corrected    Error  HandFit    Error");
+		System.out.println("--------  -------  ---------  -------  -------  -------");
+		for (int i = 0; i < cal.getPairCount(); i++) {
+			double reported = cal.getReported(i);
+			double actual = cal.getActual(i);
+			double corrected = cal.correct(reported);
+			double hand = (reported - 50) / 15 * 10;
+			System.out.println(String.format("%8.1f  %7.1f  %9.2f  %7.2f  %7.2f  %7.2f", reported, actual,
+					corrected, corrected - actual, hand, hand - actual));
+		}
+
+		if (args.length > 2) {
+			File f = getFile(args[2]);
+			cal.saveSettings(f);
+			System.out.println("Saved calibration to " + f);
+		}
+	}
+}
@@ -32,6 +32,8 @@ public class FovCalculator {
 	private double _Length;
 	/** Distance of camera to wall in pixels. */
 	private double _DistPx;
+	/** Shared pixel to angle lookup table for current settings. */
+	private AngleTable _Table;
 
 	/**
 	 * Constructs a new FOV calculator for 3 specific terms related to the
@@ -144,6 +146,24 @@ public class FovCalculator {
 		return _Distance;
 	}
 
+	/**
+	 * Sets the distance of the camera to the wall in world units (center of
+	 * image).
+	 * 
+	 * <p>
+	 * NOTE: The distance does not change how pixels map to angles, so this is
+	 * a cheap way to reuse a calculator as the distance to a target changes.
+	 * </p>
+	 * 
+	 * @param distance
+	 *            The distance in real world units from the camera to the "wall"
+	 *            that is captured.
+	 */
+	public void setDistance(double distance) {
+		_Distance = distance;
+		_Length = 2 * _Distance * _TanFov2;
+	}
+
 	/**
 	 * Returns the distance of the camera to the wall in pixels (center of
 	 * image).
@@ -205,7 +225,29 @@ public class FovCalculator {
 	 * @return Number of degrees off center.
 	 */
 	public double pixelFromCenterToDeg(double pixelFromCenter) {
-		return Math.toDegrees(Math.atan(pixelFromCenter / _DistPx));
+		return _Table.toDegrees(pixelFromCenter);
+	}
+
+	/**
+	 * Compute radians from center for a specific pixel location.
+	 * 
+	 * @param pixelFromCenter
+	 *            The number of pixels from center.
+	 * 
+	 * @return Number of radians off center.
+	 */
+	public double pixelFromCenterToRad(double pixelFromCenter) {
+		return _Table.toRadians(pixelFromCenter);
+	}
+
+	/**
+	 * Returns the lookup table used to convert pixels to angles (shared with
+	 * all other calculators using the same FOV and number of pixels).
+	 * 
+	 * @return Pixel to angle lookup table.
+	 */
+	public AngleTable getAngleTable() {
+		return _Table;
 	}
 
 	/**
@@ -370,6 +412,7 @@ public class FovCalculator {
 		_TanFov2 = Math.tan(_FovRad2);
 		_Length = 2 * _Distance * _TanFov2;
 		_DistPx = _Distance * _Pixels / _Length;
+		_Table = AngleTable.forFocalLength(_DistPx, (int) Math.ceil(_Pixels));
 	}
 
 }
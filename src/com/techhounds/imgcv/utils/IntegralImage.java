@@ -0,0 +1,223 @@
+package com.techhounds.imgcv.utils;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import com.techhounds.imgcv.PolygonCv;
+
+/**
+ * Answers "how many white pixels are in this rectangle" questions about a
+ * binary image in constant time.
+ *
+ * <p>
+ * The integral (summed area table) of the binary image is computed once via
+ * {@link Imgproc#integral(Mat, Mat, int)} when you call {@link #setImage(Mat)}
+ * and copied into a Java array. After that, the number of white pixels in any
+ * rectangle can be determined from 4 array lookups no matter how large the
+ * rectangle is. This makes it cheap to run hole checks, fill ratio checks and
+ * other coverage tests on as many candidate polygons as you like.
+ * </p>
+ *
+ * <p>
+ * Rectangles are specified like {@link Mat#submat(int, int, int, int)}: the
+ * begin row/column is included and the end row/column is excluded. Regions
+ * are clipped to the image bounds.
+ * </p>
+ */
+public class IntegralImage {
+
+	/** Pixel value used for white pixels in binary images. */
+	private static final int WHITE = 255;
+
+	/** Integral image computed by opencv (reused between frames). */
+	private final Mat _Integral = new Mat();
+
+	/** Java copy of the integral values ((rows + 1) * (cols + 1) entries). */
+	private int[] _Sums = new int[0];
+
+	/** Width of the source image. */
+	private int _Cols;
+
+	/** Height of the source image. */
+	private int _Rows;
+
+	/**
+	 * Computes the integral image for a new binary image.
+	 *
+	 * @param binary
+	 *            Single channel 8 bit image where white pixels are 255 and
+	 *            black pixels are 0 (the image is not modified, so it is safe
+	 *            to call this before using findContours on the same image).
+	 */
+	public void setImage(Mat binary) {
+		_Rows = binary.rows();
+		_Cols = binary.cols();
+		Imgproc.integral(binary, _Integral, CvType.CV_32S);
+
+		int n = (_Rows + 1) * (_Cols + 1);
+		if (_Sums.length < n) {
+			_Sums = new int[n];
+		}
+		_Integral.get(0, 0, _Sums);
+	}
+
+	/**
+	 * Returns the width of the image the integral was computed for.
+	 *
+	 * @return Width in pixels.
+	 */
+	public int getCols() {
+		return _Cols;
+	}
+
+	/**
+	 * Returns the height of the image the integral was computed for.
+	 *
+	 * @return Height in pixels.
+	 */
+	public int getRows() {
+		return _Rows;
+	}
+
+	/**
+	 * Returns the sum of all of the pixel values in a region.
+	 *
+	 * @param begRow
+	 *            First row of region (inclusive).
+	 * @param endRow
+	 *            Last row of region (exclusive).
+	 * @param begCol
+	 *            First column of region (inclusive).
+	 * @param endCol
+	 *            Last column of region (exclusive).
+	 * @return Sum of pixel values (0 if the region is empty).
+	 */
+	public int sum(int begRow, int endRow, int begCol, int endCol) {
+		begRow = clip(begRow, _Rows);
+		endRow = clip(endRow, _Rows);
+		begCol = clip(begCol, _Cols);
+		endCol = clip(endCol, _Cols);
+		if ((endRow <= begRow) || (endCol <= begCol)) {
+			return 0;
+		}
+
+		int stride = _Cols + 1;
+		int[] s = _Sums;
+		int top = begRow * stride;
+		int bot = endRow * stride;
+		return s[bot + endCol] - s[bot + begCol] - s[top + endCol]
+				+ s[top + begCol];
+	}
+
+	/**
+	 * Returns the number of white pixels in a region.
+	 *
+	 * @param begRow
+	 *            First row of region (inclusive).
+	 * @param endRow
+	 *            Last row of region (exclusive).
+	 * @param begCol
+	 *            First column of region (inclusive).
+	 * @param endCol
+	 *            Last column of region (exclusive).
+	 * @return Number of white pixels.
+	 */
+	public double countWhite(int begRow, int endRow, int begCol, int endCol) {
+		return (double) sum(begRow, endRow, begCol, endCol) / WHITE;
+	}
+
+	/**
+	 * Returns the number of pixels in a region (after clipping to the image).
+	 *
+	 * @param begRow
+	 *            First row of region (inclusive).
+	 * @param endRow
+	 *            Last row of region (exclusive).
+	 * @param begCol
+	 *            First column of region (inclusive).
+	 * @param endCol
+	 *            Last column of region (exclusive).
+	 * @return Number of pixels in region (0 if the region is empty).
+	 */
+	public int area(int begRow, int endRow, int begCol, int endCol) {
+		int rows = clip(endRow, _Rows) - clip(begRow, _Rows);
+		int cols = clip(endCol, _Cols) - clip(begCol, _Cols);
+		return ((rows > 0) && (cols > 0)) ? (rows * cols) : 0;
+	}
+
+	/**
+	 * Returns the ratio of white pixels to total pixels in a region.
+	 *
+	 * @param begRow
+	 *            First row of region (inclusive).
+	 * @param endRow
+	 *            Last row of region (exclusive).
+	 * @param begCol
+	 *            First column of region (inclusive).
+	 * @param endCol
+	 *            Last column of region (exclusive).
+	 * @return Coverage in the range of [0, 1.0] (0 if the region is empty).
+	 */
+	public double coverage(int begRow, int endRow, int begCol, int endCol) {
+		int area = area(begRow, endRow, begCol, endCol);
+		return (area > 0) ? (countWhite(begRow, endRow, begCol, endCol) / area)
+				: 0;
+	}
+
+	/**
+	 * Returns the ratio of white pixels to total pixels in the bounding box of
+	 * a polygon.
+	 *
+	 * @param poly
+	 *            The polygon whose bounding box you want to check.
+	 * @return Coverage in the range of [0, 1.0].
+	 */
+	public double fillRatio(PolygonCv poly) {
+		return coverage((int) poly.getMinY(), (int) poly.getMaxY() + 1,
+				(int) poly.getMinX(), (int) poly.getMaxX() + 1);
+	}
+
+	/**
+	 * Returns the ratio of white pixels in a portion of a polygon's bounding
+	 * box.
+	 *
+	 * @param poly
+	 *            The polygon whose bounding box you want to check.
+	 * @param top
+	 *            How far down from the top side of the bounding box (ratio of
+	 *            height in range of [0, 1.0]).
+	 * @param bot
+	 *            How far up from the bottom side of the bounding box (ratio of
+	 *            height in range of [0, 1.0]).
+	 * @param left
+	 *            How far in from the left side of the bounding box (ratio of
+	 *            width in range of [0, 1.0]).
+	 * @param right
+	 *            How far in from the right side of the bounding box (ratio of
+	 *            width in range of [0, 1.0]).
+	 * @return Coverage in the range of [0, 1.0] (0 if the region is empty).
+	 */
+	public double coverage(PolygonCv poly, double top, double bot,
+			double left, double right) {
+		float h = poly.getHeight();
+		float w = poly.getWidth();
+		return coverage((int) (poly.getMinY() + (top * h)),
+				(int) (poly.getMaxY() - (bot * h)),
+				(int) (poly.getMinX() + (left * w)),
+				(int) (poly.getMaxX() - (right * w)));
+	}
+
+	/**
+	 * Helper method to clip a row or column index to the image.
+	 *
+	 * @param v
+	 *            The index to clip.
+	 * @param max
+	 *            Maximum value permitted (number of rows or columns).
+	 * @return v clipped to the range of [0, max].
+	 */
+	private static int clip(int v, int max) {
+		return (v < 0) ? 0 : ((v > max) ? max : v);
+	}
+}
@@ -0,0 +1,129 @@
+package com.techhounds.imgcv.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size histogram of durations which can report percentiles (like the
+ * median or 99th percentile frame time) without keeping every sample.
+ *
+ * <p>
+ * Values are recorded in microseconds into log-linear buckets: exact below 64
+ * microseconds, then 32 buckets per power of two, so a percentile is never off
+ * by more than about 3%. Recording is a single atomic increment (no locks, no
+ * allocation), so one thread can record while another reads.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+	/** Bits of precision per power of two. */
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/** Enough buckets to hold values up to Integer.MAX_VALUE microseconds. */
+	private static final int BUCKETS = bucketOf(Integer.MAX_VALUE) + 1;
+
+	private final AtomicLongArray _Counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray _Totals = new AtomicLongArray(3); // count, sum, max (microseconds)
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 *            Duration in nanoseconds (negative values are ignored).
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+		long micros = Math.min(nanos / 1000, Integer.MAX_VALUE);
+		_Counts.incrementAndGet(bucketOf(micros));
+		_Totals.incrementAndGet(0);
+		_Totals.addAndGet(1, micros);
+		long max;
+		while (micros > (max = _Totals.get(2)) && !_Totals.compareAndSet(2, max, micros)) {
+		}
+	}
+
+	/** @return Number of durations recorded. */
+	public long getCount() {
+		return _Totals.get(0);
+	}
+
+	/** @return Average duration in microseconds (0 if nothing recorded). */
+	public long getMean() {
+		long n = getCount();
+		return (n > 0) ? _Totals.get(1) / n : 0;
+	}
+
+	/** @return Largest duration recorded in microseconds. */
+	public long getMax() {
+		return _Totals.get(2);
+	}
+
+	/**
+	 * Returns the duration that a percentage of the recorded values were at or
+	 * below.
+	 *
+	 * @param pct
+	 *            Percentile in range of (0, 100] (like 50 or 99).
+	 * @return Duration in microseconds (upper edge of bucket, never more than
+	 *         {@link #getMax()}), 0 if nothing recorded.
+	 */
+	public long getPercentile(double pct) {
+		long n = getCount();
+		if (n == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(n * pct / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += _Counts.get(i);
+			if (seen >= target) {
+				return Math.min(bucketUpper(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears all recorded values (not atomic with respect to concurrent
+	 * {@link #record(long)} calls).
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			_Counts.set(i, 0);
+		}
+		for (int i = 0; i < 3; i++) {
+			_Totals.set(i, 0);
+		}
+	}
+
+	/**
+	 * Returns a short string with the median, 99th percentile and max.
+	 *
+	 * @return String like "p50 4.21 p99 9.87 max 12.40 ms".
+	 */
+	public String toString() {
+		return String.format("p50 %.2f p99 %.2f max %.2f ms", getPercentile(50) / 1e3, getPercentile(99) / 1e3,
+				getMax() / 1e3);
+	}
+
+	/** Maps a value to its bucket. */
+	private static int bucketOf(long micros) {
+		if (micros < 2 * SUB_COUNT) {
+			return (int) micros;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+		return shift * SUB_COUNT + (int) (micros >> shift);
+	}
+
+	/** Largest value that maps to a bucket. */
+	private static long bucketUpper(int bucket) {
+		if (bucket < 2 * SUB_COUNT) {
+			return bucket;
+		}
+		int shift = bucket / SUB_COUNT - 1;
+		long sub = bucket % SUB_COUNT + SUB_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+}
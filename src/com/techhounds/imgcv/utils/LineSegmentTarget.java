@@ -116,6 +116,8 @@ public class LineSegmentTarget {
 		_WidthPx = widthPx;
 		_Pt0 = new Point3();
 		_Pt1 = new Point3();
+		_Pt0Px = new Point();
+		_Pt1Px = new Point();
 		setTargetCoordinates(ax, ay, bx, by);
 	}
 
@@ -141,11 +143,15 @@ public class LineSegmentTarget {
 			double by) {
 		// Y pixels are from top of screen, force _Pt0Px to be below _Pt1Px
 		if (ay > by) {
-			_Pt0Px = new Point(ax, ay);
-			_Pt1Px = new Point(bx, by);
+			_Pt0Px.x = ax;
+			_Pt0Px.y = ay;
+			_Pt1Px.x = bx;
+			_Pt1Px.y = by;
 		} else {
-			_Pt1Px = new Point(ax, ay);
-			_Pt0Px = new Point(bx, by);
+			_Pt1Px.x = ax;
+			_Pt1Px.y = ay;
+			_Pt0Px.x = bx;
+			_Pt0Px.y = by;
 		}
 
 		return compute();
@@ -251,7 +257,29 @@ public class LineSegmentTarget {
 	 *         camera).
 	 */
 	public Point3 getPointMid() {
-		return new Point3((_Pt0.x + _Pt1.x) / 2, (_Pt0.y + _Pt1.y) / 2, (_Pt0.z + _Pt1.z) / 2);
+		return getPointMid(new Point3());
+	}
+
+	/**
+	 * Stores the real world coordinates of the mid point of the target line
+	 * segment into an existing point (avoids allocating a new object on each
+	 * frame).
+	 * 
+	 * <p>
+	 * NOTE: This is only valid if {@link #hasSolution()} indicates that a
+	 * solution is available.
+	 * </p>
+	 * 
+	 * @param dest
+	 *            Where to store the (x, y, z) coordinates (see
+	 *            {@link #getPointMid()}).
+	 * @return The dest object passed in.
+	 */
+	public Point3 getPointMid(Point3 dest) {
+		dest.x = (_Pt0.x + _Pt1.x) / 2;
+		dest.y = (_Pt0.y + _Pt1.y) / 2;
+		dest.z = (_Pt0.z + _Pt1.z) / 2;
+		return dest;
 	}
 
 	/**
@@ -315,9 +343,10 @@ public class LineSegmentTarget {
 		double h = _TargetSize / _TargetSizePx * heightPx;
 		double h2 = h / 2;
 
-		// Compute real world distance and reset FOV calculator
+		// Compute real world distance and update FOV calculator (FOV and
+		// pixels don't change, so no need to construct a new one)
 		double dist = h2 / _Calc.getTanFov2();
-		_Calc = new FovCalculator(_Calc.getFovDeg(), heightPx, dist);
+		_Calc.setDistance(dist);
 		_Pt0.x = _Calc.pixelFromCenterToLength(_Pt0Px.x - widthPx2);
 		_Pt0.y = dist;
 		_Pt0.z = _Calc.pixelFromCenterToLength(heightPx2 - _Pt0Px.y);
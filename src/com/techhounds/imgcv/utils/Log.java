@@ -0,0 +1,417 @@
+package com.techhounds.imgcv.utils;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Leveled logger that keeps console output off the vision thread.
+ *
+ * <p>
+ * Log calls copy their arguments (a message, up to two named numbers and an
+ * optional object) into a pre-allocated slot of a ring buffer and return. A
+ * background thread formats the entries and writes them to the console. If
+ * the ring fills up (console can't keep up) messages are dropped and counted
+ * rather than slowing down processing. To keep call sites allocation free,
+ * pass numbers as key/value pairs instead of building strings:
+ * </p>
+ *
+ * <pre>
+ * private static final Log LOG = Log.getLog("TargetFilter");
+ * ...
+ * LOG.debug("Angle", offsetXDegrees, "Distance", baseDistanceInches);
+ * </pre>
+ *
+ * <p>
+ * Per frame details should be logged at {@link Level#DEBUG} or
+ * {@link Level#TRACE}. When a sample interval is set (see
+ * {@link #setSampleInterval(int)}) those levels are only written for every
+ * Nth frame (see {@link #setFrame(long)}), {@link Level#INFO} and above are
+ * always written.
+ * </p>
+ *
+ * <p>
+ * The initial level and sample interval can be set via the imgcv.log.level
+ * (TRACE, DEBUG, INFO, WARN, ERROR or OFF - default INFO) and
+ * imgcv.log.sample (default 1) system properties.
+ * </p>
+ */
+public final class Log {
+
+	/** Message levels (least to most important). */
+	public enum Level {
+		TRACE, DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	/** Loggers created so far (by name). */
+	private static final Map<String, Log> LOGS = new HashMap<String, Log>();
+
+	/** Background writer shared by all loggers. */
+	private static final Appender APPENDER = new Appender(1024);
+
+	/** Lowest level written. */
+	private static volatile int _Threshold = parseLevel(System.getProperty("imgcv.log.level"), Level.INFO).ordinal();
+
+	/** Write DEBUG/TRACE only every this many frames. */
+	private static volatile int _SampleInterval = Math.max(1, Integer.getInteger("imgcv.log.sample", 1));
+
+	/** Current frame number (from vision thread). */
+	private static volatile long _Frame = 0;
+
+	/** Will be true if DEBUG/TRACE messages should be written for the current frame. */
+	private static volatile boolean _Sampled = true;
+
+	/** Name shown with each message. */
+	private final String _Name;
+
+	private Log(String name) {
+		_Name = name;
+	}
+
+	/**
+	 * Returns the logger for a name (created on first use).
+	 *
+	 * @param name
+	 *            Name to show with messages (typically the class name).
+	 * @return Logger (the same instance for the same name).
+	 */
+	public static Log getLog(String name) {
+		synchronized (LOGS) {
+			Log log = LOGS.get(name);
+			if (log == null) {
+				log = new Log(name);
+				LOGS.put(name, log);
+			}
+			return log;
+		}
+	}
+
+	/**
+	 * Sets the lowest level of message written.
+	 *
+	 * @param level
+	 *            Level to set ({@link Level#OFF} to disable all output).
+	 */
+	public static void setLevel(Level level) {
+		_Threshold = level.ordinal();
+	}
+
+	/** @return Lowest level of message written. */
+	public static Level getLevel() {
+		return Level.values()[_Threshold];
+	}
+
+	/**
+	 * Sets how often per frame (DEBUG and TRACE) messages are written.
+	 *
+	 * @param frames
+	 *            1 to write every frame, N to write every Nth frame.
+	 */
+	public static void setSampleInterval(int frames) {
+		_SampleInterval = Math.max(1, frames);
+		_Sampled = (_Frame % _SampleInterval) == 0;
+	}
+
+	/**
+	 * Called by the vision code at the start of each frame (frame number is
+	 * included in messages and drives sampling).
+	 *
+	 * @param frame
+	 *            Frame number.
+	 */
+	public static void setFrame(long frame) {
+		_Frame = frame;
+		_Sampled = (frame % _SampleInterval) == 0;
+	}
+
+	/**
+	 * Sets where messages are written.
+	 *
+	 * @param out
+	 *            Stream to write to (null for whatever {@link System#out} is at
+	 *            the time of writing).
+	 */
+	public static void setOutput(PrintStream out) {
+		APPENDER._Out = out;
+	}
+
+	/** @return Number of messages dropped because the ring buffer was full. */
+	public static long getDroppedCount() {
+		return APPENDER._Dropped.get();
+	}
+
+	/**
+	 * Waits (up to a second) for queued messages to be written (useful before
+	 * a tool exits or prints results).
+	 */
+	public static void flush() {
+		APPENDER.drainWait(1000);
+	}
+
+	/**
+	 * Indicates whether messages of a level would be written right now (use to
+	 * skip expensive work done only for logging).
+	 *
+	 * @param level
+	 *            Level to check.
+	 * @return true if messages at this level are being written.
+	 */
+	public boolean isEnabled(Level level) {
+		int ord = level.ordinal();
+		return (ord >= _Threshold) && (ord >= Level.INFO.ordinal() || _Sampled) && (level != Level.OFF);
+	}
+
+	/** @return true if DEBUG messages are written for the current frame. */
+	public boolean isDebugEnabled() {
+		return isEnabled(Level.DEBUG);
+	}
+
+	/** Queues a TRACE message with a named value. */
+	public void trace(String msg, String key, double value) {
+		log(Level.TRACE, msg, key, value, null, 0, null);
+	}
+
+	/** Queues a DEBUG message. */
+	public void debug(String msg) {
+		log(Level.DEBUG, msg, null, 0, null, 0, null);
+	}
+
+	/** Queues a DEBUG named value. */
+	public void debug(String key, double value) {
+		log(Level.DEBUG, null, key, value, null, 0, null);
+	}
+
+	/** Queues a pair of DEBUG named values. */
+	public void debug(String key1, double value1, String key2, double value2) {
+		log(Level.DEBUG, null, key1, value1, key2, value2, null);
+	}
+
+	/** Queues a DEBUG message with a pair of named values. */
+	public void debug(String msg, String key1, double value1, String key2, double value2) {
+		log(Level.DEBUG, msg, key1, value1, key2, value2, null);
+	}
+
+	/** Queues an INFO message. */
+	public void info(String msg) {
+		log(Level.INFO, msg, null, 0, null, 0, null);
+	}
+
+	/** Queues an INFO message followed by an object (converted to a string later). */
+	public void info(String msg, Object detail) {
+		log(Level.INFO, msg, null, 0, null, 0, detail);
+	}
+
+	/** Queues an INFO message with a named value. */
+	public void info(String msg, String key, double value) {
+		log(Level.INFO, msg, key, value, null, 0, null);
+	}
+
+	/** Queues an INFO message with a pair of named values. */
+	public void info(String msg, String key1, double value1, String key2, double value2) {
+		log(Level.INFO, msg, key1, value1, key2, value2, null);
+	}
+
+	/** Queues a WARN message. */
+	public void warn(String msg) {
+		log(Level.WARN, msg, null, 0, null, 0, null);
+	}
+
+	/** Queues a WARN message followed by an object (typically an exception). */
+	public void warn(String msg, Object detail) {
+		log(Level.WARN, msg, null, 0, null, 0, detail);
+	}
+
+	/** Queues an ERROR message followed by an object (typically an exception). */
+	public void error(String msg, Object detail) {
+		log(Level.ERROR, msg, null, 0, null, 0, detail);
+	}
+
+	/**
+	 * Queues a message (if enabled).
+	 *
+	 * @param level
+	 *            Level of message.
+	 * @param msg
+	 *            Message text (may be null).
+	 * @param key1
+	 *            Name of first value (null if no values).
+	 * @param value1
+	 *            First value.
+	 * @param key2
+	 *            Name of second value (null if only one value).
+	 * @param value2
+	 *            Second value.
+	 * @param detail
+	 *            Extra object (exception, etc) converted to a string by the
+	 *            writer thread (may be null).
+	 */
+	public void log(Level level, String msg, String key1, double value1, String key2, double value2,
+			Object detail) {
+		if (isEnabled(level)) {
+			APPENDER.append(this, level, msg, key1, value1, key2, value2, detail);
+		}
+	}
+
+	/** Parses level name, returns default if null or not valid. */
+	private static Level parseLevel(String name, Level def) {
+		if (name != null) {
+			try {
+				return Level.valueOf(name.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid log level: " + name);
+			}
+		}
+		return def;
+	}
+
+	/** A slot in the ring buffer. */
+	private static final class Entry {
+		/** Set to (sequence + 1) once the entry is filled in (published). */
+		volatile long _Seq;
+		Log _Log;
+		Level _Level;
+		long _Frame;
+		long _Nanos;
+		String _Msg;
+		String _Key1;
+		double _Value1;
+		String _Key2;
+		double _Value2;
+		Object _Detail;
+	}
+
+	/**
+	 * Multiple producer, single consumer ring buffer with a background thread
+	 * that formats and writes the entries.
+	 */
+	private static final class Appender implements Runnable {
+		private final Entry[] _Ring;
+		private final int _Mask;
+		private final AtomicLong _Head = new AtomicLong();
+		private volatile long _Tail = 0;
+		private final AtomicLong _Dropped = new AtomicLong();
+		private long _DroppedReported = 0;
+		private volatile PrintStream _Out = null;
+		private final long _StartNanos = System.nanoTime();
+		private final StringBuilder _Line = new StringBuilder(160);
+		private final Thread _Thread;
+
+		Appender(int capacity) {
+			_Ring = new Entry[capacity];
+			for (int i = 0; i < capacity; i++) {
+				_Ring[i] = new Entry();
+			}
+			_Mask = capacity - 1;
+			_Thread = new Thread(this, "LogWriter");
+			_Thread.setDaemon(true);
+			_Thread.start();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					drainWait(500);
+				}
+			});
+		}
+
+		void append(Log log, Level level, String msg, String key1, double value1, String key2, double value2,
+				Object detail) {
+			long seq;
+			do {
+				seq = _Head.get();
+				if (seq - _Tail >= _Ring.length) {
+					_Dropped.incrementAndGet();
+					return;
+				}
+			} while (!_Head.compareAndSet(seq, seq + 1));
+
+			Entry e = _Ring[(int) (seq & _Mask)];
+			e._Log = log;
+			e._Level = level;
+			e._Frame = _Frame;
+			e._Nanos = System.nanoTime();
+			e._Msg = msg;
+			e._Key1 = key1;
+			e._Value1 = value1;
+			e._Key2 = key2;
+			e._Value2 = value2;
+			e._Detail = detail;
+			e._Seq = seq + 1;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				if (!drain()) {
+					LockSupport.parkNanos(2000000);
+				}
+			}
+		}
+
+		/** Writes all published entries, returns false if there were none. */
+		synchronized boolean drain() {
+			boolean wrote = false;
+			PrintStream out = (_Out != null) ? _Out : System.out;
+			long tail = _Tail;
+			while (true) {
+				Entry e = _Ring[(int) (tail & _Mask)];
+				if (e._Seq != tail + 1) {
+					break;
+				}
+				format(e);
+				e._Log = null;
+				e._Msg = null;
+				e._Detail = null;
+				_Tail = ++tail;
+				out.println(_Line);
+				wrote = true;
+			}
+			long dropped = _Dropped.get();
+			if (dropped != _DroppedReported) {
+				out.println("WARN  Log: dropped " + (dropped - _DroppedReported) + " messages");
+				_DroppedReported = dropped;
+				wrote = true;
+			}
+			return wrote;
+		}
+
+		void drainWait(long maxMillis) {
+			long end = System.currentTimeMillis() + maxMillis;
+			while (true) {
+				drain();
+				if (_Tail == _Head.get() || System.currentTimeMillis() >= end) {
+					return;
+				}
+				LockSupport.parkNanos(1000000);
+			}
+		}
+
+		private void format(Entry e) {
+			StringBuilder sb = _Line;
+			sb.setLength(0);
+			long micros = (e._Nanos - _StartNanos) / 1000;
+			sb.append(micros / 1000000).append('.');
+			String frac = Long.toString(1000000 + (micros % 1000000));
+			sb.append(frac, 1, 7).append(' ');
+			String lvl = e._Level.name();
+			sb.append(lvl);
+			for (int i = lvl.length(); i < 6; i++) {
+				sb.append(' ');
+			}
+			sb.append(e._Log._Name).append(" frame=").append(e._Frame);
+			if (e._Msg != null) {
+				sb.append(' ').append(e._Msg);
+			}
+			if (e._Key1 != null) {
+				sb.append(' ').append(e._Key1).append('=').append(e._Value1);
+			}
+			if (e._Key2 != null) {
+				sb.append(' ').append(e._Key2).append('=').append(e._Value2);
+			}
+			if (e._Detail != null) {
+				sb.append(' ').append(e._Detail);
+			}
+		}
+	}
+}
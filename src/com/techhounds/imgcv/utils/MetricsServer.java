@@ -0,0 +1,112 @@
+package com.techhounds.imgcv.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tiny HTTP server that lets you (or a metrics collector) look at performance
+ * numbers while the vision code is running:
+ *
+ * <pre>
+ * curl http://localhost:5801/metrics
+ * </pre>
+ *
+ * <p>
+ * Only listens on the loopback interface and does all of its work on its own
+ * thread (values are read from the sources when a request comes in).
+ * </p>
+ */
+public final class MetricsServer {
+
+	/** Default port (FRC allows teams to use 5800-5810). */
+	public static final int DEFAULT_PORT = 5801;
+
+	/** Something that can write metrics. */
+	public interface Source {
+		/**
+		 * Appends metric lines ("name{labels} value", one per line).
+		 *
+		 * @param sb
+		 *            Where to append the lines.
+		 */
+		void writeMetrics(StringBuilder sb);
+	}
+
+	private final HttpServer _Server;
+	private final CopyOnWriteArrayList<Source> _Sources = new CopyOnWriteArrayList<Source>();
+
+	/**
+	 * Creates and starts a server on the loopback interface.
+	 *
+	 * @param port
+	 *            Port to listen on (0 to pick any free port).
+	 * @throws IOException
+	 *             If unable to bind to the port.
+	 */
+	public MetricsServer(int port) throws IOException {
+		_Server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		_Server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				StringBuilder sb = new StringBuilder();
+				for (Source src : _Sources) {
+					src.writeMetrics(sb);
+				}
+				byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		_Server.start();
+	}
+
+	/**
+	 * Adds something to report on.
+	 *
+	 * @param src
+	 *            Source of metrics.
+	 */
+	public void addSource(Source src) {
+		_Sources.add(src);
+	}
+
+	/** @return Port being listened on. */
+	public int getPort() {
+		return _Server.getAddress().getPort();
+	}
+
+	/** Stops the server. */
+	public void stop() {
+		_Server.stop(0);
+	}
+
+	/**
+	 * Starts a server on the {@link #DEFAULT_PORT} reporting on a source,
+	 * logging (instead of throwing) if the port is not available.
+	 *
+	 * @param src
+	 *            Source of metrics.
+	 * @return Server started (or null if it could not be started).
+	 */
+	public static MetricsServer startDefault(Source src) {
+		try {
+			MetricsServer server = new MetricsServer(DEFAULT_PORT);
+			server.addSource(src);
+			return server;
+		} catch (IOException e) {
+			Log.getLog("MetricsServer").warn("Unable to start metrics server on port " + DEFAULT_PORT, e);
+			return null;
+		}
+	}
+}
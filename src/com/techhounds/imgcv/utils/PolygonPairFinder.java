@@ -0,0 +1,227 @@
+package com.techhounds.imgcv.utils;
+
+import java.util.Arrays;
+
+import com.techhounds.imgcv.PolygonCv;
+
+/**
+ * Finds pairs of related polygons (one nested inside the other, or two sitting
+ * side by side) without comparing every polygon against every other polygon.
+ *
+ * <p>
+ * The bounding boxes are sorted by their minimum X value and swept from left to
+ * right while keeping a list of "active" boxes that still overlap the sweep
+ * position. Only boxes that are active at the same time can be related, so the
+ * work is O(n log n) plus the number of overlapping boxes instead of O(n^2).
+ * </p>
+ *
+ * <p>
+ * Each polygon is used in at most one pair. When a polygon could be paired with
+ * several others, pairs are handed out in the same order as the classic nested
+ * loop (for each i, for each earlier j), so filters that switch to this class
+ * get the same first choices as before.
+ * </p>
+ *
+ * <p>
+ * NOTE: Instances reuse their internal buffers and are not thread safe.
+ * </p>
+ */
+public class PolygonPairFinder {
+
+	/** Sort keys (minX bits and index) of polygons being swept. */
+	private long[] _Order = new long[64];
+
+	/** Indexes of polygons overlapping the current sweep position. */
+	private int[] _Active = new int[64];
+
+	/** Candidate pairs found during sweep (packed later and earlier index). */
+	private long[] _Candidates = new long[64];
+
+	/** Flags indicating which polygons have been paired. */
+	private boolean[] _Used = new boolean[64];
+
+	/** Later index (in original array) of each pair found. */
+	private int[] _First = new int[32];
+
+	/** Earlier index (in original array) of each pair found. */
+	private int[] _Second = new int[32];
+
+	/** Number of pairs found by last search. */
+	private int _Count;
+
+	/**
+	 * Finds pairs of polygons where the bounding box of one contains the
+	 * bounding box of the other (see {@link PolygonCv#contains(PolygonCv)}).
+	 *
+	 * @param polys
+	 *            Array of polygons to search (null entries are ignored).
+	 * @param n
+	 *            Number of entries in the array to search.
+	 * @return Number of pairs found (use {@link #getFirst(int)} and
+	 *         {@link #getSecond(int)} to get the indexes of each pair).
+	 */
+	public int findNestedPairs(PolygonCv[] polys, int n) {
+		return findPairs(polys, n, true, 0, 0);
+	}
+
+	/**
+	 * Finds pairs of polygons which sit side by side (bounding boxes are
+	 * separated horizontally by a small gap and share a good portion of their
+	 * vertical extent), like the two strips of tape making up many targets.
+	 *
+	 * @param polys
+	 *            Array of polygons to search (null entries are ignored).
+	 * @param n
+	 *            Number of entries in the array to search.
+	 * @param maxGap
+	 *            Maximum horizontal distance (in pixels) permitted between the
+	 *            two bounding boxes (0 if they must touch).
+	 * @param minOverlap
+	 *            Minimum vertical overlap as a ratio of the shorter box's
+	 *            height in the range of [0, 1.0].
+	 * @return Number of pairs found (use {@link #getFirst(int)} and
+	 *         {@link #getSecond(int)} to get the indexes of each pair).
+	 */
+	public int findAdjacentPairs(PolygonCv[] polys, int n, double maxGap,
+			double minOverlap) {
+		return findPairs(polys, n, false, maxGap, minOverlap);
+	}
+
+	/**
+	 * Returns the number of pairs found by the last search.
+	 *
+	 * @return Pair count.
+	 */
+	public int getCount() {
+		return _Count;
+	}
+
+	/**
+	 * Returns the index of the later polygon (higher index) in a pair.
+	 *
+	 * @param pair
+	 *            Pair number in the range of [0, {@link #getCount()} - 1].
+	 * @return Index into the array that was searched.
+	 */
+	public int getFirst(int pair) {
+		return _First[pair];
+	}
+
+	/**
+	 * Returns the index of the earlier polygon (lower index) in a pair.
+	 *
+	 * @param pair
+	 *            Pair number in the range of [0, {@link #getCount()} - 1].
+	 * @return Index into the array that was searched.
+	 */
+	public int getSecond(int pair) {
+		return _Second[pair];
+	}
+
+	/**
+	 * Sweep implementation shared by both types of searches.
+	 */
+	private int findPairs(PolygonCv[] polys, int n, boolean nested,
+			double maxGap, double minOverlap) {
+		_Count = 0;
+		if (_Order.length < n) {
+			int size = Math.max(n, _Order.length * 2);
+			_Order = new long[size];
+			_Active = new int[size];
+			_Used = new boolean[size];
+		}
+
+		// Sort polygons by left edge
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			if (polys[i] != null) {
+				_Order[m++] = (sortBits(polys[i].getMinX()) << 32) | i;
+			}
+		}
+		Arrays.sort(_Order, 0, m);
+
+		// Sweep left to right keeping boxes whose right edge (plus gap) has not
+		// been passed yet
+		int active = 0;
+		int candidates = 0;
+		for (int k = 0; k < m; k++) {
+			int i = (int) _Order[k];
+			PolygonCv pi = polys[i];
+			float left = pi.getMinX();
+
+			int keep = 0;
+			for (int a = 0; a < active; a++) {
+				int j = _Active[a];
+				PolygonCv pj = polys[j];
+				if ((pj.getMaxX() + maxGap) < left) {
+					// Swept past this box, drop it
+					continue;
+				}
+				_Active[keep++] = j;
+
+				boolean related = nested ? (pi.contains(pj) || pj.contains(pi))
+						: isAdjacent(pi, pj, maxGap, minOverlap);
+				if (related) {
+					if (candidates == _Candidates.length) {
+						_Candidates = Arrays.copyOf(_Candidates,
+								candidates * 2);
+					}
+					int hi = Math.max(i, j);
+					int lo = Math.min(i, j);
+					_Candidates[candidates++] = ((long) hi << 32) | lo;
+				}
+			}
+			_Active[keep++] = i;
+			active = keep;
+		}
+
+		// Hand out pairs in nested loop order (later index, then earlier
+		// index) using each polygon at most once
+		Arrays.sort(_Candidates, 0, candidates);
+		Arrays.fill(_Used, 0, n, false);
+		for (int c = 0; c < candidates; c++) {
+			int hi = (int) (_Candidates[c] >>> 32);
+			int lo = (int) _Candidates[c];
+			if (_Used[hi] || _Used[lo]) {
+				continue;
+			}
+			_Used[hi] = _Used[lo] = true;
+			if (_Count == _First.length) {
+				_First = Arrays.copyOf(_First, _Count * 2);
+				_Second = Arrays.copyOf(_Second, _Count * 2);
+			}
+			_First[_Count] = hi;
+			_Second[_Count] = lo;
+			_Count++;
+		}
+
+		return _Count;
+	}
+
+	/**
+	 * Determines if two bounding boxes sit side by side.
+	 */
+	private static boolean isAdjacent(PolygonCv a, PolygonCv b, double maxGap,
+			double minOverlap) {
+		double gap = Math.max(a.getMinX(), b.getMinX())
+				- Math.min(a.getMaxX(), b.getMaxX());
+		if (gap < 0 || gap > maxGap) {
+			// Overlapping horizontally (not side by side) or too far apart
+			return false;
+		}
+		double overlap = Math.min(a.getMaxY(), b.getMaxY())
+				- Math.max(a.getMinY(), b.getMinY());
+		double shorter = Math.min(a.getHeight(), b.getHeight());
+		return (overlap > 0) && (overlap >= minOverlap * shorter);
+	}
+
+	/**
+	 * Converts a float to an unsigned 32 bit value which sorts in the same
+	 * order as the float.
+	 */
+	private static long sortBits(float v) {
+		int bits = Float.floatToIntBits(v);
+		bits ^= (bits >> 31) & 0x7fffffff;
+		return (bits ^ 0x80000000) & 0xffffffffL;
+	}
+}
@@ -96,6 +96,12 @@ public class RectangularTarget {
 	/** Real world 3D mid point of target relative to robot. */
 	private Point3 midPtToRobot;
 
+	/** Real world 3D mid point of left edge of target relative to camera. */
+	private Point3 leftMidPt;
+
+	/** Real world 3D mid point of right edge of target relative to camera. */
+	private Point3 rightMidPt;
+
 	/** How far robot should be rotated. */
 	private double rotateRobot;
 
@@ -191,6 +197,8 @@ public class RectangularTarget {
 		// 3D coordinates of the middle of the target
 		midPtToCamera = new Point3();
 		midPtToRobot = new Point3();
+		leftMidPt = new Point3();
+		rightMidPt = new Point3();
 
 		lineSegmentTool = new LineSegmentTarget(fov, imageWidth, imageHeight,
 				targetHeight);
@@ -290,6 +298,10 @@ public class RectangularTarget {
 	 *            Height in pixels in images produced by camera.
 	 */
 	public void setImageSize(double widthPx, double heightPx) {
+		if ((widthPx == imageWidthPx) && (heightPx == imageHeightPx)) {
+			// Typically called on every frame, don't rebuild if unchanged
+			return;
+		}
 		imageWidthPx = widthPx;
 		imageHeightPx = heightPx;
 		resetLineSegmentTool();
@@ -411,6 +423,8 @@ public class RectangularTarget {
 	 * @return true if we found a reasonable solution.
 	 */
 	public boolean computeSolution(PolygonCv poly) {
+		// Don't leave solution from a previous polygon around
+		hasSolution = false;
 
 		if (poly.findLeftEdge(leftBot, leftTop, vertLineTolerance)
 				&& poly.findRightEdge(rightBot, rightTop, vertLineTolerance)) {
@@ -428,7 +442,7 @@ public class RectangularTarget {
 				// Have a solution, compute the real world 3D coordinates for
 				// the mid point of target
 				// (both for camera and for rotation point of robot)
-				midPtToCamera = lineSegmentTool.getPointMid();
+				lineSegmentTool.getPointMid(midPtToCamera);
 				midPtToRobot.x = midPtToCamera.x + cameraLoc.x;
 				midPtToRobot.y = midPtToCamera.y + cameraLoc.y;
 				midPtToRobot.z = midPtToCamera.z + cameraLoc.z;
@@ -454,10 +468,10 @@ public class RectangularTarget {
 				// alpha = 90 - arcsin(w / l1 * sin(phi1 - phi0)) - phi0 - phi1
 				lineSegmentTool.setTargetCoordinates(leftBot.x, leftBot.y,
 						leftTop.x, leftTop.y);
-				Point3 p0 = lineSegmentTool.getPointMid();
+				Point3 p0 = lineSegmentTool.getPointMid(leftMidPt);
 				lineSegmentTool.setTargetCoordinates(rightBot.x, rightBot.y,
 						rightTop.x, rightTop.y);
-				Point3 p1 = lineSegmentTool.getPointMid();
+				Point3 p1 = lineSegmentTool.getPointMid(rightMidPt);
 
 				double dx = p1.x - p0.x;
 				double dy = p1.y - p0.y;
@@ -475,6 +489,76 @@ public class RectangularTarget {
 		return hasSolution;
 	}
 
+	/**
+	 * Attempt to compute a solution for a given polygon and store the results
+	 * in a caller supplied structure (no objects are allocated).
+	 * 
+	 * @param poly
+	 *            The polygon to compute the solution for.
+	 * @param dest
+	 *            Where to store the solution.
+	 * @return true if we found a reasonable solution.
+	 */
+	public boolean computeSolution(PolygonCv poly, TargetPose dest) {
+		computeSolution(poly);
+		getSolution(dest);
+		return dest.hasSolution;
+	}
+
+	/**
+	 * Computes solutions for a batch of candidate polygons in one call.
+	 * 
+	 * <p>
+	 * NOTE: When this returns, the draw methods and {@link #toString()} will
+	 * reflect the last polygon in the batch.
+	 * </p>
+	 * 
+	 * @param polys
+	 *            Array of candidate polygons (null entries are skipped).
+	 * @param n
+	 *            Number of polygons in the array to solve.
+	 * @param dest
+	 *            Array of at least n poses (see
+	 *            {@link TargetPose#createArray(int)}), dest[i] is filled in
+	 *            with the solution for polys[i].
+	 * @return Number of polygons a solution was found for.
+	 */
+	public int computeSolutions(PolygonCv[] polys, int n, TargetPose[] dest) {
+		int solved = 0;
+		for (int i = 0; i < n; i++) {
+			if (polys[i] == null) {
+				dest[i].hasSolution = false;
+			} else if (computeSolution(polys[i], dest[i])) {
+				solved++;
+			}
+		}
+		return solved;
+	}
+
+	/**
+	 * Copies the current solution into a caller supplied structure.
+	 * 
+	 * @param dest
+	 *            Where to store the solution (only hasSolution is set if there
+	 *            is no solution).
+	 */
+	public void getSolution(TargetPose dest) {
+		dest.hasSolution = hasSolution;
+		if (hasSolution) {
+			dest.cameraX = midPtToCamera.x;
+			dest.cameraY = midPtToCamera.y;
+			dest.cameraZ = midPtToCamera.z;
+			dest.cameraDist = cameraDist;
+			dest.rotateCamera = rotateCamera;
+			dest.robotX = midPtToRobot.x;
+			dest.robotY = midPtToRobot.y;
+			dest.robotZ = midPtToRobot.z;
+			dest.robotDist = robotDist;
+			dest.rotateRobot = rotateRobot;
+			dest.wallAngle = wallAngle;
+		}
+	}
+
 	/**
 	 * Draws 3 vertical lines on image (left, middle and right) if we have a
 	 * solution.
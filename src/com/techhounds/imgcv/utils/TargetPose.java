@@ -0,0 +1,93 @@
+package com.techhounds.imgcv.utils;
+
+/**
+ * Simple structure holding the solution {@link RectangularTarget} computes for
+ * a single target.
+ *
+ * <p>
+ * Like the OpenCV {@link org.opencv.core.Point3} class, the values are exposed
+ * as public fields. Allocate these once and pass them to
+ * {@link RectangularTarget#computeSolution(com.techhounds.imgcv.PolygonCv, TargetPose)}
+ * or
+ * {@link RectangularTarget#computeSolutions(com.techhounds.imgcv.PolygonCv[], int, TargetPose[])}
+ * on each frame so no objects need to be allocated while solving.
+ * </p>
+ *
+ * <p>
+ * Coordinates are in real world units where positive x is out the right side
+ * of the camera, positive y is out the front of the camera and positive z is
+ * up.
+ * </p>
+ */
+public class TargetPose {
+
+	/** Will be true if a solution was found (other fields invalid if false). */
+	public boolean hasSolution;
+
+	/** X coordinate of mid point of target relative to camera. */
+	public double cameraX;
+	/** Y coordinate of mid point of target relative to camera. */
+	public double cameraY;
+	/** Z coordinate of mid point of target relative to camera. */
+	public double cameraZ;
+
+	/** Horizontal distance from camera to mid point of target. */
+	public double cameraDist;
+	/** How much camera needs to rotate (degrees) to center target. */
+	public double rotateCamera;
+
+	/** X coordinate of mid point of target relative to robot. */
+	public double robotX;
+	/** Y coordinate of mid point of target relative to robot. */
+	public double robotY;
+	/** Z coordinate of mid point of target relative to robot. */
+	public double robotZ;
+
+	/** Horizontal distance from robot center of rotation to target. */
+	public double robotDist;
+	/** How much robot needs to rotate (degrees) to center target. */
+	public double rotateRobot;
+
+	/** Estimated angle of wall to camera (degrees, 0 if facing wall). */
+	public double wallAngle;
+
+	/**
+	 * Allocates an array of poses (helper for setting up
+	 * {@link RectangularTarget#computeSolutions(com.techhounds.imgcv.PolygonCv[], int, TargetPose[])}
+	 * ).
+	 *
+	 * @param n
+	 *            Number of poses to allocate.
+	 * @return Array filled with new poses.
+	 */
+	public static TargetPose[] createArray(int n) {
+		TargetPose[] poses = new TargetPose[n];
+		for (int i = 0; i < n; i++) {
+			poses[i] = new TargetPose();
+		}
+		return poses;
+	}
+
+	/**
+	 * Returns a JSON looking string (same fields as
+	 * {@link RectangularTarget#toString()}).
+	 *
+	 * @return String with diagnostic values.
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{ \"hasSolution\":");
+		sb.append(hasSolution);
+		if (hasSolution) {
+			sb.append(", \"botCentDist\":").append(robotDist);
+			sb.append(", \"botRot\":").append(rotateRobot);
+			sb.append(", \"midPtFromBot\":[").append(robotX).append(", ")
+					.append(robotY).append(", ").append(robotZ).append(']');
+			sb.append(", \"camCentDist\":").append(cameraDist);
+			sb.append(", \"camRot\":").append(rotateCamera);
+			sb.append(", \"midPtFromCam\":[").append(cameraX).append(", ")
+					.append(cameraY).append(", ").append(cameraZ).append(']');
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,337 @@
+package com.techhounds.imgcv.utils;
+
+import org.opencv.core.Rect;
+
+import com.techhounds.imgcv.PolygonCv;
+
+/**
+ * Tracks a single target from frame to frame so a filter can avoid running a
+ * full detection pass on every image.
+ *
+ * <p>
+ * The center, size and angle of the target are smoothed with
+ * {@link AlphaBetaFilter} objects. Between full detections a filter can ask for
+ * a {@link #getSearchWindow(int, int)} around where the target is expected to
+ * be and only look for the target in that region. Full detection is requested
+ * when the track is lost or after a configurable number of frames.
+ * </p>
+ *
+ * <p>
+ * Typical usage per frame:
+ * </p>
+ *
+ * <pre>
+ * tracker.predict(System.nanoTime());
+ * boolean full = tracker.needsFullDetection();
+ * // ... look for target (in entire image or search window) ...
+ * if (found != null &amp;&amp; (full || tracker.accepts(found))) {
+ * 	tracker.update(found, angle, full);
+ * } else {
+ * 	tracker.miss(full);
+ * }
+ * </pre>
+ */
+public class TargetTracker {
+
+	/** Smoothed X coordinate of center of target. */
+	private final AlphaBetaFilter _CenterX;
+	/** Smoothed Y coordinate of center of target. */
+	private final AlphaBetaFilter _CenterY;
+	/** Smoothed width of target. */
+	private final AlphaBetaFilter _Width;
+	/** Smoothed height of target. */
+	private final AlphaBetaFilter _Height;
+	/** Smoothed angle to target. */
+	private final AlphaBetaFilter _Angle;
+
+	/** Will be true while we have a target locked. */
+	private boolean _Tracking;
+
+	/** Confidence in current state in range of [0, 1.0]. */
+	private double _Confidence;
+
+	/** Number of frames in a row the target was not found. */
+	private int _Misses;
+
+	/** Number of frames allowed to miss before track is dropped. */
+	private int _MaxMisses;
+
+	/** Number of frames processed since last full detection. */
+	private int _FramesSinceFull;
+
+	/** Maximum number of frames to go between full detections. */
+	private int _FullInterval;
+
+	/**
+	 * How far (as a ratio of target size) measurements may be from the
+	 * prediction and still belong to the track.
+	 */
+	private double _Gate;
+
+	/** Extra margin (ratio of target size) added around search window. */
+	private double _Margin;
+
+	/** Time of last predict call (nanoseconds). */
+	private long _LastNanos;
+
+	/** Seconds between last two predict calls. */
+	private double _Dt;
+
+	/**
+	 * Constructs a new tracker with typical settings (full detection every 10
+	 * frames, track dropped after 3 misses).
+	 */
+	public TargetTracker() {
+		this(0.5, 0.1, 10, 3);
+	}
+
+	/**
+	 * Constructs a new tracker.
+	 *
+	 * @param alpha
+	 *            Smoothing gain for values (see {@link AlphaBetaFilter}).
+	 * @param beta
+	 *            Smoothing gain for rates (see {@link AlphaBetaFilter}).
+	 * @param fullInterval
+	 *            Maximum number of frames to go between full detections (1
+	 *            to always do full detection).
+	 * @param maxMisses
+	 *            Number of frames in a row the target may be missing before
+	 *            the track is dropped.
+	 */
+	public TargetTracker(double alpha, double beta, int fullInterval,
+			int maxMisses) {
+		_CenterX = new AlphaBetaFilter(alpha, beta);
+		_CenterY = new AlphaBetaFilter(alpha, beta);
+		_Width = new AlphaBetaFilter(alpha, beta);
+		_Height = new AlphaBetaFilter(alpha, beta);
+		_Angle = new AlphaBetaFilter(alpha, beta);
+		_FullInterval = fullInterval;
+		_MaxMisses = maxMisses;
+		_Gate = 0.5;
+		_Margin = 0.5;
+		reset();
+	}
+
+	/**
+	 * Drops the current track (next frame will require full detection).
+	 */
+	public void reset() {
+		_Tracking = false;
+		_Confidence = 0;
+		_Misses = 0;
+		_FramesSinceFull = 0;
+		_LastNanos = 0;
+		_Dt = 0;
+	}
+
+	/**
+	 * Set the maximum number of frames to go between full detections.
+	 *
+	 * @param frames
+	 *            Number of frames (1 to always do full detection).
+	 */
+	public void setFullDetectionInterval(int frames) {
+		_FullInterval = frames;
+	}
+
+	/**
+	 * Set how far measurements may be from the prediction and still be
+	 * accepted, and how much room to leave around the search window.
+	 *
+	 * @param gate
+	 *            Max distance between centers as ratio of target width.
+	 * @param margin
+	 *            Extra room on each side of the search window as ratio of
+	 *            target size.
+	 */
+	public void setGate(double gate, double margin) {
+		_Gate = gate;
+		_Margin = margin;
+	}
+
+	/**
+	 * Moves the track forward to the time of a new frame (call once per
+	 * frame before checking the search window).
+	 *
+	 * @param nanos
+	 *            Time of new frame (typically {@link System#nanoTime()}).
+	 */
+	public void predict(long nanos) {
+		_Dt = (_LastNanos != 0) ? (nanos - _LastNanos) / 1e9 : 0;
+		_LastNanos = nanos;
+	}
+
+	/**
+	 * Indicates whether the entire image should be searched for this frame.
+	 *
+	 * @return true if not tracking or it is time for a periodic full
+	 *         detection.
+	 */
+	public boolean needsFullDetection() {
+		return !_Tracking || (_FramesSinceFull + 1 >= _FullInterval);
+	}
+
+	/**
+	 * Returns the region of the image where the target is expected in the
+	 * current frame.
+	 *
+	 * @param imgWidth
+	 *            Width of image in pixels.
+	 * @param imgHeight
+	 *            Height of image in pixels.
+	 * @return Region to search (clipped to image) or null if not tracking.
+	 */
+	public Rect getSearchWindow(int imgWidth, int imgHeight) {
+		if (!_Tracking) {
+			return null;
+		}
+		double w = _Width.predict(_Dt);
+		double h = _Height.predict(_Dt);
+		double pad = _Margin * Math.max(w, h);
+		int x0 = Math.max(0, (int) (_CenterX.predict(_Dt) - w / 2 - pad));
+		int y0 = Math.max(0, (int) (_CenterY.predict(_Dt) - h / 2 - pad));
+		int x1 = Math.min(imgWidth, (int) Math.ceil(_CenterX.predict(_Dt) + w / 2 + pad));
+		int y1 = Math.min(imgHeight, (int) Math.ceil(_CenterY.predict(_Dt) + h / 2 + pad));
+		if ((x1 <= x0) || (y1 <= y0)) {
+			return null;
+		}
+		return new Rect(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	/**
+	 * Checks if a target found in the image is close enough to where we
+	 * expected it to belong to the current track.
+	 *
+	 * @param target
+	 *            Target found in current image.
+	 * @return true if tracking and target is within the gate.
+	 */
+	public boolean accepts(PolygonCv target) {
+		if (!_Tracking) {
+			return false;
+		}
+		double dx = target.getCenterX() - _CenterX.predict(_Dt);
+		double dy = target.getCenterY() - _CenterY.predict(_Dt);
+		double limit = _Gate * Math.max(_Width.predict(_Dt), target.getWidth());
+		return (dx * dx + dy * dy) <= (limit * limit);
+	}
+
+	/**
+	 * Applies a new measurement of the target.
+	 *
+	 * @param target
+	 *            Target found in current image.
+	 * @param angle
+	 *            Angle to target computed for the target.
+	 * @param full
+	 *            Pass true if target came from a full detection pass.
+	 */
+	public void update(PolygonCv target, double angle, boolean full) {
+		if (!_Tracking || (full && !accepts(target))) {
+			// Start a new track (or jump to a different target found by full
+			// detection)
+			_CenterX.reset(target.getCenterX());
+			_CenterY.reset(target.getCenterY());
+			_Width.reset(target.getWidth());
+			_Height.reset(target.getHeight());
+			_Angle.reset(angle);
+			_Confidence = 0.5;
+			_Tracking = true;
+		} else {
+			_CenterX.update(target.getCenterX(), _Dt);
+			_CenterY.update(target.getCenterY(), _Dt);
+			_Width.update(target.getWidth(), _Dt);
+			_Height.update(target.getHeight(), _Dt);
+			_Angle.update(angle, _Dt);
+			_Confidence += (1.0 - _Confidence) * 0.25;
+		}
+		_Misses = 0;
+		_FramesSinceFull = full ? 0 : _FramesSinceFull + 1;
+	}
+
+	/**
+	 * Indicates that the target was not found in the current image.
+	 *
+	 * @param full
+	 *            Pass true if the entire image was searched.
+	 */
+	public void miss(boolean full) {
+		if (!_Tracking) {
+			return;
+		}
+		_CenterX.coast(_Dt);
+		_CenterY.coast(_Dt);
+		_Width.coast(_Dt);
+		_Height.coast(_Dt);
+		_Angle.coast(_Dt);
+		_Confidence *= 0.5;
+		_FramesSinceFull = full ? 0 : _FramesSinceFull + 1;
+		if (++_Misses > _MaxMisses) {
+			reset();
+		}
+	}
+
+	/**
+	 * Indicates whether a target is currently being tracked.
+	 *
+	 * @return true if tracking.
+	 */
+	public boolean isTracking() {
+		return _Tracking;
+	}
+
+	/**
+	 * Returns confidence in the current track.
+	 *
+	 * @return Value in range of [0, 1.0] (0 when not tracking).
+	 */
+	public double getConfidence() {
+		return _Confidence;
+	}
+
+	/**
+	 * Returns smoothed X coordinate of center of target.
+	 *
+	 * @return X pixel coordinate.
+	 */
+	public double getCenterX() {
+		return _CenterX.getValue();
+	}
+
+	/**
+	 * Returns smoothed Y coordinate of center of target.
+	 *
+	 * @return Y pixel coordinate.
+	 */
+	public double getCenterY() {
+		return _CenterY.getValue();
+	}
+
+	/**
+	 * Returns smoothed width of target.
+	 *
+	 * @return Width in pixels.
+	 */
+	public double getWidth() {
+		return _Width.getValue();
+	}
+
+	/**
+	 * Returns smoothed height of target.
+	 *
+	 * @return Height in pixels.
+	 */
+	public double getHeight() {
+		return _Height.getValue();
+	}
+
+	/**
+	 * Returns smoothed angle to target.
+	 *
+	 * @return Angle in same units passed to {@link #update}.
+	 */
+	public double getAngle() {
+		return _Angle.getValue();
+	}
+}
@@ -0,0 +1,211 @@
+package com.techhounds.imgcv.utils;
+
+/**
+ * Keeps track of the K highest scoring items out of a stream of scored items
+ * without allocating any objects.
+ *
+ * <p>
+ * Items are identified by an integer index (typically the index of a candidate
+ * in a list) and kept in a bounded min-heap, so offering N items costs O(N log
+ * K). Once all items have been offered, call {@link #finish()} to sort the
+ * results from best to worst. Equal scores favor the item offered first (lower
+ * index).
+ * </p>
+ *
+ * <p>
+ * Typical usage:
+ * </p>
+ *
+ * <pre>
+ * selector.reset();
+ * for (int i = 0; i &lt; n; i++) {
+ * 	selector.offer(i, rate(candidates.get(i)));
+ * }
+ * selector.finish();
+ * int best = selector.getIndex(0);
+ * </pre>
+ */
+public class TopKSelector {
+
+	/** Scores of items in heap (or sorted best to worst after finish). */
+	private double[] _Scores;
+
+	/** Indexes of items in heap (or sorted best to worst after finish). */
+	private int[] _Indexes;
+
+	/** Number of items currently held. */
+	private int _Size;
+
+	/**
+	 * Constructs a new instance that will keep the best K items.
+	 *
+	 * @param k
+	 *            Maximum number of items to keep (must be at least 1).
+	 */
+	public TopKSelector(int k) {
+		setCapacity(k);
+	}
+
+	/**
+	 * Changes the number of items to keep (also clears any current results).
+	 *
+	 * @param k
+	 *            Maximum number of items to keep (must be at least 1).
+	 */
+	public void setCapacity(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("Must keep at least 1 item (not "
+					+ k + ")");
+		}
+		_Scores = new double[k];
+		_Indexes = new int[k];
+		_Size = 0;
+	}
+
+	/**
+	 * Returns the maximum number of items that will be kept.
+	 *
+	 * @return K value.
+	 */
+	public int getCapacity() {
+		return _Scores.length;
+	}
+
+	/**
+	 * Clears out all results so you can start offering a new set of items.
+	 */
+	public void reset() {
+		_Size = 0;
+	}
+
+	/**
+	 * Offers a new item - it will be kept if it is one of the K best seen since
+	 * the last {@link #reset()}.
+	 *
+	 * @param index
+	 *            Index identifying the item.
+	 * @param score
+	 *            Score of the item (larger is better).
+	 */
+	public void offer(int index, double score) {
+		if (_Size < _Scores.length) {
+			int i = _Size++;
+			_Scores[i] = score;
+			_Indexes[i] = index;
+			siftUp(i);
+		} else if (isWorse(_Scores[0], _Indexes[0], score, index)) {
+			_Scores[0] = score;
+			_Indexes[0] = index;
+			siftDown(0, _Size);
+		}
+	}
+
+	/**
+	 * Sorts the items kept from best to worst (must be called before using
+	 * {@link #getIndex(int)} or {@link #getScore(int)}).
+	 */
+	public void finish() {
+		// Heap sort - repeatedly move worst item to the end
+		for (int end = _Size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	/**
+	 * Returns the number of items kept.
+	 *
+	 * @return Number of items in range of [0, K].
+	 */
+	public int size() {
+		return _Size;
+	}
+
+	/**
+	 * Returns the index of a item kept (after {@link #finish()}).
+	 *
+	 * @param rank
+	 *            Rank of item where 0 is best in range of [0, {@link #size()}
+	 *            - 1].
+	 * @return Index that was passed when item was offered.
+	 */
+	public int getIndex(int rank) {
+		return _Indexes[rank];
+	}
+
+	/**
+	 * Returns the score of a item kept (after {@link #finish()}).
+	 *
+	 * @param rank
+	 *            Rank of item where 0 is best in range of [0, {@link #size()}
+	 *            - 1].
+	 * @return Score that was passed when item was offered.
+	 */
+	public double getScore(int rank) {
+		return _Scores[rank];
+	}
+
+	/**
+	 * Determines if item A ranks below item B.
+	 *
+	 * @return true if A has a lower score (or same score and was offered
+	 *         after B).
+	 */
+	private static boolean isWorse(double scoreA, int indexA, double scoreB,
+			int indexB) {
+		return (scoreA < scoreB) || ((scoreA == scoreB) && (indexA > indexB));
+	}
+
+	/**
+	 * Moves a item up the min-heap until its parent is worse than it.
+	 */
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!isWorse(_Scores[i], _Indexes[i], _Scores[parent],
+					_Indexes[parent])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	/**
+	 * Moves a item down the min-heap until both children are better than it.
+	 */
+	private void siftDown(int i, int size) {
+		while (true) {
+			int worst = i;
+			int left = (2 * i) + 1;
+			int right = left + 1;
+			if ((left < size)
+					&& isWorse(_Scores[left], _Indexes[left], _Scores[worst],
+							_Indexes[worst])) {
+				worst = left;
+			}
+			if ((right < size)
+					&& isWorse(_Scores[right], _Indexes[right],
+							_Scores[worst], _Indexes[worst])) {
+				worst = right;
+			}
+			if (worst == i) {
+				return;
+			}
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	/**
+	 * Swaps two entries in the heap.
+	 */
+	private void swap(int a, int b) {
+		double s = _Scores[a];
+		_Scores[a] = _Scores[b];
+		_Scores[b] = s;
+		int n = _Indexes[a];
+		_Indexes[a] = _Indexes[b];
+		_Indexes[b] = n;
+	}
+}
@@ -10,6 +10,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -18,24 +24,101 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.techhounds.imgcv.filters.ColorRange;
 import com.techhounds.imgcv.utils.ColorRangeValues;
 
 /**
  * A GUI widget that allows you to edit and save color range values (
  * {@link ColorRangeValues}).
+ *
+ * <p>
+ * The editor can also show the user what the values do as they drag the
+ * sliders (see {@link #setPreviewImage(Mat)} and
+ * {@link #setPreviewListener(PreviewListener)}). While values are changing, a
+ * reduced size copy of the image is filtered on a background thread (only the
+ * most recent values are applied, results for older values are thrown away).
+ * Once the values stop changing, the full size image is filtered.
+ * </p>
  */
 public class ColorRangeEditor extends JPanel {
 
+	/**
+	 * Notified (on the Swing thread) when a filtered preview image is ready.
+	 */
+	public interface PreviewListener {
+		/**
+		 * Called with the results of applying the current values.
+		 *
+		 * @param img
+		 *            Filtered image (same dimensions as the preview image
+		 *            set, reduced size previews are scaled back up).
+		 * @param fullResolution
+		 *            true if the full size image was filtered, false if this is
+		 *            a quick preview while values are changing.
+		 */
+		void previewReady(Mat img, boolean fullResolution);
+	}
+
 	/**
 	 * Prevents Swing warnings
 	 */
 	private static final long serialVersionUID = -1299067685590688564L;
 
+	/** Longest side (in pixels) of quick preview images. */
+	private static final int PREVIEW_SIZE = 320;
+
+	/** How long values must stay put (ms) before filtering the full image. */
+	private static final int SETTLE_DELAY = 250;
+
+	/** Runs preview filtering (shared by all editors). */
+	private static ExecutorService previewWorker;
+
+	/** A request to filter the preview image. */
+	private static final class PreviewRequest {
+		final long id;
+		final ColorRangeValues values;
+		final Mat source;
+		final Size fullSize;
+		final boolean full;
+
+		PreviewRequest(long id, ColorRangeValues values, Mat source, Size fullSize, boolean full) {
+			this.id = id;
+			this.values = values;
+			this.source = source;
+			this.fullSize = fullSize;
+			this.full = full;
+		}
+	}
+
+	/** Full size image to filter (or null if no preview). */
+	private Mat previewFull;
+
+	/** Reduced size copy of previewFull (computed once per image). */
+	private Mat previewSmall;
+
+	/** Who to give preview results to (or null if no preview). */
+	private PreviewListener previewListener;
+
+	/** ID of most recent preview request (older results are dropped). */
+	private final AtomicLong previewId = new AtomicLong();
+
+	/** Request waiting for the worker (only the latest is kept). */
+	private final AtomicReference<PreviewRequest> pendingPreview = new AtomicReference<>();
+
+	/** Fires once values have settled to filter the full image. */
+	private final Timer settleTimer;
+
 	/** Last file opened or saved (or null if none yet). */
 	private File lastFile;
 
@@ -78,6 +161,13 @@ public class ColorRangeEditor extends JPanel {
 	 *            Color range values to initialize the editor with.
 	 */
 	public ColorRangeEditor(ColorRangeValues cvr) {
+		settleTimer = new Timer(SETTLE_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				requestPreview(true);
+			}
+		});
+		settleTimer.setRepeats(false);
 		listeners = new ArrayList<>();
 		keepCheckboxes = new JCheckBox[0];
 		minSliders = new JSlider[0];
@@ -167,6 +257,111 @@ public class ColorRangeEditor extends JPanel {
 		listeners.remove(l);
 	}
 
+	/**
+	 * Sets the image to filter with the values being edited as the user
+	 * changes them. Typically you pass the original image (already converted to
+	 * the color space the ranges are for) once when the editor is shown and
+	 * only call this again if that image changes.
+	 *
+	 * @param img
+	 *            Image to preview values on (not modified) or null to stop
+	 *            previewing.
+	 */
+	public void setPreviewImage(Mat img) {
+		previewFull = img;
+		previewSmall = img;
+		if (img != null) {
+			double scale = PREVIEW_SIZE / (double) Math.max(img.cols(), img.rows());
+			if (scale < 1) {
+				previewSmall = new Mat();
+				Imgproc.resize(img, previewSmall, new Size(), scale, scale, Imgproc.INTER_AREA);
+			}
+		}
+	}
+
+	/**
+	 * Sets who is given filtered preview images as the user changes values
+	 * (has no effect until {@link #setPreviewImage(Mat)} is called).
+	 *
+	 * @param l
+	 *            Listener to notify (or null to stop previewing).
+	 */
+	public void setPreviewListener(PreviewListener l) {
+		previewListener = l;
+	}
+
+	/**
+	 * Asks the background worker to filter the preview image with the current
+	 * values (replacing any request it has not started yet).
+	 *
+	 * @param full
+	 *            true to filter the full size image, false for a quick
+	 *            reduced size preview.
+	 */
+	private void requestPreview(boolean full) {
+		Mat src = full ? previewFull : previewSmall;
+		if ((previewListener == null) || (src == null)) {
+			return;
+		}
+		PreviewRequest req = new PreviewRequest(previewId.incrementAndGet(), getValues(), src, previewFull.size(),
+				full);
+		if (pendingPreview.getAndSet(req) == null) {
+			getPreviewWorker().execute(new Runnable() {
+				@Override
+				public void run() {
+					processPreview();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Filters the most recent preview request (runs on worker thread).
+	 */
+	private void processPreview() {
+		final PreviewRequest req = pendingPreview.getAndSet(null);
+		if ((req == null) || (req.id != previewId.get())) {
+			return;
+		}
+		Mat img = new ColorRange(req.values).process(req.source.clone());
+		if (!req.full && !img.size().equals(req.fullSize)) {
+			Mat big = new Mat();
+			Imgproc.resize(img, big, req.fullSize, 0, 0, Imgproc.INTER_NEAREST);
+			img = big;
+		}
+		if (req.id != previewId.get()) {
+			// Values changed while we were working
+			return;
+		}
+		final Mat result = img;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				PreviewListener l = previewListener;
+				if ((req.id == previewId.get()) && (l != null)) {
+					l.previewReady(result, req.full);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the shared preview worker (a single background thread).
+	 */
+	private static synchronized ExecutorService getPreviewWorker() {
+		if (previewWorker == null) {
+			previewWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ColorRangePreview");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return previewWorker;
+	}
+
 	/**
 	 * Helper method to notify all registered listeners that a value has
 	 * changed.
@@ -193,6 +388,9 @@ public class ColorRangeEditor extends JPanel {
 			@Override
 			public void stateChanged(ChangeEvent e) {
 				notifyListeners();
+				// Quick preview now, full image once user stops changing things
+				requestPreview(false);
+				settleTimer.restart();
 			}
 		};
 